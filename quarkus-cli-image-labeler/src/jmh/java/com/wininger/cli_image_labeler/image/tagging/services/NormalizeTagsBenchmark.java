@@ -0,0 +1,40 @@
+package com.wininger.cli_image_labeler.image.tagging.services;
+
+import com.wininger.cli_image_labeler.image.tagging.dto.model_responses.ImageInfoFromDescriptionModelResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The stream pipeline which splits, de-duplicates and sorts the model's tags for every image.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NormalizeTagsBenchmark {
+  // what the extraction model typically answers with: some comma separated and multi word tags, some duplicates
+  private final ImageInfoFromDescriptionModelResponse response = new ImageInfoFromDescriptionModelResponse(
+      List.of("dog", "Golden Retriever", "man, woman", "park", "green grass", "sunny day", "Dog", "leash",
+          "tree", "bench", "outdoor", "people walking", "ball", "summer", "shadow"),
+      "A golden retriever on a leash in a sunny park",
+      "Dog in the park",
+      "No visible text",
+      false);
+
+  @Benchmark
+  public List<String> normalizeTags() {
+    return ImageInfoService.normalizeTags(response, false);
+  }
+}
@@ -0,0 +1,138 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+/**
+ * The images the benchmarks run over, written to a temporary directory once per benchmark run. They are built from a
+ * real phone photo in the test images, so that the JPEGs compress and the EXIF parses like a library's would.
+ */
+public enum BenchmarkImages {
+  // the phone photo as taken, 3024x4032 with its EXIF
+  JPEG_12MP("jpeg-12mp.jpg"),
+  // the photo scaled up to 6048x8064, what a 48MP phone camera produces
+  JPEG_48MP("jpeg-48mp.jpg"),
+  // a 2560x1440 screenshot of flat panels and text
+  PNG_SCREENSHOT("png-screenshot.png"),
+  // the photo as an uncompressed TIFF, about 36MB
+  TIFF_LARGE("tiff-large.tiff");
+
+  private static final Path PHOTO = Path.of("src/test/resources/test-images/24-10-12 19-44-41 7914.jpg");
+
+  private static Path directory;
+
+  private final String fileName;
+
+  BenchmarkImages(final String fileName) {
+    this.fileName = fileName;
+  }
+
+  /**
+   * The image's file, written the first time it is asked for.
+   */
+  public synchronized Path path() {
+    try {
+      if (directory == null) {
+        directory = Files.createTempDirectory("il-jmh-");
+      }
+
+      final Path path = directory.resolve(fileName);
+      if (!Files.exists(path)) {
+        write(path);
+      }
+      return path;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public BufferedImage read() {
+    try {
+      return ImageIO.read(path().toFile());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void write(final Path path) throws IOException {
+    switch (this) {
+      case JPEG_12MP -> Files.copy(PHOTO, path, StandardCopyOption.REPLACE_EXISTING);
+      case JPEG_48MP -> writeJpeg(scale(ImageIO.read(PHOTO.toFile()), 2), path);
+      case PNG_SCREENSHOT -> ImageIO.write(drawScreenshot(2560, 1440), "png", path.toFile());
+      case TIFF_LARGE -> ImageIO.write(ImageIO.read(PHOTO.toFile()), "tiff", path.toFile());
+    }
+  }
+
+  private static BufferedImage scale(final BufferedImage image, final int factor) {
+    final BufferedImage scaled =
+        new BufferedImage(image.getWidth() * factor, image.getHeight() * factor, BufferedImage.TYPE_INT_RGB);
+    final Graphics2D graphics = scaled.createGraphics();
+    try {
+      graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      graphics.drawImage(image, 0, 0, scaled.getWidth(), scaled.getHeight(), null);
+    } finally {
+      graphics.dispose();
+    }
+    return scaled;
+  }
+
+  private static void writeJpeg(final BufferedImage image, final Path path) throws IOException {
+    final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+    final ImageWriteParam param = writer.getDefaultWriteParam();
+    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+    // about what a phone camera uses
+    param.setCompressionQuality(0.92f);
+
+    try (ImageOutputStream output = ImageIO.createImageOutputStream(path.toFile())) {
+      writer.setOutput(output);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+  }
+
+  private static BufferedImage drawScreenshot(final int width, final int height) {
+    final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    final Graphics2D graphics = image.createGraphics();
+    final Random random = new Random(42);
+
+    try {
+      graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+      graphics.setColor(new Color(0xF5F5F5));
+      graphics.fillRect(0, 0, width, height);
+
+      // a title bar and a sidebar
+      graphics.setColor(new Color(0x2B2B2B));
+      graphics.fillRect(0, 0, width, 40);
+      graphics.setColor(new Color(0xE0E0E0));
+      graphics.fillRect(0, 40, 320, height - 40);
+
+      // lines of text, what makes screenshots compress differently from photos
+      graphics.setColor(Color.BLACK);
+      graphics.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 16));
+      for (int y = 80; y < height - 20; y += 24) {
+        final StringBuilder line = new StringBuilder();
+        final int words = 5 + random.nextInt(15);
+        for (int i = 0; i < words; i++) {
+          line.append(Long.toString(random.nextLong() & 0xFFFFFF, 36)).append(' ');
+        }
+        graphics.drawString(line.toString(), 360, y);
+      }
+    } finally {
+      graphics.dispose();
+    }
+
+    return image;
+  }
+}
@@ -0,0 +1,64 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import com.drew.imaging.ImageProcessingException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading an image's metadata, which ImageInfoService does twice per image (for the GPS location and for the date it
+ * was taken), each time parsing the whole file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class FileMetaDataUtilsBenchmark {
+  // the 12MP photo is the one with EXIF (and a date taken), the others show the cost of looking and finding nothing
+  @Param({"JPEG_12MP", "JPEG_48MP", "PNG_SCREENSHOT", "TIFF_LARGE"})
+  BenchmarkImages image;
+
+  private String imagePath;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    imagePath = image.path().toString();
+  }
+
+  @Benchmark
+  public Map<String, Double> geoLocation() throws ImageProcessingException, IOException {
+    return FileMetaDataUtils.getGeoLocation(imagePath);
+  }
+
+  @Benchmark
+  public Date createdOn() throws ImageProcessingException, IOException {
+    try {
+      return FileMetaDataUtils.getCreatedOn(imagePath);
+    } catch (NullPointerException e) {
+      // images without an EXIF directory, still a full parse of the file
+      return null;
+    }
+  }
+
+  @Benchmark
+  public Date fileTimestamps() throws IOException {
+    FileMetaDataUtils.getFileCreatedAt(imagePath);
+    return FileMetaDataUtils.getFileLastModified(imagePath);
+  }
+}
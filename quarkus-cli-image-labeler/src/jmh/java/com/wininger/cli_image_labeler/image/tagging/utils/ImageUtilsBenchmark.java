@@ -0,0 +1,92 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The steps between reading an image and sending it to the model (see ImageInfoService.getImageContentAndResizeIt),
+ * plus the thumbnail, for each kind of image in {@link BenchmarkImages}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true"})
+public class ImageUtilsBenchmark {
+  // the balanced profile's image size and JPEG quality
+  private static final int MAX_DIMENSION = 1024;
+  private static final float JPEG_QUALITY = 0.85f;
+  private static final int THUMBNAIL_DIMENSION = 500;
+
+  @Param({"JPEG_12MP", "JPEG_48MP", "PNG_SCREENSHOT", "TIFF_LARGE"})
+  BenchmarkImages image;
+
+  private String imagePath;
+  private BufferedImage original;
+  private BufferedImage resized;
+  private byte[] jpegBytes;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    imagePath = image.path().toString();
+    original = image.read();
+    resized = ImageUtils.resizeImage(original, MAX_DIMENSION);
+    jpegBytes = ImageUtils.imageToJpegBytes(resized, JPEG_QUALITY);
+  }
+
+  @Benchmark
+  public BufferedImage decode() throws IOException {
+    return ImageIO.read(image.path().toFile());
+  }
+
+  @Benchmark
+  public BufferedImage resize() {
+    return ImageUtils.resizeImage(original, MAX_DIMENSION);
+  }
+
+  @Benchmark
+  public byte[] encodeJpeg() throws IOException {
+    return ImageUtils.imageToJpegBytes(resized, JPEG_QUALITY);
+  }
+
+  @Benchmark
+  public String base64() {
+    return Base64.getEncoder().encodeToString(jpegBytes);
+  }
+
+  /**
+   * Everything done to a decoded image before it goes to the model: resize, encode and base64.
+   */
+  @Benchmark
+  public String imageContent() throws IOException {
+    return Base64.getEncoder().encodeToString(
+        ImageUtils.imageToJpegBytes(ImageUtils.resizeImage(original, MAX_DIMENSION), JPEG_QUALITY));
+  }
+
+  @Benchmark
+  public byte[] thumbnail() throws IOException {
+    return ImageUtils.imageToJpegBytes(ImageUtils.resizeImage(original, THUMBNAIL_DIMENSION), JPEG_QUALITY);
+  }
+
+  @Benchmark
+  public String generateThumbnailFilename() {
+    return ImageUtils.generateThumbnailFilename(imagePath);
+  }
+}
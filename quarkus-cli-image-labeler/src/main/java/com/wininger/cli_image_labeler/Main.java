@@ -0,0 +1,43 @@
+package com.wininger.cli_image_labeler;
+
+import com.wininger.cli_image_labeler.commands.ClientCommand;
+import io.quarkus.runtime.Quarkus;
+import io.quarkus.runtime.QuarkusApplication;
+import io.quarkus.runtime.annotations.QuarkusMain;
+import jakarta.inject.Inject;
+import picocli.CommandLine;
+
+import java.util.Arrays;
+
+/**
+ * The entry point. `client` is handled here, before Quarkus starts: it only talks to a running serve, so it has no
+ * use for the database, Flyway or the model clients and shouldn't wait for them. Everything else runs {@link MainCommand}
+ * in Quarkus, as the picocli extension would on its own.
+ */
+@QuarkusMain
+public class Main {
+
+    public static void main(final String... args) {
+        if (args.length > 0 && "client".equals(args[0])) {
+            System.exit(new CommandLine(new ClientCommand()).execute(Arrays.copyOfRange(args, 1, args.length)));
+        }
+        Quarkus.run(Application.class, args);
+    }
+
+    public static class Application implements QuarkusApplication {
+
+        @Inject
+        CommandLine.IFactory factory;
+
+        @Override
+        public int run(final String... args) {
+            final CommandLine commandLine = new CommandLine(MainCommand.class, factory);
+            try {
+                return commandLine.execute(args);
+            } finally {
+                commandLine.getOut().flush();
+                commandLine.getErr().flush();
+            }
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package com.wininger.cli_image_labeler;
 
+import com.wininger.cli_image_labeler.commands.BenchmarkIngestCommand;
+import com.wininger.cli_image_labeler.commands.ClientCommand;
+import com.wininger.cli_image_labeler.commands.EvaluateProfilesCommand;
 import com.wininger.cli_image_labeler.commands.GenerateImageTagsCommand;
+import com.wininger.cli_image_labeler.commands.MergeDatabasesCommand;
 import com.wininger.cli_image_labeler.commands.RandomizeGpsCoordinatesCommand;
 import com.wininger.cli_image_labeler.commands.ReadFileMetadataCommand;
 import com.wininger.cli_image_labeler.commands.RunMigrationsCommand;
+import com.wininger.cli_image_labeler.commands.ServeCommand;
+import com.wininger.cli_image_labeler.commands.WatchCommand;
 import com.wininger.cli_image_labeler.commands.WriteTagsToLocalDbCommand;
 import com.wininger.cli_image_labeler.setup.DataDirectoryInitializer;
 import io.quarkus.picocli.runtime.annotations.TopCommand;
@@ -12,10 +18,17 @@ import picocli.CommandLine.Command;
 @TopCommand
 @Command(name = "app", mixinStandardHelpOptions = true,
          subcommands = {
+             BenchmarkIngestCommand.class,
+             // only listed for the usage help, Main runs it before Quarkus starts
+             ClientCommand.class,
+             EvaluateProfilesCommand.class,
              GenerateImageTagsCommand.class,
+             MergeDatabasesCommand.class,
              RandomizeGpsCoordinatesCommand.class,
              ReadFileMetadataCommand.class,
              RunMigrationsCommand.class,
+             ServeCommand.class,
+             WatchCommand.class,
              WriteTagsToLocalDbCommand.class
          })
 public class MainCommand implements Runnable {
@@ -0,0 +1,197 @@
+package com.wininger.cli_image_labeler.commands;
+
+import com.wininger.cli_image_labeler.image.tagging.services.ImageLabelingService;
+import com.wininger.cli_image_labeler.image.tagging.services.LabelingRunService;
+import com.wininger.cli_image_labeler.image.tagging.utils.StageTimer;
+import com.wininger.cli_image_labeler.image.tagging.utils.SyntheticImageCorpus;
+import com.wininger.cli_image_labeler.setup.DataDirectoryInitializer;
+
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Measures ingest throughput: generates a synthetic image corpus and runs write-tags-to-local-db over it once per
+ * parallelism level. Meant to be run with `il.model.backend=fake` so it measures our pipeline rather than the model
+ * (and so it can run on a machine without a GPU), but it works against a real Ollama too.
+ */
+@Command(name = "benchmark-ingest", mixinStandardHelpOptions = true,
+         description = "Benchmark write-tags-to-local-db against a synthetic image corpus")
+public class BenchmarkIngestCommand implements Runnable {
+    @Option(names = "--images", description = "Number of synthetic images to generate (default: ${DEFAULT-VALUE})", defaultValue = "100")
+    int numImages;
+
+    @Option(names = "--parallelism", split = ",", description = "Comma separated parallelism levels to run (default: ${DEFAULT-VALUE})", defaultValue = "1,2,4,8")
+    List<Integer> parallelismLevels;
+
+    @Option(names = "--corpus-dir", description = "Where to write the synthetic images, kept after the run (default: a temporary directory which is deleted)")
+    Path corpusDir;
+
+    @Option(names = "--seed", description = "Seed for generating the corpus (default: ${DEFAULT-VALUE})", defaultValue = "42")
+    long seed;
+
+    @Mixin
+    JfrOption jfr = new JfrOption();
+
+    private static final long HEAP_SAMPLE_INTERVAL_MILLIS = 50;
+
+    private final LabelingRunService labelingRunService;
+    private final ImageLabelingService labelingService;
+    private final String modelBackend;
+
+    private record BenchmarkResult(
+        int parallelism,
+        double seconds,
+        int failedImages,
+        long peakHeapBytes,
+        List<StageTimer.StageTotals> stages
+    ) {}
+
+    @Inject
+    public BenchmarkIngestCommand(
+        final LabelingRunService labelingRunService,
+        final ImageLabelingService labelingService,
+        @ConfigProperty(name = "il.model.backend", defaultValue = "ollama") final String modelBackend
+    ) {
+        this.labelingRunService = labelingRunService;
+        this.labelingService = labelingService;
+        this.modelBackend = modelBackend;
+    }
+
+    @Override
+    public void run() {
+        try (JfrOption.RunningRecording ignored = jfr.start()) {
+            benchmark();
+        }
+    }
+
+    private void benchmark() {
+        if (!"fake".equals(modelBackend)) {
+            System.out.println("Warning: benchmarking against the '" + modelBackend + "' model backend, "
+                + "set IL_MODEL_BACKEND=fake to measure the pipeline without a model");
+        }
+        System.out.println("Note: benchmark results are written to the database in "
+            + DataDirectoryInitializer.getDataDirectory().toAbsolutePath()
+            + ", point IL_DATA_LOCATION at a scratch directory to keep them out of your library");
+
+        final boolean deleteCorpus = corpusDir == null;
+        try {
+            final Path directory = deleteCorpus ? Files.createTempDirectory("il-benchmark-") : corpusDir;
+
+            final long generateStartTime = System.currentTimeMillis();
+            SyntheticImageCorpus.generate(directory, numImages, seed);
+            System.out.printf("Generated %d synthetic images in %s (%.1f s)%n",
+                numImages, directory, (System.currentTimeMillis() - generateStartTime) / 1000.0);
+
+            final List<BenchmarkResult> results = new ArrayList<>();
+            try {
+                for (final int parallelism : parallelismLevels) {
+                    results.add(runAtParallelism(directory, parallelism));
+                }
+            } finally {
+                if (deleteCorpus) {
+                    deleteRecursively(directory);
+                }
+            }
+
+            printResults(results);
+        } catch (IOException e) {
+            System.err.println("Error generating the synthetic corpus: " + e.getMessage());
+            throw new RuntimeException("Failed to run benchmark", e);
+        }
+    }
+
+    private BenchmarkResult runAtParallelism(final Path directory, final int parallelism) {
+        System.out.println("\n=== Benchmarking parallelism=" + parallelism + " ===");
+
+        System.gc();
+        StageTimer.reset();
+        final HeapSampler heapSampler = new HeapSampler();
+
+        final int failedBefore = labelingService.failedImageCount();
+        final long startTime = System.nanoTime();
+        try {
+            // every level re-processes every image, otherwise all but the first would just skip them
+            labelingRunService.labelDirectory(directory, LabelingRunService.Options.of(parallelism, true));
+        } finally {
+            heapSampler.stop();
+        }
+        final double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+
+        return new BenchmarkResult(parallelism, seconds, labelingService.failedImageCount() - failedBefore,
+            heapSampler.peakBytes(), StageTimer.snapshot());
+    }
+
+    private void printResults(final List<BenchmarkResult> results) {
+        System.out.printf("%n%nBenchmark results (%d images, %s model backend)%n", numImages, modelBackend);
+        System.out.printf("%-12s %10s %10s %8s %12s%n", "parallelism", "images/s", "seconds", "failed", "peak heap");
+        for (final BenchmarkResult result : results) {
+            System.out.printf("%-12d %10.2f %10.1f %8d %9.1f MB%n",
+                result.parallelism(), numImages / result.seconds(), result.seconds(), result.failedImages(),
+                result.peakHeapBytes() / (1024.0 * 1024.0));
+        }
+
+        System.out.println("\nTime per stage, average ms per call (total seconds across all workers):");
+        for (final BenchmarkResult result : results) {
+            System.out.println("  parallelism=" + result.parallelism() + ":");
+            for (final StageTimer.StageTotals stage : result.stages()) {
+                System.out.printf("    %-12s %10.1f ms (%.1f s over %d calls)%n",
+                    stage.stage(), stage.averageMillis(), stage.totalSeconds(), stage.count());
+            }
+        }
+    }
+
+    private static void deleteRecursively(final Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("Warning: Could not delete synthetic corpus " + directory + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Samples heap usage in the background to find the highest it got during a run.
+     */
+    private static class HeapSampler {
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final AtomicLong peakBytes = new AtomicLong(memory.getHeapMemoryUsage().getUsed());
+        private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "heap-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        HeapSampler() {
+            sampler.scheduleAtFixedRate(this::sample, 0, HEAP_SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        private void sample() {
+            peakBytes.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+        }
+
+        void stop() {
+            sampler.shutdownNow();
+            sample();
+        }
+
+        long peakBytes() {
+            return peakBytes.get();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.wininger.cli_image_labeler.commands;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
+import picocli.CommandLine.Parameters;
+import picocli.CommandLine.ScopeType;
+import picocli.CommandLine.Spec;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.wininger.cli_image_labeler.setup.DataDirectoryInitializer;
+
+/**
+ * Sends requests to a running {@link ServeCommand} and prints its replies, one JSON object per line. It is run before
+ * Quarkus starts (see {@link com.wininger.cli_image_labeler.Main}), so a request costs a JVM start and whatever the
+ * server does with it.
+ */
+@Command(name = "client", mixinStandardHelpOptions = true,
+         description = "Send label, search, status or stop requests to a running serve and print its replies as JSON Lines")
+public class ClientCommand implements Runnable {
+    @Option(names = "--socket", scope = ScopeType.INHERIT, description = "The socket serve listens on (default: <data-dir>/labeler.sock)")
+    Path socket;
+
+    @Spec
+    CommandSpec spec;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Override
+    public void run() {
+        throw new ParameterException(spec.commandLine(), "Missing a request: label, search, status or stop");
+    }
+
+    @Command(name = "label", description = "Label and save images, as write-tags-to-local-db does")
+    int label(
+        @Option(names = "--update-existing", description = "Re-process and update images that are already saved") final boolean updateExisting,
+        @Parameters(paramLabel = "<path>", arity = "1..*", description = "The images to label") final List<Path> paths
+    ) {
+        final List<ObjectNode> requests = new ArrayList<>();
+        for (final Path path : paths) {
+            requests.add(request("label")
+                // the server's working directory isn't ours
+                .put("path", path.toAbsolutePath().normalize().toString())
+                .put("updateExisting", updateExisting));
+        }
+        return send(requests);
+    }
+
+    @Command(name = "search", description = "Find saved images by tag and text")
+    int search(
+        @Option(names = "--tag", paramLabel = "<tag>", description = "Only images with this tag, can be repeated") final List<String> tags,
+        @Option(names = "--limit", description = "The most images to list (default: ${DEFAULT-VALUE})", defaultValue = "20") final int limit,
+        @Parameters(paramLabel = "<text>", arity = "0..1", description = "Only images whose title, description or text contains this") final String text
+    ) {
+        final ObjectNode request = request("search").put("text", text).put("limit", limit);
+        if (tags != null) {
+            tags.forEach(request.putArray("tags")::add);
+        }
+        return send(List.of(request));
+    }
+
+    @Command(name = "status", description = "Show what the server has done so far")
+    int status() {
+        return send(List.of(request("status")));
+    }
+
+    @Command(name = "stop", description = "Stop the server once the images it is labeling are saved")
+    int stop() {
+        return send(List.of(request("stop")));
+    }
+
+    private static ObjectNode request(final String command) {
+        return OBJECT_MAPPER.createObjectNode().put("command", command);
+    }
+
+    /**
+     * Sends the requests one after the other, printing each reply.
+     *
+     * @return the exit code, 1 if any request failed or the server couldn't be reached
+     */
+    private int send(final List<ObjectNode> requests) {
+        final Path socketPath = socket != null ? socket : DataDirectoryInitializer.getSocketPath();
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath));
+             BufferedReader reader = new BufferedReader(
+                 new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+             Writer writer = new BufferedWriter(
+                 new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8))) {
+            int exitCode = 0;
+            for (int i = 0; i < requests.size(); i++) {
+                writer.write(OBJECT_MAPPER.writeValueAsString(requests.get(i).put("id", i + 1)));
+                writer.write('\n');
+                writer.flush();
+
+                final String reply = reader.readLine();
+                if (reply == null) {
+                    System.err.println("Error: The server closed the connection without replying");
+                    return 1;
+                }
+                System.out.println(reply);
+                if (!OBJECT_MAPPER.readTree(reply).path("ok").asBoolean(false)) {
+                    exitCode = 1;
+                }
+            }
+            return exitCode;
+        } catch (IOException e) {
+            System.err.println("Error: Could not talk to serve on " + socketPath + ", is it running? " + e.getMessage());
+            return 1;
+        }
+    }
+}
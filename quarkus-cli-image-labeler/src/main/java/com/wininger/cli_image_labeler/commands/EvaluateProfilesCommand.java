@@ -0,0 +1,207 @@
+package com.wininger.cli_image_labeler.commands;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wininger.cli_image_labeler.image.tagging.dto.ImageInfo;
+import com.wininger.cli_image_labeler.image.tagging.ollama.OllamaClients;
+import com.wininger.cli_image_labeler.image.tagging.services.ImageInfoService;
+import com.wininger.cli_image_labeler.image.tagging.services.LabelingProfile;
+import com.wininger.cli_image_labeler.image.tagging.services.SimilarityService;
+
+import jakarta.inject.Inject;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Labels a reference corpus (images with known good descriptions, tags and titles) with each labeling profile and
+ * reports how fast each one was against how close its labels came to the reference ones, so the speed/quality trade
+ * off between profiles is measured rather than guessed at.
+ *
+ * The reference manifest is a JSON array of `{"image", "description", "tags", "title"}` objects, with image paths
+ * relative to the manifest. src/test/resources/test-images/reference.json is one built from the test fixtures.
+ */
+@Command(name = "evaluate-profiles", mixinStandardHelpOptions = true,
+         description = "Compare labeling profiles by speed and by similarity to a labeled reference corpus")
+public class EvaluateProfilesCommand implements Runnable {
+    @Parameters(paramLabel = "<reference>", description = "A reference manifest (JSON) listing images and their expected labels")
+    Path referencePath;
+
+    @Option(names = "--profiles", split = ",", description = "Comma separated profiles to evaluate (default: ${DEFAULT-VALUE})", defaultValue = "fast,balanced,thorough")
+    List<String> profileNames;
+
+    @Option(names = "--min-similarity", description = "Quality bar, the recommended profile is the fastest whose average description and tag similarity both reach it (default: ${DEFAULT-VALUE})", defaultValue = "0.75")
+    double minSimilarity;
+
+    @Mixin
+    JfrOption jfr = new JfrOption();
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final ImageInfoService imageInfoService;
+    private final SimilarityService similarityService;
+    private final OllamaClients ollamaClients;
+
+    private record ReferenceImage(String image, String description, List<String> tags, String title) {}
+
+    private record ProfileResult(
+        LabelingProfile profile,
+        int labeledImages,
+        int failedImages,
+        double seconds,
+        double descriptionSimilarity,
+        double tagsSimilarity,
+        double titleSimilarity
+    ) {
+        double imagesPerMinute() {
+            return seconds == 0 ? 0 : labeledImages / seconds * 60;
+        }
+
+        // what the pareto frontier is drawn on, titles are too short for their similarity to mean much
+        double quality() {
+            return (descriptionSimilarity + tagsSimilarity) / 2;
+        }
+
+        boolean isDominatedBy(final ProfileResult other) {
+            return other.imagesPerMinute() >= imagesPerMinute() && other.quality() >= quality()
+                && (other.imagesPerMinute() > imagesPerMinute() || other.quality() > quality());
+        }
+    }
+
+    @Inject
+    public EvaluateProfilesCommand(
+        final ImageInfoService imageInfoService,
+        final SimilarityService similarityService,
+        final OllamaClients ollamaClients
+    ) {
+        this.imageInfoService = imageInfoService;
+        this.similarityService = similarityService;
+        this.ollamaClients = ollamaClients;
+    }
+
+    @Override
+    public void run() {
+        try (JfrOption.RunningRecording ignored = jfr.start()) {
+            evaluate();
+        }
+    }
+
+    private void evaluate() {
+        final long startTime = System.currentTimeMillis();
+
+        final List<ReferenceImage> references;
+        try {
+            references = OBJECT_MAPPER.readValue(referencePath.toFile(), new TypeReference<>() {});
+        } catch (IOException e) {
+            System.err.println("Error reading reference manifest " + referencePath + ": " + e.getMessage());
+            throw new RuntimeException("Failed to read reference manifest", e);
+        }
+
+        final Path corpusDirectory = referencePath.toAbsolutePath().getParent();
+        final List<ReferenceImage> available = references.stream()
+            .filter(reference -> {
+                final boolean exists = Files.isRegularFile(corpusDirectory.resolve(reference.image()));
+                if (!exists) {
+                    System.err.println("Warning: Skipping missing reference image " + reference.image());
+                }
+                return exists;
+            })
+            .toList();
+
+        final List<LabelingProfile> profiles = profileNames.stream().map(LabelingProfile::byName).toList();
+
+        final List<ProfileResult> results = new ArrayList<>();
+        for (final LabelingProfile profile : profiles) {
+            results.add(evaluate(profile, corpusDirectory, available));
+        }
+
+        printResults(results, available.size());
+        ollamaClients.printEndpointSummary(startTime, System.out);
+    }
+
+    private ProfileResult evaluate(
+        final LabelingProfile profile,
+        final Path corpusDirectory,
+        final List<ReferenceImage> references
+    ) {
+        System.out.println("\n=== Evaluating profile " + profile.name() + " ===");
+        System.out.println(profile);
+
+        // loading the model is a one off cost, it shouldn't count against the profile's throughput
+        imageInfoService.warmUpModels(profile).join();
+
+        final Map<ReferenceImage, ImageInfo> labels = new LinkedHashMap<>();
+        int failedImages = 0;
+
+        final long startTime = System.nanoTime();
+        for (final ReferenceImage reference : references) {
+            final String imagePath = corpusDirectory.resolve(reference.image()).toString();
+            try {
+                labels.put(reference, imageInfoService.generateImageInfoAndMetadata(imagePath, false, profile));
+            } catch (RuntimeException e) {
+                System.err.println("Warning: Profile " + profile.name() + " failed to label " + imagePath + ": " + e.getMessage());
+                failedImages++;
+            }
+        }
+        final double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+
+        // scored after the clock stops, the embeddings are part of the evaluation not of labeling
+        double descriptionSimilarity = 0;
+        double tagsSimilarity = 0;
+        double titleSimilarity = 0;
+        for (final Map.Entry<ReferenceImage, ImageInfo> entry : labels.entrySet()) {
+            final ReferenceImage reference = entry.getKey();
+            final ImageInfo label = entry.getValue();
+            descriptionSimilarity += similarityService.calculateSimilarity(reference.description(), label.fullDescription());
+            tagsSimilarity += similarityService.calculateTagsSimilarity(reference.tags(), label.tags());
+            titleSimilarity += similarityService.calculateSimilarity(reference.title(), label.shortTitle());
+        }
+
+        final int labeledImages = labels.size();
+        return new ProfileResult(profile, labeledImages, failedImages, seconds,
+            average(descriptionSimilarity, labeledImages), average(tagsSimilarity, labeledImages),
+            average(titleSimilarity, labeledImages));
+    }
+
+    private void printResults(final List<ProfileResult> results, final int numImages) {
+        System.out.printf("%n%nProfile evaluation (%d reference images, %s)%n", numImages, referencePath);
+        System.out.printf("%-10s %10s %12s %10s %10s %8s %8s  %s%n",
+            "profile", "images/min", "description", "tags", "title", "quality", "failed", "pareto");
+        for (final ProfileResult result : results) {
+            final boolean onFrontier = results.stream().noneMatch(result::isDominatedBy);
+            System.out.printf("%-10s %10.2f %12.3f %10.3f %10.3f %8.3f %8d  %s%n",
+                result.profile().name(), result.imagesPerMinute(), result.descriptionSimilarity(),
+                result.tagsSimilarity(), result.titleSimilarity(), result.quality(), result.failedImages(),
+                onFrontier ? "yes" : "");
+        }
+        System.out.println("(quality is the average of description and tag similarity, profiles marked pareto are not"
+            + " beaten on both speed and quality by another profile)");
+
+        final Optional<ProfileResult> recommended = results.stream()
+            .filter(result -> result.labeledImages() > 0)
+            .filter(result -> result.descriptionSimilarity() >= minSimilarity && result.tagsSimilarity() >= minSimilarity)
+            .max((a, b) -> Double.compare(a.imagesPerMinute(), b.imagesPerMinute()));
+
+        if (recommended.isPresent()) {
+            System.out.printf("%nRecommended: %s, the fastest profile with description and tag similarity >= %.2f"
+                + " (use it with IL_PROFILE=%s)%n", recommended.get().profile().name(), minSimilarity,
+                recommended.get().profile().name());
+        } else {
+            System.out.printf("%nNo profile reached description and tag similarity >= %.2f%n", minSimilarity);
+        }
+    }
+
+    private static double average(final double total, final int count) {
+        return count == 0 ? 0 : total / count;
+    }
+}
@@ -1,45 +1,140 @@
 package com.wininger.cli_image_labeler.commands;
 
 import com.wininger.cli_image_labeler.image.tagging.dto.ImageInfo;
+import com.wininger.cli_image_labeler.image.tagging.ollama.OllamaClients;
 import com.wininger.cli_image_labeler.image.tagging.services.ImageInfoService;
+import com.wininger.cli_image_labeler.image.tagging.services.ImageLabelingService;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import jakarta.inject.Inject;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.util.Set;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import com.wininger.cli_image_labeler.setup.DataDirectoryInitializer;
+import com.wininger.cli_image_labeler.image.tagging.utils.EventLog;
+import com.wininger.cli_image_labeler.image.tagging.utils.PathListReader;
+import com.wininger.cli_image_labeler.image.tagging.utils.ReorderBuffer;
 
+import static com.wininger.cli_image_labeler.image.tagging.utils.PrintUtils.formatImageInfoResults;
 import static com.wininger.cli_image_labeler.image.tagging.utils.PrintUtils.getTimeTakenMessage;
 import static com.wininger.cli_image_labeler.image.tagging.utils.PrintUtils.printImageInfoResults;
 
 @Command(name = "generate-image-tags", mixinStandardHelpOptions = true)
 public class GenerateImageTagsCommand implements Runnable {
-    @Parameters(paramLabel = "<path>", description = "The path to an image or directory containing images to process")
+    @Parameters(paramLabel = "<path>", arity = "0..1", description = "The path to an image or directory containing images to process")
     String inputPath;
 
+    @Option(names = "--files-from", paramLabel = "<file|->", description = "Label the images listed in this file (- for stdin) instead of a <path>, one per line or NUL separated (find -print0). They are labeled as they are read")
+    String filesFrom;
+
+    @Option(names = "--parallelism", description = "Number of images to label at once (default: ${DEFAULT-VALUE})", defaultValue = "1")
+    int parallelism;
+
+    @Option(names = "--format", description = "How to print each image's results: ${COMPLETION-CANDIDATES}. jsonl prints one JSON object per line on stdout, everything else goes to stderr (default: ${DEFAULT-VALUE})", defaultValue = "text")
+    Format format;
+
+    @Option(names = "--order", description = "Print the results in the order the images were found (input) or as soon as each is labeled (completion) (default: ${DEFAULT-VALUE})", defaultValue = "input")
+    Order order;
+
+    @Mixin
+    JfrOption jfr = new JfrOption();
+
+    @Mixin
+    ShardOption shard = new ShardOption();
+
     private final ImageInfoService imageInfoService;
+    private final ImageLabelingService labelingService;
+    private final OllamaClients ollamaClients;
+
+    private static final String FAIL_LOG_NAME = "failed-image-processing.log";
+
+    // how many images each worker may be ahead of the oldest one not yet printed, bounds the results held back
+    private static final int REORDER_WINDOW_PER_WORKER = 4;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    enum Format { text, jsonl }
+
+    enum Order { input, completion }
+
+    private record LabeledImage(Path path, ImageInfo imageInfo, long startTime) {}
 
-    private static final Set<String> IMAGE_EXTENSIONS = Set.of(
-        "jpg", "jpeg", "png", "gif", "bmp", "webp", "tiff", "tif"
-    );
+    // where the JSON is printed, a stream of its own on stdout which nothing else writes to
+    private PrintStream results;
+    // where everything else is printed, stderr with --format jsonl
+    private PrintStream messages = System.out;
 
     @Inject
-    public GenerateImageTagsCommand(final ImageInfoService imageInfoService) {
+    public GenerateImageTagsCommand(
+        final ImageInfoService imageInfoService,
+        final ImageLabelingService labelingService,
+        final OllamaClients ollamaClients
+    ) {
         this.imageInfoService = imageInfoService;
+        this.labelingService = labelingService;
+        this.ollamaClients = ollamaClients;
     }
 
     @Override
     public void run() {
+        if (format == Format.jsonl) {
+            results = new PrintStream(new FileOutputStream(FileDescriptor.out), false, StandardCharsets.UTF_8);
+            messages = System.err;
+            // the details, notices and progress line as well
+            EventLog.setConsole(System.err);
+        }
+
+        try (JfrOption.RunningRecording ignored = jfr.start()) {
+            generateTags();
+        } finally {
+            EventLog.setConsole(System.out);
+            if (results != null) {
+                results.flush();
+            }
+        }
+    }
+
+    private void generateTags() {
         final long startTime = System.currentTimeMillis();
 
+        if (filesFrom != null) {
+            if (inputPath != null) {
+                System.err.println("Error: Give either a <path> or --files-from, not both");
+                return;
+            }
+            processFileList(filesFrom, startTime);
+            return;
+        }
+        if (inputPath == null) {
+            System.err.println("Error: Give a <path> or --files-from");
+            return;
+        }
+
         final Path path = Paths.get(inputPath);
 
         if (!Files.exists(path)) {
@@ -50,9 +145,9 @@ public class GenerateImageTagsCommand implements Runnable {
         if (Files.isDirectory(path)) {
             processDirectory(path, startTime);
         } else if (Files.isRegularFile(path)) {
-            if (isImageFile(path)) {
-                processImage(path);
-                System.out.printf("\n\nCompleted processing image in: %s",
+            if (labelingService.isImageFile(path)) {
+                processImage(path).ifPresent(this::printResults);
+                messages.printf("\n\nCompleted processing image in: %s",
                     getTimeTakenMessage(startTime, System.currentTimeMillis()));
             } else {
                 System.err.println("Error: File is not a supported image type: " + inputPath);
@@ -63,67 +158,148 @@ public class GenerateImageTagsCommand implements Runnable {
     }
 
     private void processDirectory(final Path directory, final long startTime) {
+        // Load the models while we start walking the directory so the first image doesn't pay for it
+        imageInfoService.warmUpModels();
+
+        final List<Path> imageFiles;
         try (Stream<Path> paths = Files.walk(directory)) {
-            paths
+            imageFiles = paths
                 .filter(Files::isRegularFile)
-                .filter(this::isImageFile)
-                .forEach(this::processImage);
+                .filter(labelingService::isImageFile)
+                .filter(shard::includes)
+                .collect(Collectors.toList());
         } catch (IOException e) {
             System.err.println("Error walking directory: " + e.getMessage());
             throw new RuntimeException("Failed to process directory", e);
         }
 
-        System.out.printf("\n\nCompleted processing all images in: %s",
-            getTimeTakenMessage(startTime, System.currentTimeMillis()));
+        if (useEventLog()) {
+            EventLog.start(imageFiles.size(), null);
+        }
+        processImages(imageFiles.iterator(), startTime);
     }
 
-    private boolean isImageFile(final Path path) {
-        final String fileName = path.getFileName().toString().toLowerCase();
-        final int lastDot = fileName.lastIndexOf('.');
-        if (lastDot == -1) {
-            return false;
+    /**
+     * Labels the images listed in a file or on stdin, each handed to the workers as soon as it's read (so the list can
+     * come from a find which is still running).
+     */
+    private void processFileList(final String fileList, final long startTime) {
+        imageInfoService.warmUpModels();
+
+        try (PathListReader listed = PathListReader.open(fileList)) {
+            if (useEventLog()) {
+                EventLog.start(null);
+            }
+            processImages(StreamSupport.stream(Spliterators.spliteratorUnknownSize(listed, Spliterator.ORDERED), false)
+                .filter(this::isListedImage)
+                .filter(shard::includes)
+                .iterator(), startTime);
+        } catch (IOException e) {
+            EventLog.finish();
+            System.err.println("Error reading the list of images " + fileList + ": " + e.getMessage());
         }
-        final String extension = fileName.substring(lastDot + 1);
-        return IMAGE_EXTENSIONS.contains(extension);
     }
 
-    private void processImage(final Path imagePath) {
-        try {
-            final long startTime = System.currentTimeMillis();
-            System.out.println("\n=== Processing: " + imagePath + " ===");
-            final ImageInfo imageInfo = imageInfoService.generateImageInfoAndMetadata(imagePath.toString(), false);
-            printImageInfoResults(imageInfo, startTime);
-        } catch (Exception e) {
-            System.err.println("Error processing image " + imagePath + ": " + e.getMessage());
-            writeFailedImageProcess(imagePath, e);
-            // Continue processing other images even if one fails
+    /**
+     * Labeling one at a time the details are printed as they happen, as before. Otherwise they would interleave (or
+     * get in the way of the JSON), so they go through the event log, which shows a progress line instead.
+     */
+    private boolean useEventLog() {
+        return parallelism > 1 || format == Format.jsonl;
+    }
+
+    /**
+     * Whether a path from --files-from can be labeled, with a warning if not (a directory walk only finds images).
+     */
+    private boolean isListedImage(final Path path) {
+        if (!Files.isRegularFile(path)) {
+            EventLog.warn(path.toString(), "Warning: Skipping " + path + ", it does not exist or is not a file");
+            return false;
+        }
+        if (!labelingService.isImageFile(path)) {
+            EventLog.warn(path.toString(), "Warning: Skipping " + path + ", it is not a supported image type");
+            return false;
         }
+        return true;
     }
 
-    private void writeFailedImageProcess(final Path imagePath, final Exception exception) {
+    /**
+     * Hands each image to the workers as the iterator produces it, prints the results as they allow and then the
+     * run's summaries. Finishes the event log, if it was started.
+     */
+    private void processImages(final Iterator<Path> imagePaths, final long startTime) {
+        final ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        final ReorderBuffer<Optional<LabeledImage>> reorderBuffer = new ReorderBuffer<>(
+            parallelism * REORDER_WINDOW_PER_WORKER, order == Order.input, labeled -> labeled.ifPresent(this::printResults));
+        long submitted = 0;
         try {
-            final Path dataDir = DataDirectoryInitializer.getDataDirectory();
-            final Path logFile = dataDir.resolve("failed-image-processing.log");
-            final String fullPath = imagePath.toAbsolutePath().toString();
-            final String exceptionClass = exception.getClass().getName();
-            final String logEntry = "\"" + fullPath + "\", \"" + exceptionClass + "\"\n";
-
-            // Create a data directory if it doesn't exist
-            if (!Files.exists(dataDir)) {
-                Files.createDirectories(dataDir);
+            try {
+                while (imagePaths.hasNext()) {
+                    final long sequence = submitted;
+                    final Path imagePath = imagePaths.next();
+                    reorderBuffer.awaitRoomFor(sequence);
+                    EventLog.imageQueued();
+                    submitted++;
+                    pool.submit(() -> {
+                        Optional<LabeledImage> labeled = Optional.empty();
+                        try {
+                            labeled = processImage(imagePath);
+                        } finally {
+                            reorderBuffer.complete(sequence, labeled);
+                        }
+                    });
+                }
+            } catch (UncheckedIOException e) {
+                // finish the images already read
+                EventLog.warn(null, "Error reading the list of images, no more will be labeled: " + e.getCause().getMessage());
             }
+            EventLog.allImagesQueued();
+            reorderBuffer.awaitEmpty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Interrupted, " + reorderBuffer.emitted() + " of " + submitted + " images were printed");
+        } finally {
+            pool.shutdownNow();
+            EventLog.finish();
+        }
 
-            // Append to a log file (create if it doesn't exist)
-            Files.writeString(
-                logFile,
-                logEntry,
-                StandardOpenOption.CREATE,
-                StandardOpenOption.APPEND
-            );
-        } catch (IOException e) {
-            // If we can't write to the log file, just print a warning
-            System.err.println("Warning: Failed to write to failed-image-processing.log: " + e.getMessage());
+        ollamaClients.printEndpointSummary(startTime, messages);
+        imageInfoService.printAdaptiveResolutionSummary(messages);
+        imageInfoService.printDocumentRoutingSummary(messages);
+        messages.printf("\n\nCompleted processing all images in: %s",
+            getTimeTakenMessage(startTime, System.currentTimeMillis()));
+    }
+
+    /**
+     * Labels the image, empty if it was skipped or failed (which the labeling service reports and records).
+     */
+    private Optional<LabeledImage> processImage(final Path imagePath) {
+        final long startTime = System.currentTimeMillis();
+        final ImageLabelingService.ProcessedImage processed = labelingService.labelImage(imagePath, FAIL_LOG_NAME);
+        return Optional.ofNullable(processed.imageInfo())
+            .map(imageInfo -> new LabeledImage(imagePath, imageInfo, startTime));
+    }
+
+    /**
+     * Prints an image's results, called for one image at a time.
+     */
+    private void printResults(final LabeledImage labeled) {
+        if (format == Format.jsonl) {
+            try {
+                final ObjectNode json = OBJECT_MAPPER.createObjectNode();
+                json.put("path", labeled.path().toString());
+                json.setAll((ObjectNode) OBJECT_MAPPER.valueToTree(labeled.imageInfo()));
+                results.println(OBJECT_MAPPER.writeValueAsString(json));
+                // for whatever reads the results to see each one as soon as it's printed
+                results.flush();
+            } catch (JsonProcessingException e) {
+                EventLog.warn(labeled.path().toString(), "Warning: Could not write the results of " + labeled.path() + " as JSON: " + e.getMessage());
+            }
+        } else if (EventLog.isRunning()) {
+            // the details weren't printed, so neither was the header
+            EventLog.notice("\n=== " + labeled.path() + " ===\n" + formatImageInfoResults(labeled.imageInfo(), labeled.startTime()));
+        } else {
+            printImageInfoResults(labeled.imageInfo(), labeled.startTime());
         }
     }
 }
-
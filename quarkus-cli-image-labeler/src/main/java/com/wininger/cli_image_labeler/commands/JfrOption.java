@@ -0,0 +1,70 @@
+package com.wininger.cli_image_labeler.commands;
+
+import com.wininger.cli_image_labeler.setup.DataDirectoryInitializer;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import picocli.CommandLine.Option;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+/**
+ * The --jfr option, mixed into the commands which label images. Records the run with Java Flight Recorder, including
+ * the labeler's own events (see the jfr package), so its stages can be looked at alongside GC, allocation and lock
+ * events in JDK Mission Control or with `jfr print`.
+ */
+public class JfrOption {
+    @Option(
+        names = "--jfr",
+        arity = "0..1",
+        paramLabel = "<file>",
+        fallbackValue = "",
+        description = "Record the run with Java Flight Recorder, to this file (default: recording-<time>.jfr in the data directory)"
+    )
+    String jfrFile;
+
+    /**
+     * A recording in progress, closing it stops it and writes it out.
+     */
+    public interface RunningRecording extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Starts recording, if --jfr was given. It is written out when the returned recording is closed.
+     */
+    public RunningRecording start() {
+        if (jfrFile == null) {
+            return () -> {};
+        }
+
+        final Path destination = jfrFile.isEmpty()
+            ? DataDirectoryInitializer.getDataDirectory().resolve("recording-%s.jfr".formatted(System.currentTimeMillis()))
+            : Path.of(jfrFile);
+
+        final Recording recording;
+        try {
+            // the "profile" settings add method sampling and allocation/lock profiling to the defaults
+            recording = new Recording(Configuration.getConfiguration("profile"));
+            recording.setName("image-labeler");
+            recording.setToDisk(true);
+            recording.setDestination(destination);
+        } catch (IOException | ParseException e) {
+            System.err.println("Warning: Could not start a flight recording: " + e.getMessage());
+            return () -> {};
+        }
+
+        recording.start();
+        System.out.println("Recording the run with Java Flight Recorder to " + destination.toAbsolutePath());
+
+        return () -> {
+            // stopping writes the recording to its destination
+            recording.stop();
+            recording.close();
+            System.out.printf("%nFlight recording written to %s%n", destination.toAbsolutePath());
+        };
+    }
+}
@@ -0,0 +1,78 @@
+package com.wininger.cli_image_labeler.commands;
+
+import com.wininger.cli_image_labeler.image.tagging.db.DatabaseMerger;
+import com.wininger.cli_image_labeler.setup.DataDirectoryInitializer;
+import jakarta.inject.Inject;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Parameters;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+
+import static com.wininger.cli_image_labeler.image.tagging.utils.PrintUtils.getTimeTakenMessage;
+
+/**
+ * Puts the databases (and thumbnails) written by several machines, each labeling its own --shard of a library, into
+ * this data directory's database. See {@link DatabaseMerger} for how they are put together.
+ */
+@Command(name = "merge-databases", mixinStandardHelpOptions = true,
+         description = "Merge the databases and thumbnails from other data directories (e.g. each machine's --shard) into this one")
+public class MergeDatabasesCommand implements Runnable {
+
+    @Parameters(paramLabel = "<data-dir|db>", arity = "1..*", description = "The data directories, or image-tags.db files, to merge in")
+    List<Path> sources;
+
+    private final DatabaseMerger databaseMerger;
+
+    @Inject
+    public MergeDatabasesCommand(final DatabaseMerger databaseMerger) {
+        this.databaseMerger = databaseMerger;
+    }
+
+    @Override
+    public void run() {
+        final long startTime = System.currentTimeMillis();
+        final Path ourDatabase = DataDirectoryInitializer.getDatabasePath();
+        int failed = 0;
+
+        for (final Path source : sources) {
+            final Path database = Files.isDirectory(source) ? source.resolve("image-tags.db") : source;
+            if (!Files.isRegularFile(database)) {
+                System.err.println("Error: No database at " + database);
+                failed++;
+                continue;
+            }
+            try {
+                if (Files.isSameFile(database, ourDatabase)) {
+                    System.err.println("Error: " + database + " is this data directory's own database, skipping it");
+                    failed++;
+                    continue;
+                }
+
+                System.out.println("Merging " + database + "...");
+                final DatabaseMerger.MergeResult result = databaseMerger.merge(database,
+                    database.toAbsolutePath().getParent().resolve("thumbnails"),
+                    DataDirectoryInitializer.getThumbnailsDirectory());
+
+                System.out.printf("  %d image(s) added (%d replacing older entries), %d already up to date%n",
+                    result.imagesAdded(), result.imagesReplaced(), result.imagesKept());
+                System.out.printf("  %d new tag(s), %d skipped image(s), %d thumbnail(s) copied, %d replaced one(s) deleted%n",
+                    result.tagsAdded(), result.skippedImages(), result.thumbnailsCopied(), result.thumbnailsDeleted());
+                if (result.thumbnailsMissing() > 0) {
+                    System.err.println("Warning: " + result.thumbnailsMissing() + " thumbnail(s) were missing from "
+                        + database.toAbsolutePath().getParent().resolve("thumbnails"));
+                }
+            } catch (SQLException | IOException e) {
+                // it was merged in one transaction, so nothing of it was kept
+                System.err.println("Error: Could not merge " + database + ", nothing was taken from it: " + e.getMessage());
+                failed++;
+            }
+        }
+
+        System.out.printf("%nMerged %d of %d database(s) into %s in: %s%n", sources.size() - failed, sources.size(),
+            ourDatabase.toAbsolutePath(), getTimeTakenMessage(startTime, System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,27 @@
+package com.wininger.cli_image_labeler.commands;
+
+import com.wininger.cli_image_labeler.image.tagging.utils.LoadGovernor;
+import picocli.CommandLine.Option;
+
+/**
+ * The --nice option, mixed into the commands which label images in the background. Throttles the run to the load on
+ * the rest of the machine, see {@link LoadGovernor}.
+ */
+public class NiceOption {
+    @Option(
+        names = "--nice",
+        description = "Work on fewer images at a time while the rest of the machine is busy (other processes' CPU over 50%%, load over 1 per CPU or memory over 90%% used), and more again as it quietens down"
+    )
+    boolean nice;
+
+    public boolean enabled() {
+        return nice;
+    }
+
+    /**
+     * A governor for the workers. It only throttles if --nice was given, otherwise it lets all of them run.
+     */
+    public LoadGovernor start(final int parallelism) {
+        return LoadGovernor.forRun(parallelism, nice);
+    }
+}
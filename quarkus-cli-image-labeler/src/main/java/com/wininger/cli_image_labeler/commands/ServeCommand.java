@@ -0,0 +1,353 @@
+package com.wininger.cli_image_labeler.commands;
+
+import com.wininger.cli_image_labeler.image.tagging.db.ImageInfoEntity;
+import com.wininger.cli_image_labeler.image.tagging.db.ImageInfoRepository;
+import com.wininger.cli_image_labeler.image.tagging.db.TagEntity;
+import com.wininger.cli_image_labeler.image.tagging.services.ImageInfoService;
+import com.wininger.cli_image_labeler.image.tagging.services.ImageLabelingService;
+import com.wininger.cli_image_labeler.image.tagging.services.OcrService;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.wininger.cli_image_labeler.setup.DataDirectoryInitializer;
+
+/**
+ * Keeps everything a labeling run sets up (Quarkus, the database, Hibernate, the model clients) warm and labels,
+ * searches and reports its status on request, so labeling one new photo costs the model's time and nothing else.
+ * Requests come over a Unix domain socket, one JSON object per line, and each gets one JSON line back:
+ *
+ * <pre>
+ *   {"id": 1, "command": "label", "path": "/photos/cat.jpg", "updateExisting": false}
+ *   {"id": 2, "command": "search", "tags": ["cat"], "text": "sofa", "limit": 20}
+ *   {"id": 3, "command": "status"}
+ *   {"id": 4, "command": "stop"}
+ * </pre>
+ *
+ * A reply has the request's id (if it had one) and "ok", with an "error" if that's false. A connection's requests are
+ * answered in order, labeling is shared out to --parallelism workers across all connections. `client` sends requests
+ * from the command line.
+ */
+@Command(name = "serve", mixinStandardHelpOptions = true,
+         description = "Label, search and report status on request over a Unix domain socket, keeping everything loaded between requests")
+public class ServeCommand implements Runnable {
+    @Option(names = "--socket", description = "The Unix domain socket to listen on (default: <data-dir>/labeler.sock)")
+    Path socket;
+
+    @Option(names = "--parallelism", description = "Number of images to label at once, across all connections (default: ${DEFAULT-VALUE})", defaultValue = "1")
+    int parallelism;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final int MAX_SEARCH_LIMIT = 1000;
+    // how long stopping waits for the images being labeled to be saved
+    private static final long STOP_TIMEOUT_MINUTES = 5;
+
+    private final ImageLabelingService labelingService;
+    private final ImageInfoRepository imageInfoRepository;
+    private final ImageInfoService imageInfoService;
+    private final OcrService ocrService;
+    private final String modelBackend;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong labeled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicInteger labelsInFlight = new AtomicInteger();
+
+    private long startTime;
+    private String failLogName;
+    private ExecutorService labelers;
+    private volatile ServerSocketChannel server;
+    private volatile boolean stopping;
+
+    @Inject
+    public ServeCommand(
+        final ImageLabelingService labelingService,
+        final ImageInfoRepository imageInfoRepository,
+        final ImageInfoService imageInfoService,
+        final OcrService ocrService,
+        @ConfigProperty(name = "il.model.backend", defaultValue = "ollama") final String modelBackend
+    ) {
+        this.labelingService = labelingService;
+        this.imageInfoRepository = imageInfoRepository;
+        this.imageInfoService = imageInfoService;
+        this.ocrService = ocrService;
+        this.modelBackend = modelBackend;
+    }
+
+    @Override
+    public void run() {
+        final Path socketPath = socket != null ? socket : DataDirectoryInitializer.getSocketPath();
+        try {
+            listen(socketPath);
+        } catch (IOException e) {
+            System.err.println("Error: Could not listen on " + socketPath + ": " + e.getMessage());
+        }
+    }
+
+    private void listen(final Path socketPath) throws IOException {
+        if (Files.exists(socketPath)) {
+            if (isServing(socketPath)) {
+                System.err.println("Error: Another serve is already listening on " + socketPath);
+                return;
+            }
+            // left behind by a serve which didn't get to clean up
+            Files.delete(socketPath);
+        }
+
+        startTime = System.currentTimeMillis();
+        failLogName = "failed-image-processing-serve-%s.log".formatted(startTime);
+        imageInfoService.warmUpModels();
+        labelers = Executors.newFixedThreadPool(parallelism);
+        final ExecutorService connections = Executors.newCachedThreadPool();
+
+        final Thread removeSocket = new Thread(() -> deleteSocket(socketPath));
+        try (ServerSocketChannel listening = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server = listening;
+            listening.bind(UnixDomainSocketAddress.of(socketPath));
+            Runtime.getRuntime().addShutdownHook(removeSocket);
+            restrictToOwner(socketPath);
+            System.out.println("Listening on " + socketPath.toAbsolutePath() + " with parallelism=" + parallelism);
+
+            while (!stopping) {
+                final SocketChannel connection;
+                try {
+                    connection = listening.accept();
+                } catch (ClosedChannelException e) {
+                    // stopped
+                    break;
+                }
+                connections.submit(() -> serve(connection));
+            }
+        } finally {
+            // let the images being labeled get saved before the connections waiting on them are dropped
+            labelers.shutdown();
+            try {
+                labelers.awaitTermination(STOP_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            connections.shutdownNow();
+            ocrService.awaitPending();
+            deleteSocket(socketPath);
+            try {
+                Runtime.getRuntime().removeShutdownHook(removeSocket);
+            } catch (IllegalStateException e) {
+                // already shutting down, the hook deletes it (again)
+            }
+        }
+
+        System.out.printf("Stopped after %d request(s), %d image(s) labeled and %d failed%n",
+            requests.get(), labeled.get(), failed.get());
+    }
+
+    /**
+     * Answers a connection's requests, in order, until it's closed.
+     */
+    private void serve(final SocketChannel connection) {
+        try (connection;
+             BufferedReader reader = new BufferedReader(
+                 new InputStreamReader(Channels.newInputStream(connection), StandardCharsets.UTF_8));
+             Writer writer = new BufferedWriter(
+                 new OutputStreamWriter(Channels.newOutputStream(connection), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                writer.write(OBJECT_MAPPER.writeValueAsString(handle(line)));
+                writer.write('\n');
+                writer.flush();
+
+                if (stopping) {
+                    // after the reply, so the client knows the stop was accepted
+                    server.close();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // the client went away (or the server is stopping), nothing to answer
+        }
+    }
+
+    private ObjectNode handle(final String line) {
+        final ObjectNode reply = OBJECT_MAPPER.createObjectNode();
+        final JsonNode request;
+        try {
+            request = OBJECT_MAPPER.readTree(line);
+        } catch (JsonProcessingException e) {
+            return error(reply, "Not a JSON object: " + e.getOriginalMessage());
+        }
+        if (!request.isObject()) {
+            return error(reply, "Not a JSON object");
+        }
+
+        if (request.has("id")) {
+            reply.set("id", request.get("id"));
+        }
+        reply.put("ok", true);
+        requests.incrementAndGet();
+
+        final String command = request.path("command").asText("");
+        try {
+            switch (command) {
+                case "label" -> label(request, reply);
+                case "search" -> search(request, reply);
+                case "status" -> status(reply);
+                case "stop" -> stopping = true;
+                default -> error(reply, "Unknown command '" + command + "', expected label, search, status or stop");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error(reply, "Interrupted, the server is stopping");
+        } catch (Exception e) {
+            error(reply, e.getClass().getName() + ": " + e.getMessage());
+        }
+        return reply;
+    }
+
+    private void label(final JsonNode request, final ObjectNode reply) throws InterruptedException, ExecutionException {
+        final String path = request.path("path").textValue();
+        if (path == null) {
+            error(reply, "label needs a \"path\"");
+            return;
+        }
+        final Path imagePath = Paths.get(path);
+        if (!imagePath.isAbsolute()) {
+            // it would be resolved against the server's working directory, not the client's
+            error(reply, "The path must be absolute: " + path);
+            return;
+        }
+        if (!Files.isRegularFile(imagePath) || !labelingService.isImageFile(imagePath)) {
+            error(reply, "Not an image file: " + path);
+            return;
+        }
+        final boolean updateExisting = request.path("updateExisting").asBoolean(false);
+
+        final long labelStartTime = System.currentTimeMillis();
+        labelsInFlight.incrementAndGet();
+        final ImageLabelingService.ProcessedImage processed;
+        try {
+            processed = labelers.submit(() -> labelingService.processImage(imagePath, failLogName, updateExisting))
+                .get();
+        } finally {
+            labelsInFlight.decrementAndGet();
+        }
+
+        reply.put("path", path);
+        reply.put("outcome", processed.outcome().name().toLowerCase());
+        reply.put("millis", System.currentTimeMillis() - labelStartTime);
+        if (processed.imageInfo() != null) {
+            labeled.incrementAndGet();
+            reply.set("image", OBJECT_MAPPER.valueToTree(ImageLabelingService.resultFields(processed.imageInfo())));
+        }
+        if (processed.error() != null) {
+            failed.incrementAndGet();
+            error(reply, processed.error());
+        }
+    }
+
+    private void search(final JsonNode request, final ObjectNode reply) {
+        final List<String> tags = new ArrayList<>();
+        request.path("tags").forEach(tag -> tags.add(tag.asText()));
+        final String text = request.path("text").textValue();
+        final int limit = Math.min(Math.max(request.path("limit").asInt(DEFAULT_SEARCH_LIMIT), 1), MAX_SEARCH_LIMIT);
+
+        final ArrayNode images = reply.putArray("images");
+        for (final ImageInfoEntity entity : imageInfoRepository.search(tags, text, limit)) {
+            final ObjectNode image = images.addObject();
+            image.put("path", entity.getFullPath());
+            image.put("title", entity.getShortTitle());
+            image.put("description", entity.getDescription());
+            final ArrayNode imageTags = image.putArray("tags");
+            entity.getTags().stream().map(TagEntity::getTagName).sorted().forEach(imageTags::add);
+            image.put("thumbnail", entity.getThumbnailName());
+            image.put("isText", entity.getIsText());
+        }
+    }
+
+    private void status(final ObjectNode reply) {
+        reply.put("uptimeSeconds", (System.currentTimeMillis() - startTime) / 1000);
+        reply.put("requests", requests.get());
+        reply.put("labeled", labeled.get());
+        reply.put("failed", failed.get());
+        reply.put("labelsInFlight", labelsInFlight.get());
+        reply.put("parallelism", parallelism);
+        reply.put("imagesInDatabase", imageInfoRepository.count());
+        reply.put("modelBackend", modelBackend);
+        reply.put("dataDirectory", DataDirectoryInitializer.getDataDirectory().toAbsolutePath().toString());
+    }
+
+    private static ObjectNode error(final ObjectNode reply, final String message) {
+        reply.put("ok", false);
+        reply.put("error", message);
+        return reply;
+    }
+
+    /**
+     * Whether something is accepting connections on the socket (rather than it being left over from a crash).
+     */
+    private static boolean isServing(final Path socketPath) {
+        try (SocketChannel ignored = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Whoever can connect can have any image this process can read labeled (and see what's in the database), so only
+     * the owner may.
+     */
+    private static void restrictToOwner(final Path socketPath) {
+        try {
+            Files.setPosixFilePermissions(socketPath, PosixFilePermissions.fromString("rw-------"));
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("Warning: Could not restrict " + socketPath + " to its owner: " + e.getMessage());
+        }
+    }
+
+    private static void deleteSocket(final Path socketPath) {
+        try {
+            Files.deleteIfExists(socketPath);
+        } catch (IOException e) {
+            System.err.println("Warning: Could not delete " + socketPath + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.wininger.cli_image_labeler.commands;
+
+import com.wininger.cli_image_labeler.image.tagging.utils.Shard;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
+import picocli.CommandLine.Spec;
+
+import java.nio.file.Path;
+
+/**
+ * The --shard option, mixed into the commands which label images. Splits the library between several machines, each
+ * labeling its part into its own data directory, to be put together with merge-databases afterwards. See {@link Shard}.
+ */
+public class ShardOption {
+    @Spec(Spec.Target.MIXEE)
+    CommandSpec spec;
+
+    private Shard shard;
+
+    @Option(
+        names = "--shard",
+        paramLabel = "<i/N>",
+        description = "Only label the images in shard i of N (e.g. 2/3), split by a hash of their path, so N machines can each label a part of the library into their own database"
+    )
+    void setShard(final String value) {
+        try {
+            shard = Shard.parse(value);
+        } catch (IllegalArgumentException e) {
+            throw new ParameterException(spec.commandLine(), "Invalid --shard '" + value + "': " + e.getMessage());
+        }
+    }
+
+    /**
+     * The shard to label, null without --shard.
+     */
+    public Shard shard() {
+        return shard;
+    }
+
+    /**
+     * Whether an image is this machine's to label, always true without --shard.
+     */
+    public boolean includes(final Path image) {
+        return shard == null || shard.includes(image);
+    }
+
+    /**
+     * " in shard i/N", or nothing without --shard, for the messages saying what a run will do.
+     */
+    public String describe() {
+        return shard == null ? "" : " in shard " + shard;
+    }
+}
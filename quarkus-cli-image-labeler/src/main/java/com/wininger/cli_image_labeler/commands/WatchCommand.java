@@ -0,0 +1,445 @@
+package com.wininger.cli_image_labeler.commands;
+
+import com.wininger.cli_image_labeler.image.tagging.db.ImageInfoEntity;
+import com.wininger.cli_image_labeler.image.tagging.db.ImageInfoRepository;
+import com.wininger.cli_image_labeler.image.tagging.db.SkippedImageRepository;
+import com.wininger.cli_image_labeler.image.tagging.services.ImageInfoService;
+import com.wininger.cli_image_labeler.image.tagging.services.ImageLabelingService;
+import com.wininger.cli_image_labeler.image.tagging.services.OcrService;
+import com.wininger.cli_image_labeler.image.tagging.utils.EventLog;
+import com.wininger.cli_image_labeler.image.tagging.utils.LoadGovernor;
+
+import io.quarkus.runtime.ShutdownEvent;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.Reception;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.wininger.cli_image_labeler.setup.DataDirectoryInitializer;
+
+/**
+ * Labels new and changed images in a directory tree as they appear, instead of re-checking every file in scheduled
+ * runs of write-tags-to-local-db. Every directory is registered with a {@link WatchService}, and the whole tree is
+ * reconciled against the database at start and then every --rescan-interval (for what changed while not watching, and
+ * for file systems which drop events, like network mounts). A file is only labeled once its size and modified time
+ * have stopped changing for --settle-seconds, so half copied or synced photos aren't.
+ *
+ * Stopping it (Ctrl-C, or a SIGTERM) stops the watch and then waits, while Quarkus holds off shutting down, for the
+ * images already handed to the labelers and their OCR to be saved. It's a singleton so that the shutdown is observed by
+ * the instance which is watching.
+ */
+@Singleton
+@Command(name = "watch", mixinStandardHelpOptions = true,
+         description = "Label new and changed images in a directory tree as they appear, until stopped")
+public class WatchCommand implements Runnable {
+    @Parameters(paramLabel = "<directory>", description = "The directory tree to watch")
+    Path directory;
+
+    @Option(names = "--parallelism", description = "Number of images to label at once (default: ${DEFAULT-VALUE})", defaultValue = "1")
+    int parallelism;
+
+    @Option(names = "--settle-seconds", description = "How long a file's size and modified time must stay the same before it is labeled (default: ${DEFAULT-VALUE})", defaultValue = "2")
+    int settleSeconds;
+
+    @Option(names = "--rescan-interval", description = "Seconds between scans of the whole tree for changes the watch missed, 0 for only the scan at start (default: ${DEFAULT-VALUE})", defaultValue = "900")
+    int rescanIntervalSeconds;
+
+    @Option(names = "--log-file", description = "Write what happened to each image (its progress, result or error) to this file as JSON Lines")
+    Path logFile;
+
+    @Mixin
+    NiceOption nice = new NiceOption();
+
+    @Mixin
+    ShardOption shard = new ShardOption();
+
+    private static final long SETTLE_CHECK_INTERVAL_MILLIS = 500;
+    // how long stopping waits for the images being labeled to be saved
+    private static final long STOP_TIMEOUT_MINUTES = 5;
+
+    private final ImageLabelingService labelingService;
+    private final ImageInfoRepository imageInfoRepository;
+    private final SkippedImageRepository skippedImageRepository;
+    private final ImageInfoService imageInfoService;
+    private final OcrService ocrService;
+
+    /**
+     * A file waiting for its size and modified time to settle.
+     *
+     * @param stableSinceNanos when they were last seen to change
+     */
+    private record PendingFile(long size, long lastModified, long stableSinceNanos) {}
+
+    private final Map<Path, PendingFile> pending = new ConcurrentHashMap<>();
+    private final Set<Path> labeling = ConcurrentHashMap.newKeySet();
+    private final Map<WatchKey, Path> watchKeys = new ConcurrentHashMap<>();
+    private final Set<Path> watchedDirectories = ConcurrentHashMap.newKeySet();
+
+    private Path root;
+    private Path dataDirectory;
+    private String failLogName;
+    private volatile WatchService watchService;
+    private ExecutorService labelers;
+    private LoadGovernor governor;
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong labeled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile boolean stopping;
+    // counted down once the watch has stopped and everything it started is saved, null when not watching
+    private volatile CountDownLatch stopped;
+
+    @Inject
+    public WatchCommand(
+        final ImageLabelingService labelingService,
+        final ImageInfoRepository imageInfoRepository,
+        final SkippedImageRepository skippedImageRepository,
+        final ImageInfoService imageInfoService,
+        final OcrService ocrService
+    ) {
+        this.labelingService = labelingService;
+        this.imageInfoRepository = imageInfoRepository;
+        this.skippedImageRepository = skippedImageRepository;
+        this.imageInfoService = imageInfoService;
+        this.ocrService = ocrService;
+    }
+
+    @Override
+    public void run() {
+        if (!Files.isDirectory(directory)) {
+            System.err.println("Error: Not a directory: " + directory);
+            return;
+        }
+        root = directory.toAbsolutePath().normalize();
+        // the thumbnails are images too, labeling them would write more thumbnails...
+        dataDirectory = DataDirectoryInitializer.getDataDirectory().toAbsolutePath().normalize();
+        failLogName = "failed-image-processing-watch-%s.log".formatted(System.currentTimeMillis());
+
+        stopped = new CountDownLatch(1);
+        imageInfoService.warmUpModels();
+        // the labelers and the scans report through the event log, one line at a time above its progress line
+        EventLog.start(logFile);
+        labelers = Executors.newFixedThreadPool(parallelism);
+        governor = nice.start(parallelism);
+        scheduler = Executors.newScheduledThreadPool(2);
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            watchService = watcher;
+            // registers every directory as well
+            scheduler.execute(this::reconcile);
+            if (rescanIntervalSeconds > 0) {
+                scheduler.scheduleWithFixedDelay(this::reconcile, rescanIntervalSeconds, rescanIntervalSeconds, TimeUnit.SECONDS);
+            }
+            scheduler.scheduleWithFixedDelay(this::labelSettledFiles,
+                SETTLE_CHECK_INTERVAL_MILLIS, SETTLE_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+            EventLog.notice("Watching " + root + " for images" + shard.describe() + " with parallelism=" + parallelism
+                + ", press Ctrl-C to stop");
+            handleEvents(watcher);
+        } catch (IOException e) {
+            EventLog.warn(null, "Error watching " + root + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stopping = true;
+            scheduler.shutdownNow();
+            // let the images already handed to the labelers (and their OCR) be saved
+            labelers.shutdown();
+            try {
+                labelers.awaitTermination(STOP_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ocrService.awaitPending();
+            governor.close();
+            EventLog.finish();
+            System.out.printf("Stopped after %d image(s) labeled and %d failed%n", labeled.get(), failed.get());
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * Stops the watch when the application is shutting down (Ctrl-C...) and holds the shutdown until the images being
+     * labeled are saved, the database and the model clients are only closed after every observer has returned.
+     */
+    void onShutdown(@Observes(notifyObserver = Reception.IF_EXISTS) final ShutdownEvent event) {
+        final CountDownLatch watchStopped = stopped;
+        if (watchStopped == null || watchStopped.getCount() == 0) {
+            return;
+        }
+
+        stopping = true;
+        EventLog.notice("Stopping, waiting for the images being labeled to be saved...");
+        try {
+            final WatchService watcher = watchService;
+            if (watcher != null) {
+                // wakes up handleEvents
+                watcher.close();
+            }
+            watchStopped.await(STOP_TIMEOUT_MINUTES + 1, TimeUnit.MINUTES);
+        } catch (IOException e) {
+            EventLog.warn(null, "Warning: Could not stop watching " + root + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handleEvents(final WatchService watcher) throws InterruptedException {
+        while (!stopping) {
+            final WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (ClosedWatchServiceException e) {
+                // stopped
+                return;
+            }
+            final Path parent = watchKeys.get(key);
+            for (final WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    EventLog.warn(null, "Warning: Too many changes at once in " + parent + ", some were missed, rescanning");
+                    scheduler.execute(this::reconcile);
+                    continue;
+                }
+                if (parent == null) {
+                    continue;
+                }
+
+                final Path changed = parent.resolve((Path) event.context());
+                if (isExcluded(changed)) {
+                    continue;
+                }
+                if (Files.isDirectory(changed, LinkOption.NOFOLLOW_LINKS)) {
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                        // a directory moved (or copied) in, whatever it already holds doesn't raise events of its own
+                        addTree(changed);
+                    }
+                } else if (labelingService.isImageFile(changed) && shard.includes(changed)) {
+                    markChanged(changed);
+                }
+            }
+            if (!key.reset() && parent != null) {
+                // the directory is gone
+                watchKeys.remove(key);
+                watchedDirectories.remove(parent);
+            }
+        }
+    }
+
+    /**
+     * Compares every image in the tree with what the database recorded about it (in two queries, not one per file) and
+     * queues the new and changed ones. Also watches any directory which isn't yet.
+     */
+    private void reconcile() {
+        final long startTime = System.currentTimeMillis();
+        try {
+            final Map<String, Date> labeledLastModified = imageInfoRepository.findFileLastModifiedByPath();
+            final Map<String, Long> skippedLastModified = skippedImageRepository.findFileLastModifiedByPath();
+
+            final int[] counts = new int[2];
+            walk(root, (file, attributes) -> {
+                counts[0]++;
+                final String fullPath = file.toString();
+                final long lastModified = attributes.lastModifiedTime().toMillis();
+                final boolean changed;
+                if (labeledLastModified.containsKey(fullPath)) {
+                    changed = isChangedSince(labeledLastModified.get(fullPath), lastModified);
+                } else if (skippedLastModified.containsKey(fullPath)) {
+                    changed = skippedLastModified.get(fullPath) != lastModified;
+                } else {
+                    changed = true;
+                }
+                if (changed) {
+                    counts[1]++;
+                    markChanged(file);
+                }
+            });
+            EventLog.notice("Scanned %d image(s) in %.1f s, %d new or changed".formatted(
+                counts[0], (System.currentTimeMillis() - startTime) / 1000.0, counts[1]));
+        } catch (Exception e) {
+            // the next scan may do better, the watch carries on meanwhile
+            EventLog.warn(null, "Error scanning " + root + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Watches a directory which just appeared and queues the images in it, without asking the database (labeling
+     * checks).
+     */
+    private void addTree(final Path directory) {
+        try {
+            walk(directory, (file, attributes) -> markChanged(file));
+        } catch (IOException e) {
+            EventLog.warn(directory.toString(), "Error scanning " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private interface ImageVisitor {
+        void visit(Path file, BasicFileAttributes attributes);
+    }
+
+    /**
+     * Visits every image under the directory, watching each directory on the way which isn't already.
+     */
+    private void walk(final Path start, final ImageVisitor visitor) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attributes) {
+                if (isExcluded(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                watch(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && labelingService.isImageFile(file) && shard.includes(file)) {
+                    visitor.visit(file, attributes);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException e) {
+                // deleted while walking, or unreadable, neither should stop the rest
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void watch(final Path dir) {
+        if (!watchedDirectories.add(dir)) {
+            return;
+        }
+        try {
+            final WatchKey key = dir.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watchKeys.put(key, dir);
+        } catch (IOException | ClosedWatchServiceException e) {
+            watchedDirectories.remove(dir);
+            // e.g. out of inotify watches (fs.inotify.max_user_watches)
+            EventLog.warn(dir.toString(), "Warning: Could not watch " + dir + ", changes there are only found by the rescans: " + e.getMessage());
+        }
+    }
+
+    private boolean isExcluded(final Path path) {
+        return path.startsWith(dataDirectory);
+    }
+
+    /**
+     * Queues the file to be labeled once it settles, restarting the wait if it was already queued.
+     */
+    private void markChanged(final Path file) {
+        pending.put(file, new PendingFile(-1, -1, System.nanoTime()));
+    }
+
+    /**
+     * Hands the files which have stopped changing to the labelers, run every {@link #SETTLE_CHECK_INTERVAL_MILLIS}.
+     */
+    private void labelSettledFiles() {
+        final long now = System.nanoTime();
+        for (final Map.Entry<Path, PendingFile> entry : pending.entrySet()) {
+            final Path file = entry.getKey();
+            final PendingFile pendingFile = entry.getValue();
+            if (labeling.contains(file)) {
+                // changed again while being labeled, it is looked at again once that's done
+                continue;
+            }
+
+            final BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                // a temporary file, or moved away again
+                pending.remove(file, pendingFile);
+                continue;
+            } catch (IOException e) {
+                continue;
+            }
+
+            final long size = attributes.size();
+            final long lastModified = attributes.lastModifiedTime().toMillis();
+            if (size != pendingFile.size() || lastModified != pendingFile.lastModified()) {
+                pending.replace(file, pendingFile, new PendingFile(size, lastModified, now));
+            } else if (now - pendingFile.stableSinceNanos() >= TimeUnit.SECONDS.toNanos(settleSeconds)
+                && pending.remove(file, pendingFile)) {
+                labeling.add(file);
+                try {
+                    labelers.execute(() -> {
+                        try {
+                            governor.acquire();
+                            try {
+                                labelIfNewOrChanged(file, lastModified);
+                            } finally {
+                                governor.release();
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            labeling.remove(file);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // stopping, the next watch finds it again
+                    labeling.remove(file);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void labelIfNewOrChanged(final Path file, final long lastModified) {
+        final String fullPath = file.toString();
+        final ImageInfoEntity existing = labelingService.findExistingImage(fullPath);
+        if (existing != null && !isChangedSince(existing.getFileLastModified(), lastModified)) {
+            // touched, or the scan found it while it was being labeled
+            return;
+        }
+
+        EventLog.notice((existing == null ? "New: " : "Changed: ") + fullPath);
+        EventLog.imageQueued();
+        final ImageLabelingService.ProcessedImage processed =
+            labelingService.processImage(file, failLogName, existing != null);
+        if (processed.outcome() == EventLog.Outcome.FAILED) {
+            failed.incrementAndGet();
+        } else if (processed.outcome() == EventLog.Outcome.LABELED || processed.outcome() == EventLog.Outcome.UPDATED) {
+            labeled.incrementAndGet();
+        }
+    }
+
+    /**
+     * @param recorded null for images saved before the modified time was recorded, those are taken to be unchanged
+     */
+    private static boolean isChangedSince(final Date recorded, final long lastModified) {
+        return recorded != null && recorded.getTime() != lastModified;
+    }
+}
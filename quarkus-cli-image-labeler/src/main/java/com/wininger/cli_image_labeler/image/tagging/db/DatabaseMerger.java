@@ -0,0 +1,249 @@
+package com.wininger.cli_image_labeler.image.tagging.db;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges another labeler database (e.g. one machine's shard, see --shard) into this one. The other database is
+ * attached to a connection and copied over with INSERT ... SELECT in a single transaction, so a merge which fails part
+ * way leaves this database as it was.
+ * <p>
+ * Where both have an image with the same path the one updated last is kept. Tags are matched by name, since their ids
+ * differ between databases, and the join rows are remapped to this database's tag ids. Merging the same database
+ * twice changes nothing the second time. The thumbnails of replaced entries are deleted once the merge is committed,
+ * unless an entry still names them.
+ */
+@ApplicationScoped
+public class DatabaseMerger {
+
+    /**
+     * What a merge did.
+     *
+     * @param imagesAdded        images copied over, including those replacing an older entry here
+     * @param imagesReplaced     entries here which were replaced by a newer one
+     * @param imagesKept         images not copied since the entry here is at least as new
+     * @param tagsAdded          tags this database didn't have yet
+     * @param skippedImages      skipped_images rows added or updated
+     * @param thumbnailsCopied   thumbnails copied into this data directory
+     * @param thumbnailsMissing  thumbnails the other database names but which weren't in its thumbnails directory
+     * @param thumbnailsDeleted  thumbnails of replaced entries which nothing names any more, deleted from this data
+     *                           directory
+     */
+    public record MergeResult(
+        int imagesAdded,
+        int imagesReplaced,
+        int imagesKept,
+        int tagsAdded,
+        int skippedImages,
+        int thumbnailsCopied,
+        int thumbnailsMissing,
+        int thumbnailsDeleted
+    ) {}
+
+    @Inject
+    DataSource dataSource;
+
+    /**
+     * @param otherDatabase    the image-tags.db to merge in
+     * @param otherThumbnails  the thumbnails directory which goes with it
+     * @param thumbnails       this data directory's thumbnails directory
+     */
+    public MergeResult merge(final Path otherDatabase, final Path otherThumbnails, final Path thumbnails)
+        throws SQLException, IOException {
+        try (Connection connection = dataSource.getConnection()) {
+            // SQLite can't attach a database inside a transaction
+            connection.setAutoCommit(true);
+            try (PreparedStatement attach = connection.prepareStatement("ATTACH DATABASE ? AS other")) {
+                attach.setString(1, otherDatabase.toString());
+                attach.execute();
+            }
+            try {
+                checkSchemaVersions(connection);
+                final List<String> replacedThumbnails = new ArrayList<>();
+                final MergeResult result;
+                connection.setAutoCommit(false);
+                try {
+                    result = copy(connection, otherThumbnails, thumbnails, replacedThumbnails);
+                    connection.commit();
+                } catch (SQLException | IOException | RuntimeException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                    execute(connection, "DROP TABLE IF EXISTS temp.merge_images");
+                }
+                return new MergeResult(result.imagesAdded(), result.imagesReplaced(), result.imagesKept(),
+                    result.tagsAdded(), result.skippedImages(), result.thumbnailsCopied(), result.thumbnailsMissing(),
+                    deleteUnusedThumbnails(connection, replacedThumbnails, thumbnails));
+            } finally {
+                execute(connection, "DETACH DATABASE other");
+            }
+        }
+    }
+
+    /**
+     * @param replacedThumbnails filled with the thumbnails of the entries here which are replaced
+     */
+    private MergeResult copy(
+        final Connection connection,
+        final Path otherThumbnails,
+        final Path thumbnails,
+        final List<String> replacedThumbnails
+    ) throws SQLException, IOException {
+        final int tagsAdded = execute(connection,
+            "INSERT OR IGNORE INTO main.tags (tag_name, created_at, updated_at) " +
+            "SELECT tag_name, created_at, updated_at FROM other.tags");
+
+        // the other database's images to take, those with no entry here or a newer one
+        execute(connection, "CREATE TEMP TABLE merge_images (id BLOB PRIMARY KEY, full_path TEXT NOT NULL, thumb_nail_name TEXT)");
+        final int imagesAdded = execute(connection,
+            "INSERT INTO temp.merge_images (id, full_path, thumb_nail_name) " +
+            "SELECT o.id, o.full_path, o.thumb_nail_name FROM other.image_info o " +
+            "WHERE NOT EXISTS (SELECT 1 FROM main.image_info m WHERE m.full_path = o.full_path AND m.updated_at >= o.updated_at)");
+        final int imagesKept = queryInt(connection, "SELECT count(*) FROM other.image_info") - imagesAdded;
+
+        replacedThumbnails.addAll(queryStrings(connection,
+            "SELECT thumb_nail_name FROM main.image_info " +
+            "WHERE thumb_nail_name IS NOT NULL AND full_path IN (SELECT full_path FROM temp.merge_images)"));
+        execute(connection,
+            "DELETE FROM main.image_info_tag_join WHERE image_info_id IN " +
+            "(SELECT id FROM main.image_info WHERE full_path IN (SELECT full_path FROM temp.merge_images))");
+        final int imagesReplaced = execute(connection,
+            "DELETE FROM main.image_info WHERE full_path IN (SELECT full_path FROM temp.merge_images)");
+
+        // copy whatever columns the (same version) schema has, so a new migration doesn't need a change here
+        final String columns = String.join(", ", columns(connection));
+        execute(connection,
+            "INSERT INTO main.image_info (" + columns + ") " +
+            "SELECT " + columns + " FROM other.image_info WHERE id IN (SELECT id FROM temp.merge_images)");
+        execute(connection,
+            "INSERT OR IGNORE INTO main.image_info_tag_join (image_info_id, tag_id, created_at) " +
+            "SELECT j.image_info_id, m.id, j.created_at FROM other.image_info_tag_join j " +
+            "JOIN other.tags o ON o.id = j.tag_id " +
+            "JOIN main.tags m ON m.tag_name = o.tag_name " +
+            "WHERE j.image_info_id IN (SELECT id FROM temp.merge_images)");
+
+        final int skippedImages = execute(connection,
+            "INSERT INTO main.skipped_images (full_path, reason, file_size, file_last_modified, created_at, updated_at) " +
+            "SELECT full_path, reason, file_size, file_last_modified, created_at, updated_at FROM other.skipped_images WHERE true " +
+            "ON CONFLICT(full_path) DO UPDATE SET reason = excluded.reason, file_size = excluded.file_size, " +
+            "file_last_modified = excluded.file_last_modified, updated_at = excluded.updated_at " +
+            "WHERE excluded.updated_at > skipped_images.updated_at");
+
+        // copied before committing, if one fails the rows naming it aren't kept
+        int thumbnailsCopied = 0;
+        int thumbnailsMissing = 0;
+        for (final String thumbnail : queryStrings(connection,
+            "SELECT thumb_nail_name FROM temp.merge_images WHERE thumb_nail_name IS NOT NULL")) {
+            final Path source = otherThumbnails.resolve(thumbnail);
+            if (!Files.isRegularFile(source)) {
+                thumbnailsMissing++;
+                continue;
+            }
+            Files.copy(source, thumbnails.resolve(thumbnail), StandardCopyOption.REPLACE_EXISTING);
+            thumbnailsCopied++;
+        }
+
+        return new MergeResult(imagesAdded, imagesReplaced, imagesKept, tagsAdded, skippedImages,
+            thumbnailsCopied, thumbnailsMissing, 0);
+    }
+
+    /**
+     * Deletes the replaced entries' thumbnails which no entry names any more. Thumbnails are named after the image's
+     * path, so usually the newer entry's thumbnail has just been copied over the old one and is kept. Runs after the
+     * commit, a thumbnail which can't be deleted is only reported.
+     */
+    private static int deleteUnusedThumbnails(
+        final Connection connection,
+        final List<String> replacedThumbnails,
+        final Path thumbnails
+    ) throws SQLException {
+        int deleted = 0;
+        try (PreparedStatement stillNamed = connection.prepareStatement(
+            "SELECT 1 FROM main.image_info WHERE thumb_nail_name = ? LIMIT 1")) {
+            for (final String thumbnail : replacedThumbnails) {
+                stillNamed.setString(1, thumbnail);
+                try (ResultSet results = stillNamed.executeQuery()) {
+                    if (results.next()) {
+                        continue;
+                    }
+                }
+                try {
+                    if (Files.deleteIfExists(thumbnails.resolve(thumbnail))) {
+                        deleted++;
+                    }
+                } catch (IOException e) {
+                    System.err.println("Warning: Could not delete the replaced thumbnail " + thumbnails.resolve(thumbnail)
+                        + ": " + e.getMessage());
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Refuses to merge databases at different migration versions, the columns wouldn't line up.
+     */
+    private static void checkSchemaVersions(final Connection connection) throws SQLException {
+        final int ours = schemaVersion(connection, "main");
+        final int theirs;
+        try {
+            theirs = schemaVersion(connection, "other");
+        } catch (SQLException e) {
+            throw new SQLException("It is not an image labeler database (" + e.getMessage() + ")", e);
+        }
+        if (theirs < ours) {
+            throw new SQLException("It is at schema version " + theirs + " and this database at " + ours
+                + ", bring it up to date first with run-migrations (with IL_DATA_LOCATION set to its data directory)");
+        }
+        if (theirs > ours) {
+            throw new SQLException("It is at schema version " + theirs + ", newer than this database's " + ours
+                + ", it was written by a newer version of the labeler");
+        }
+    }
+
+    private static int schemaVersion(final Connection connection, final String database) throws SQLException {
+        return queryInt(connection,
+            "SELECT max(CAST(version AS INTEGER)) FROM " + database + ".flyway_schema_history WHERE success = 1");
+    }
+
+    private static List<String> columns(final Connection connection) throws SQLException {
+        return queryStrings(connection, "SELECT name FROM pragma_table_info('image_info', 'main')");
+    }
+
+    private static int execute(final Connection connection, final String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+            return statement.getUpdateCount();
+        }
+    }
+
+    private static int queryInt(final Connection connection, final String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet results = statement.executeQuery(sql)) {
+            return results.next() ? results.getInt(1) : 0;
+        }
+    }
+
+    private static List<String> queryStrings(final Connection connection, final String sql) throws SQLException {
+        final List<String> values = new ArrayList<>();
+        try (Statement statement = connection.createStatement(); ResultSet results = statement.executeQuery(sql)) {
+            while (results.next()) {
+                values.add(results.getString(1));
+            }
+        }
+        return values;
+    }
+}
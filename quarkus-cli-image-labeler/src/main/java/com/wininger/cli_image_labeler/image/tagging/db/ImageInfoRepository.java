@@ -1,15 +1,21 @@
 package com.wininger.cli_image_labeler.image.tagging.db;
 
+import com.wininger.cli_image_labeler.image.tagging.jfr.RecordDatabaseEvents;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
 import jakarta.transaction.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 @ApplicationScoped
+@RecordDatabaseEvents
 public class ImageInfoRepository {
 
     @PersistenceContext
@@ -42,6 +48,22 @@ public class ImageInfoRepository {
         return entityManager.merge(entity);
     }
 
+    /**
+     * Sets just the text contents of an already saved image, without loading it (and its tags) first.
+     *
+     * @return false if there is no image saved with this path
+     */
+    @Transactional
+    public boolean updateTextContents(final String fullPath, final String textContents) {
+        return entityManager.createQuery(
+            "UPDATE ImageInfoEntity e SET e.textContents = :textContents, e.updatedAt = :updatedAt WHERE e.fullPath = :fullPath"
+        )
+        .setParameter("textContents", textContents)
+        .setParameter("updatedAt", LocalDateTime.now())
+        .setParameter("fullPath", fullPath)
+        .executeUpdate() > 0;
+    }
+
     @Transactional
     public ImageInfoEntity findByFullPath(final String fullPath) {
         return entityManager.createQuery(
@@ -53,4 +75,64 @@ public class ImageInfoRepository {
         .findFirst()
         .orElse(null);
     }
+
+    /**
+     * Images with all of the given tags whose title, description or text contains the text (ignoring case), the most
+     * recently labeled first.
+     *
+     * @param tags  may be empty
+     * @param text  may be null
+     */
+    @Transactional
+    public List<ImageInfoEntity> search(final List<String> tags, final String text, final int limit) {
+        final StringBuilder jpql = new StringBuilder("SELECT e.id FROM ImageInfoEntity e WHERE 1 = 1");
+        for (int i = 0; i < tags.size(); i++) {
+            jpql.append(" AND EXISTS (SELECT t FROM ImageInfoEntity i JOIN i.tags t WHERE i = e AND t.tagName = :tag")
+                .append(i).append(")");
+        }
+        if (text != null) {
+            jpql.append(" AND (LOWER(e.shortTitle) LIKE :text ESCAPE '\\' OR LOWER(e.description) LIKE :text ESCAPE '\\'")
+                .append(" OR LOWER(e.textContents) LIKE :text ESCAPE '\\')");
+        }
+        jpql.append(" ORDER BY e.updatedAt DESC");
+
+        final TypedQuery<UUID> idQuery = entityManager.createQuery(jpql.toString(), UUID.class);
+        for (int i = 0; i < tags.size(); i++) {
+            idQuery.setParameter("tag" + i, tags.get(i));
+        }
+        if (text != null) {
+            final String escaped = text.toLowerCase().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+            idQuery.setParameter("text", "%" + escaped + "%");
+        }
+        final List<UUID> ids = idQuery.setMaxResults(limit).getResultList();
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        // fetched separately, limiting a query which fetches the tags too would be done in memory
+        return entityManager.createQuery(
+            "SELECT DISTINCT e FROM ImageInfoEntity e LEFT JOIN FETCH e.tags WHERE e.id IN :ids ORDER BY e.updatedAt DESC",
+            ImageInfoEntity.class
+        )
+        .setParameter("ids", ids)
+        .getResultList();
+    }
+
+    @Transactional
+    public long count() {
+        return entityManager.createQuery("SELECT COUNT(e) FROM ImageInfoEntity e", Long.class).getSingleResult();
+    }
+
+    /**
+     * When each saved image's file was last modified (null for images saved before that was recorded), by path, to
+     * find the files which changed since without a query per file.
+     */
+    @Transactional
+    public Map<String, Date> findFileLastModifiedByPath() {
+        final Map<String, Date> lastModified = new HashMap<>();
+        entityManager.createQuery("SELECT e.fullPath, e.fileLastModified FROM ImageInfoEntity e", Object[].class)
+            .getResultStream()
+            .forEach(row -> lastModified.put((String) row[0], (Date) row[1]));
+        return lastModified;
+    }
 }
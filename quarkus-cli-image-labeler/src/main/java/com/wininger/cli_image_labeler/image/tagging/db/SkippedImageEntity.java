@@ -0,0 +1,88 @@
+package com.wininger.cli_image_labeler.image.tagging.db;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "skipped_images")
+public class SkippedImageEntity {
+
+    @Id
+    @Column(nullable = false, length = 2048, name = "full_path")
+    private String fullPath;
+
+    @Column(nullable = false)
+    private String reason;
+
+    @Column(nullable = false, name = "file_size")
+    private Long fileSize;
+
+    // epoch millis, compared against the file to tell if it changed since it was skipped
+    @Column(nullable = false, name = "file_last_modified")
+    private Long fileLastModified;
+
+    @Column(nullable = false, name = "created_at")
+    @jakarta.persistence.Convert(converter = LocalDateTimeConverter.class)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false, name = "updated_at")
+    @jakarta.persistence.Convert(converter = LocalDateTimeConverter.class)
+    private LocalDateTime updatedAt;
+
+    // Default constructor for JPA
+    public SkippedImageEntity() {
+    }
+
+    // Getters and Setters
+    public String getFullPath() {
+        return fullPath;
+    }
+
+    public void setFullPath(String fullPath) {
+        this.fullPath = fullPath;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+
+    public Long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(Long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public Long getFileLastModified() {
+        return fileLastModified;
+    }
+
+    public void setFileLastModified(Long fileLastModified) {
+        this.fileLastModified = fileLastModified;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,61 @@
+package com.wininger.cli_image_labeler.image.tagging.db;
+
+import com.wininger.cli_image_labeler.image.tagging.jfr.RecordDatabaseEvents;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+@ApplicationScoped
+@RecordDatabaseEvents
+public class SkippedImageRepository {
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    @Transactional
+    public void upsert(final String fullPath, final String reason, final long fileSize, final long fileLastModified) {
+        final String now = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+
+        entityManager.createNativeQuery(
+            "INSERT INTO skipped_images (full_path, reason, file_size, file_last_modified, created_at, updated_at) " +
+            "VALUES (:fullPath, :reason, :fileSize, :fileLastModified, :now, :now) " +
+            "ON CONFLICT(full_path) DO UPDATE SET reason = :reason, file_size = :fileSize, " +
+            "file_last_modified = :fileLastModified, updated_at = :now")
+            .setParameter("fullPath", fullPath)
+            .setParameter("reason", reason)
+            .setParameter("fileSize", fileSize)
+            .setParameter("fileLastModified", fileLastModified)
+            .setParameter("now", now)
+            .executeUpdate();
+    }
+
+    @Transactional
+    public SkippedImageEntity findByFullPath(final String fullPath) {
+        return entityManager.find(SkippedImageEntity.class, fullPath);
+    }
+
+    @Transactional
+    public void delete(final String fullPath) {
+        entityManager.createQuery("DELETE FROM SkippedImageEntity s WHERE s.fullPath = :fullPath")
+            .setParameter("fullPath", fullPath)
+            .executeUpdate();
+    }
+
+    /**
+     * When each skipped image's file was last modified, by path.
+     */
+    @Transactional
+    public Map<String, Long> findFileLastModifiedByPath() {
+        final Map<String, Long> lastModified = new HashMap<>();
+        entityManager.createQuery("SELECT s.fullPath, s.fileLastModified FROM SkippedImageEntity s", Object[].class)
+            .getResultStream()
+            .forEach(row -> lastModified.put((String) row[0], (Long) row[1]));
+        return lastModified;
+    }
+}
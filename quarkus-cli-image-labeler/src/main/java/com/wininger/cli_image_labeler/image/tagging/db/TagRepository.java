@@ -1,5 +1,6 @@
 package com.wininger.cli_image_labeler.image.tagging.db;
 
+import com.wininger.cli_image_labeler.image.tagging.jfr.RecordDatabaseEvents;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
@@ -10,6 +11,7 @@ import java.time.format.DateTimeFormatter;
 import java.util.List;
 
 @ApplicationScoped
+@RecordDatabaseEvents
 public class TagRepository {
 
     @PersistenceContext
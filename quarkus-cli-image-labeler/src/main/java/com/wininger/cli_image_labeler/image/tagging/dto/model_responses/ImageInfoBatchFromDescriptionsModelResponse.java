@@ -0,0 +1,10 @@
+package com.wininger.cli_image_labeler.image.tagging.dto.model_responses;
+
+import dev.langchain4j.model.output.structured.Description;
+
+import java.util.List;
+
+public record ImageInfoBatchFromDescriptionsModelResponse(
+    @Description("One entry for each numbered image description, in the same order. REQUIRED field.")
+    List<ImageInfoBatchItemModelResponse> images
+) {}
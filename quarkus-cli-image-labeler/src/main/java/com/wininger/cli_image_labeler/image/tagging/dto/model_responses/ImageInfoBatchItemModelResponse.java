@@ -0,0 +1,33 @@
+package com.wininger.cli_image_labeler.image.tagging.dto.model_responses;
+
+import dev.langchain4j.model.output.structured.Description;
+
+import java.util.List;
+
+/**
+ * An ImageInfoFromDescriptionModelResponse for one of the descriptions in a batch, with the number of the description
+ * it belongs to.
+ */
+public record ImageInfoBatchItemModelResponse(
+    @Description("The number of the image description this entry is for. REQUIRED field.")
+    Integer imageNumber,
+
+    @Description("A list of tags describing the image based on the description. Include relevant keywords for subjects, objects, settings, colors, and themes. REQUIRED field.")
+    List<String> tags,
+
+    @Description("A full generic description of the image contents, summarizing the key elements. REQUIRED field.")
+    String fullDescription,
+
+    @Description("A very short title for the image (max 100 characters). REQUIRED field.")
+    String shortTitle,
+
+    @Description("Briefly explain whether the image contains any visible text and what that text is about (e.g., 'Contains a sign reading Welcome', 'Shows a book page with paragraphs of text', 'Is an explanation a concept', 'No visible text'). REQUIRED field.")
+    String doesContainText,
+
+    @Description("A boolean value indicating if there was any readable tex in the image (true/false). REQUIRED field.")
+    Boolean hasText
+) {
+  public ImageInfoFromDescriptionModelResponse toImageInfoFromDescription() {
+    return new ImageInfoFromDescriptionModelResponse(tags, fullDescription, shortTitle, doesContainText, hasText);
+  }
+}
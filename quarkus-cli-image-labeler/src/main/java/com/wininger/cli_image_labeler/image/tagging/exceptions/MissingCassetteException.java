@@ -0,0 +1,8 @@
+package com.wininger.cli_image_labeler.image.tagging.exceptions;
+
+public class MissingCassetteException extends ImageProcessingException
+{
+  public MissingCassetteException(final String message) {
+    super(message, null);
+  }
+}
@@ -0,0 +1,8 @@
+package com.wininger.cli_image_labeler.image.tagging.exceptions;
+
+public class NoOllamaEndpointAvailableException extends ImageProcessingException
+{
+  public NoOllamaEndpointAvailableException(final String message, final Throwable cause) {
+    super(message, cause);
+  }
+}
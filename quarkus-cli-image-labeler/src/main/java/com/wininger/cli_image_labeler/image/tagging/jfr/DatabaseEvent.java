@@ -0,0 +1,29 @@
+package com.wininger.cli_image_labeler.image.tagging.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A repository call, including its transaction (so any wait for the SQLite write lock and the commit), see
+ * {@link DatabaseEventInterceptor}.
+ */
+@Name("com.wininger.imagelabeler.Database")
+@Label("Database Operation")
+@Category({"Image Labeler"})
+@Description("A repository call including its transaction, waiting on the SQLite lock and committing")
+@StackTrace(false)
+public class DatabaseEvent extends Event {
+  @Label("Operation")
+  String operation;
+
+  @Label("Key")
+  @Description("The image path or tag the operation was for")
+  String key;
+
+  @Label("Succeeded")
+  boolean succeeded;
+}
@@ -0,0 +1,41 @@
+package com.wininger.cli_image_labeler.image.tagging.jfr;
+
+import jakarta.annotation.Priority;
+import jakarta.interceptor.AroundInvoke;
+import jakarta.interceptor.Interceptor;
+import jakarta.interceptor.InvocationContext;
+
+/**
+ * Wraps repository calls in a {@link DatabaseEvent}. Runs before (outside of) the @Transactional interceptor, so the
+ * event covers beginning and committing the transaction, which is where SQLite waits for its lock.
+ */
+@RecordDatabaseEvents
+@Interceptor
+@Priority(Interceptor.Priority.PLATFORM_BEFORE)
+public class DatabaseEventInterceptor {
+
+  @AroundInvoke
+  Object record(final InvocationContext context) throws Exception {
+    final DatabaseEvent event = new DatabaseEvent();
+    if (!event.isEnabled()) {
+      return context.proceed();
+    }
+
+    event.operation = context.getMethod().getDeclaringClass().getSimpleName() + "." + context.getMethod().getName();
+    // every repository method is keyed by its first argument, the image path or tag name (or the entity)
+    final Object[] parameters = context.getParameters();
+    event.key = parameters.length > 0 && parameters[0] instanceof String key ? key : null;
+
+    event.begin();
+    try {
+      final Object result = context.proceed();
+      event.succeeded = true;
+      return result;
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.commit();
+      }
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package com.wininger.cli_image_labeler.image.tagging.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Labeling one image from start to finish, the {@link PipelineStageEvent}s on the same thread during it are its stages.
+ */
+@Name("com.wininger.imagelabeler.ImageLabel")
+@Label("Image Labeled")
+@Category({"Image Labeler"})
+@Description("Labeling one image, from decoding it to its metadata and thumbnail")
+@StackTrace(false)
+public class ImageLabelEvent extends Event {
+  @Label("Image Path")
+  private String imagePath;
+
+  @Label("Profile")
+  private String profile;
+
+  @Label("Width")
+  @Description("Width in pixels of the original image")
+  private int width;
+
+  @Label("Height")
+  @Description("Height in pixels of the original image")
+  private int height;
+
+  @Label("File Size")
+  @DataAmount
+  private long fileBytes;
+
+  @Label("Read As Document")
+  @Description("Whether the image was read with OCR rather than described")
+  private boolean document;
+
+  @Label("Succeeded")
+  private boolean succeeded;
+
+  public static ImageLabelEvent begin(final String imagePath, final String profile) {
+    final ImageLabelEvent event = new ImageLabelEvent();
+    event.imagePath = imagePath;
+    event.profile = profile;
+    event.begin();
+    return event;
+  }
+
+  public ImageLabelEvent dimensions(final int width, final int height) {
+    this.width = width;
+    this.height = height;
+    return this;
+  }
+
+  public ImageLabelEvent fileBytes(final long fileBytes) {
+    this.fileBytes = fileBytes;
+    return this;
+  }
+
+  public ImageLabelEvent document(final boolean document) {
+    this.document = document;
+    return this;
+  }
+
+  public ImageLabelEvent succeeded() {
+    this.succeeded = true;
+    return this;
+  }
+
+  public void finish() {
+    end();
+    if (shouldCommit()) {
+      commit();
+    }
+  }
+}
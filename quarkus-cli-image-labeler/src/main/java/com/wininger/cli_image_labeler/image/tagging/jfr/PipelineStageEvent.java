@@ -0,0 +1,88 @@
+package com.wininger.cli_image_labeler.image.tagging.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One stage of labeling an image (decode, resize, encode, describe, extract, metadata...), as a Java Flight Recorder
+ * event so the stages can be lined up with GC, allocation and lock events in JDK Mission Control. Events which happen
+ * while an image is labeled are on the same thread as, and inside, its {@link ImageLabelEvent}.
+ *
+ * <pre>
+ *   final PipelineStageEvent event = PipelineStageEvent.begin("decode", imagePath);
+ *   ...
+ *   event.dimensions(width, height).bytes(fileSize).finish();
+ * </pre>
+ *
+ * Costs next to nothing when no recording is running.
+ */
+@Name("com.wininger.imagelabeler.PipelineStage")
+@Label("Pipeline Stage")
+@Category({"Image Labeler"})
+@Description("A stage of labeling an image")
+@StackTrace(false)
+public class PipelineStageEvent extends Event {
+  @Label("Stage")
+  private String stage;
+
+  @Label("Image Path")
+  private String imagePath;
+
+  @Label("Width")
+  @Description("Width in pixels of the image the stage produced (or read)")
+  private int width;
+
+  @Label("Height")
+  @Description("Height in pixels of the image the stage produced (or read)")
+  private int height;
+
+  @Label("Bytes")
+  @Description("Size of what the stage read or produced, e.g. the file decoded or the JPEG encoded")
+  @DataAmount
+  private long bytes;
+
+  @Label("Model")
+  private String model;
+
+  /**
+   * @param imagePath the image the stage is for, null where it isn't known (e.g. in ImageUtils)
+   */
+  public static PipelineStageEvent begin(final String stage, final String imagePath) {
+    final PipelineStageEvent event = new PipelineStageEvent();
+    event.stage = stage;
+    event.imagePath = imagePath;
+    event.begin();
+    return event;
+  }
+
+  public PipelineStageEvent dimensions(final int width, final int height) {
+    this.width = width;
+    this.height = height;
+    return this;
+  }
+
+  public PipelineStageEvent bytes(final long bytes) {
+    this.bytes = bytes;
+    return this;
+  }
+
+  public PipelineStageEvent model(final String model) {
+    this.model = model;
+    return this;
+  }
+
+  /**
+   * Ends the stage and records it, if a recording wants it.
+   */
+  public void finish() {
+    end();
+    if (shouldCommit()) {
+      commit();
+    }
+  }
+}
@@ -0,0 +1,17 @@
+package com.wininger.cli_image_labeler.image.tagging.jfr;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import jakarta.interceptor.InterceptorBinding;
+
+/**
+ * Records a {@link DatabaseEvent} for every call to the annotated repository's methods.
+ */
+@InterceptorBinding
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RecordDatabaseEvents {
+}
@@ -0,0 +1,177 @@
+package com.wininger.cli_image_labeler.image.tagging.ollama;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.wininger.cli_image_labeler.image.tagging.exceptions.MissingCassetteException;
+import com.wininger.cli_image_labeler.image.tagging.utils.EventLog;
+import com.wininger.cli_image_labeler.image.tagging.utils.SingleFlight;
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpRequest;
+import dev.langchain4j.http.client.SuccessfulHttpResponse;
+import dev.langchain4j.http.client.sse.ServerSentEventListener;
+import dev.langchain4j.http.client.sse.ServerSentEventParser;
+
+import static com.wininger.cli_image_labeler.image.tagging.utils.HashUtils.sha256Hex;
+
+/**
+ * Records model responses to "cassette" files and plays them back, so tests can run without Ollama (and quickly).
+ *
+ * Each successful response is stored in `<directory>/<hash of the request>.json`. The hash covers the method, url and
+ * body of the request, so a changed prompt, model, image or option is a different cassette. Failed requests are never
+ * recorded. Cassettes are written to a temporary file and then moved into place, so tests running in parallel never
+ * see a half written one, and concurrent identical requests are only sent to the model once while recording.
+ */
+public class CassetteHttpClient implements HttpClient {
+  public enum Mode {
+    /** Requests go straight to the model, cassettes are neither read nor written */
+    OFF,
+    /** Every request goes to the model and its response is (re-)recorded, the only mode which writes cassettes */
+    RECORD,
+    /** Every request must have a cassette, nothing is sent to the model */
+    REPLAY,
+    /**
+     * Replay when there is a cassette, otherwise send the request to the model without recording it. A test which
+     * fails on a bad response mustn't leave it behind for its retries (and every later run) to replay
+     */
+    AUTO
+  }
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+  // only the start of a request is saved alongside its response, to make cassettes easier to identify. The full body
+  // is often a base64 encoded image.
+  private static final int REQUEST_PREVIEW_LENGTH = 500;
+
+  private final HttpClient delegate;
+  private final Mode mode;
+  private final Path directory;
+
+  private final SingleFlight<String, SuccessfulHttpResponse> recordingsInFlight = new SingleFlight<>("recording");
+
+  private final AtomicLong replayed = new AtomicLong();
+  private final AtomicLong recorded = new AtomicLong();
+
+  public CassetteHttpClient(final HttpClient delegate, final Mode mode, final Path directory) {
+    this.delegate = delegate;
+    this.mode = mode;
+    this.directory = directory;
+  }
+
+  @Override
+  public SuccessfulHttpResponse execute(final HttpRequest request) {
+    if (mode == Mode.OFF) {
+      return delegate.execute(request);
+    }
+
+    final String key = cassetteKey(request);
+    final Path cassette = directory.resolve(key + ".json");
+
+    if (mode != Mode.RECORD && Files.exists(cassette)) {
+      replayed.incrementAndGet();
+      return readCassette(cassette);
+    }
+
+    if (mode == Mode.REPLAY) {
+      throw new MissingCassetteException(
+          "No cassette for request to %s (%s), re-record with il.ollama.cassette.mode=record against a live Ollama"
+              .formatted(request.url(), cassette));
+    }
+
+    if (mode == Mode.AUTO) {
+      return delegate.execute(request);
+    }
+
+    return recordingsInFlight.execute(key, () -> {
+      final SuccessfulHttpResponse response = delegate.execute(request);
+      writeCassette(cassette, request, response);
+      recorded.incrementAndGet();
+      return response;
+    });
+  }
+
+  @Override
+  public void execute(final HttpRequest request, final ServerSentEventParser parser,
+                      final ServerSentEventListener listener) {
+    // streaming isn't used by the labeling pipeline, so it isn't recorded
+    delegate.execute(request, parser, listener);
+  }
+
+  public Mode mode() {
+    return mode;
+  }
+
+  public void printSummary(final PrintStream out) {
+    if (mode != Mode.OFF) {
+      out.printf("Cassettes (%s): %d replayed, %d recorded in %s%n",
+          mode.name().toLowerCase(), replayed.get(), recorded.get(), directory.toAbsolutePath());
+    }
+  }
+
+  static String cassetteKey(final HttpRequest request) {
+    return sha256Hex(request.method() + " " + request.url() + "\n" + (request.body() == null ? "" : request.body()));
+  }
+
+  private SuccessfulHttpResponse readCassette(final Path cassette) {
+    try {
+      final Cassette recording = OBJECT_MAPPER.readValue(cassette.toFile(), Cassette.class);
+      return SuccessfulHttpResponse.builder()
+          .statusCode(recording.statusCode())
+          .headers(recording.headers())
+          .body(recording.body())
+          .build();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read cassette " + cassette, e);
+    }
+  }
+
+  private void writeCassette(final Path cassette, final HttpRequest request, final SuccessfulHttpResponse response) {
+    final String body = request.body() == null ? "" : request.body();
+    final Cassette recording = new Cassette(
+        request.method() + " " + request.url(),
+        body.substring(0, Math.min(REQUEST_PREVIEW_LENGTH, body.length())),
+        response.statusCode(),
+        response.headers() == null ? Map.of() : new LinkedHashMap<>(response.headers()),
+        response.body());
+
+    try {
+      Files.createDirectories(directory);
+      final Path temp = Files.createTempFile(directory, ".cassette-", ".tmp");
+      try {
+        OBJECT_MAPPER.writeValue(temp.toFile(), recording);
+        try {
+          Files.move(temp, cassette, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(temp, cassette, StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    } catch (IOException e) {
+      // the response is still good, we just won't be able to replay it
+      EventLog.warn(null, "Warning: Could not write cassette " + cassette + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * What is stored in a cassette file.
+   */
+  record Cassette(
+      String request,
+      String requestPreview,
+      int statusCode,
+      Map<String, List<String>> headers,
+      String body
+  ) {}
+}
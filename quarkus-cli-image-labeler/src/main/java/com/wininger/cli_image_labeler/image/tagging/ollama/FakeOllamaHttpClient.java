@@ -0,0 +1,314 @@
+package com.wininger.cli_image_labeler.image.tagging.ollama;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpRequest;
+import dev.langchain4j.http.client.SuccessfulHttpResponse;
+import dev.langchain4j.http.client.sse.ServerSentEventListener;
+import dev.langchain4j.http.client.sse.ServerSentEventParser;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import static com.wininger.cli_image_labeler.image.tagging.utils.HashUtils.sha256Hex;
+
+/**
+ * Stands in for Ollama when `il.model.backend=fake`, so the rest of the pipeline (decoding, resizing, the database,
+ * scheduling) can be exercised and benchmarked without a GPU.
+ *
+ * Answers the Ollama api the models use with made up but well formed responses: a free-form description for plain
+ * chat requests, JSON matching the requested schema for structured ones (i.e. an ImageInfoFromDescriptionModelResponse),
+ * or one for each numbered description of a batched extraction (ImageInfoBatchFromDescriptionsModelResponse), and
+ * embeddings. Responses, latencies and errors are all derived from a hash of the request, so the same input gets
+ * the same result from run to run. Latencies follow a log-normal distribution around the configured median.
+ *
+ * Like Ollama (OLLAMA_NUM_PARALLEL), each model can be limited to a number of requests it works on at once, further
+ * requests for that model queue. Different models don't share slots.
+ */
+@ApplicationScoped
+public class FakeOllamaHttpClient implements HttpClient {
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private static final int EMBEDDING_DIMENSIONS = 768;
+
+  // how often a made up image "contains text"
+  private static final double TEXT_RATE = 0.1;
+
+  // Each further description in a batched extraction adds this share of an extract latency, the instructions and the
+  // request overhead are only paid once
+  private static final double BATCH_ITEM_LATENCY_SHARE = 0.6;
+
+  // where each description starts in a batched extraction, see ImageInfoService.extractBatch
+  private static final Pattern BATCH_ITEM_HEADER = Pattern.compile("(?m)^Image \\d+:$");
+
+  private static final List<String> SUBJECTS = List.of(
+      "dog", "cat", "man", "woman", "child", "bicycle", "car", "tree", "mountain", "lake", "house", "bird", "flower",
+      "boat", "bridge", "horse", "chicken", "guitar", "table", "beach");
+  private static final List<String> SETTINGS = List.of(
+      "park", "kitchen", "forest", "city street", "garden", "living room", "farm", "harbor", "field", "snowy hillside");
+  private static final List<String> COLORS = List.of(
+      "red", "blue", "green", "yellow", "brown", "white", "black", "orange", "gray", "purple");
+  private static final List<String> MOODS = List.of(
+      "sunny", "overcast", "golden hour", "night", "foggy", "bright", "dim", "colorful");
+
+  private final Duration describeLatency;
+  private final Duration extractLatency;
+  private final double latencySpread;
+  private final double errorRate;
+  private final int modelSlots;
+
+  private final Map<String, Semaphore> slotsByModel = new ConcurrentHashMap<>();
+
+  // how many times each distinct request has been seen, so a retry of a request that failed can succeed
+  private final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong errors = new AtomicLong();
+
+  /**
+   * @param describeLatency median latency of a plain (description) chat request
+   * @param extractLatency median latency of a structured (JSON) chat request
+   * @param latencySpread standard deviation of the log of the latency, 0 makes every latency exactly the median
+   * @param errorRate fraction (0-1) of requests which fail with an http 500
+   * @param modelSlots how many chat requests each model works on at once, 0 for no limit
+   */
+  @Inject
+  public FakeOllamaHttpClient(
+      @ConfigProperty(name = "il.model.fake.describe-latency", defaultValue = "1500ms") Duration describeLatency,
+      @ConfigProperty(name = "il.model.fake.extract-latency", defaultValue = "500ms") Duration extractLatency,
+      @ConfigProperty(name = "il.model.fake.latency-spread", defaultValue = "0.3") double latencySpread,
+      @ConfigProperty(name = "il.model.fake.error-rate", defaultValue = "0") double errorRate,
+      @ConfigProperty(name = "il.model.fake.model-slots", defaultValue = "0") int modelSlots
+  ) {
+    this.describeLatency = describeLatency;
+    this.extractLatency = extractLatency;
+    this.latencySpread = latencySpread;
+    this.errorRate = errorRate;
+    this.modelSlots = modelSlots;
+  }
+
+  @Override
+  public SuccessfulHttpResponse execute(final HttpRequest request) {
+    requests.incrementAndGet();
+
+    final String body = request.body() == null ? "" : request.body();
+    final String requestHash = sha256Hex(request.url() + "\n" + body);
+    final int attempt = attempts.computeIfAbsent(requestHash, ignored -> new AtomicInteger()).getAndIncrement();
+
+    // the content only depends on the request, the latency and failures also on which attempt this is
+    final Random contentRandom = new Random(requestHash.hashCode());
+    final Random attemptRandom = new Random(31L * requestHash.hashCode() + attempt);
+
+    try {
+      final JsonNode json = body.isBlank() ? OBJECT_MAPPER.createObjectNode() : OBJECT_MAPPER.readTree(body);
+
+      if (request.url().endsWith("api/embed")) {
+        return respond(embeddings(json, contentRandom));
+      }
+      if (!request.url().endsWith("api/chat")) {
+        return respond(Map.of("version", "fake"));
+      }
+
+      final boolean structured = json.has("format");
+      final List<String> batchItems = json.path("format").path("properties").has("images")
+          ? batchItems(lastMessage(json))
+          : null;
+      final Duration latency = !structured
+          ? describeLatency
+          : batchItems == null
+              ? extractLatency
+              : extractLatency.multipliedBy(Math.round(1000 * (1 + BATCH_ITEM_LATENCY_SHARE * (batchItems.size() - 1))))
+                  .dividedBy(1000);
+      final long latencyNanos = generate(json.path("model").asText("fake"), latency, attemptRandom);
+
+      if (attemptRandom.nextDouble() < errorRate) {
+        errors.incrementAndGet();
+        throw new HttpException(500, "{\"error\":\"fake model error\"}");
+      }
+
+      final String content;
+      if (batchItems != null) {
+        content = OBJECT_MAPPER.writeValueAsString(batchImageInfo(batchItems, contentRandom));
+      } else if (structured) {
+        content = OBJECT_MAPPER.writeValueAsString(imageInfo(lastMessage(json), contentRandom));
+      } else {
+        content = description(contentRandom);
+      }
+
+      return respond(chatResponse(json.path("model").asText("fake"), content, latencyNanos));
+    } catch (JsonProcessingException e) {
+      throw new HttpException(400, "{\"error\":\"fake backend could not parse the request: " + e.getMessage() + "\"}");
+    }
+  }
+
+  @Override
+  public void execute(final HttpRequest request, final ServerSentEventParser parser,
+                      final ServerSentEventListener listener) {
+    throw new UnsupportedOperationException("The fake model backend does not support streaming");
+  }
+
+  public void printSummary(final PrintStream out) {
+    out.printf("%nFake model backend: %d requests, %d failed%n", requests.get(), errors.get());
+  }
+
+  private String description(final Random random) {
+    final String subject = pick(SUBJECTS, random);
+    final String setting = pick(SETTINGS, random);
+    final String color = pick(COLORS, random);
+    final String mood = pick(MOODS, random);
+
+    return ("This image shows a %s %s in a %s on a %s day. The %s is in the center of the frame and the %s stretches "
+        + "out behind it. The colors are mostly %s and %s. %s")
+        .formatted(color, subject, setting, mood, subject, setting, color, pick(COLORS, random),
+            random.nextDouble() < TEXT_RATE
+                ? "The image contains readable text, a sign which reads \"%s %s\".".formatted(color, setting)
+                : "The image does not contain any readable text.");
+  }
+
+  /**
+   * Builds a response shaped like ImageInfoFromDescriptionModelResponse for the given description.
+   */
+  private Map<String, Object> imageInfo(final String prompt, final Random random) {
+    final boolean hasText = prompt.contains("contains readable text");
+
+    final List<String> tags = new ArrayList<>();
+    final int numTags = 3 + random.nextInt(6);
+    for (int i = 0; i < numTags; i++) {
+      tags.add(pick(random.nextBoolean() ? SUBJECTS : SETTINGS, random));
+    }
+    tags.add(pick(COLORS, random));
+
+    final Map<String, Object> imageInfo = new LinkedHashMap<>();
+    imageInfo.put("tags", tags);
+    imageInfo.put("fullDescription", "A %s scene with a %s.".formatted(pick(MOODS, random), tags.get(0)));
+    imageInfo.put("shortTitle", "%s in a %s".formatted(tags.get(0), pick(SETTINGS, random)));
+    imageInfo.put("doesContainText", hasText ? "Contains a sign" : "No visible text");
+    imageInfo.put("hasText", hasText);
+    return imageInfo;
+  }
+
+  /**
+   * Builds a response shaped like ImageInfoBatchFromDescriptionsModelResponse, one entry for each description.
+   */
+  private Map<String, Object> batchImageInfo(final List<String> descriptions, final Random random) {
+    final List<Map<String, Object>> images = new ArrayList<>();
+    for (int i = 0; i < descriptions.size(); i++) {
+      final Map<String, Object> image = new LinkedHashMap<>();
+      image.put("imageNumber", i + 1);
+      image.putAll(imageInfo(descriptions.get(i), random));
+      images.add(image);
+    }
+
+    return Map.of("images", images);
+  }
+
+  private static List<String> batchItems(final String prompt) {
+    final String[] sections = BATCH_ITEM_HEADER.split(prompt);
+    // anything before the first header is the preamble
+    return List.of(sections).subList(Math.min(1, sections.length), sections.length);
+  }
+
+  private Map<String, Object> embeddings(final JsonNode request, final Random random) {
+    final List<float[]> embeddings = new ArrayList<>();
+    final JsonNode input = request.path("input");
+    final int count = input.isArray() ? input.size() : 1;
+
+    for (int i = 0; i < count; i++) {
+      final float[] vector = new float[EMBEDDING_DIMENSIONS];
+      for (int j = 0; j < vector.length; j++) {
+        vector[j] = (float) random.nextGaussian();
+      }
+      embeddings.add(vector);
+    }
+
+    return Map.of("model", request.path("model").asText("fake"), "embeddings", embeddings);
+  }
+
+  private static Map<String, Object> chatResponse(final String model, final String content, final long latencyNanos) {
+    final Map<String, Object> response = new LinkedHashMap<>();
+    response.put("model", model);
+    response.put("created_at", Instant.now().toString());
+    response.put("message", Map.of("role", "assistant", "content", content));
+    response.put("done_reason", "stop");
+    response.put("done", true);
+    response.put("prompt_eval_count", content.length() / 4);
+    response.put("eval_count", content.length() / 4);
+    // like Ollama's, in nanos. The split between reading the prompt and generating is made up
+    response.put("total_duration", latencyNanos);
+    response.put("load_duration", 0);
+    response.put("prompt_eval_duration", latencyNanos / 5);
+    response.put("eval_duration", latencyNanos - latencyNanos / 5);
+    return response;
+  }
+
+  private static String lastMessage(final JsonNode request) {
+    final JsonNode messages = request.path("messages");
+    return messages.isArray() && !messages.isEmpty()
+        ? messages.get(messages.size() - 1).path("content").asText("")
+        : "";
+  }
+
+  /**
+   * @return how long the made up generation took, not counting any wait for a slot
+   */
+  private long generate(final String model, final Duration median, final Random random) {
+    if (modelSlots <= 0) {
+      return sleep(median, random);
+    }
+
+    final Semaphore slots = slotsByModel.computeIfAbsent(model, ignored -> new Semaphore(modelSlots, true));
+    try {
+      slots.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted waiting for a fake model slot", e);
+    }
+    try {
+      return sleep(median, random);
+    } finally {
+      slots.release();
+    }
+  }
+
+  private long sleep(final Duration median, final Random random) {
+    final long millis = Math.round(median.toMillis() * Math.exp(latencySpread * random.nextGaussian()));
+
+    try {
+      Thread.sleep(millis);
+      return millis * 1_000_000;
+    } catch (InterruptedException e) {
+      // e.g. a hedged request which lost the race
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted waiting on the fake model", e);
+    }
+  }
+
+  private static SuccessfulHttpResponse respond(final Object body) throws JsonProcessingException {
+    return SuccessfulHttpResponse.builder()
+        .statusCode(200)
+        .headers(Map.of("Content-Type", List.of("application/json")))
+        .body(OBJECT_MAPPER.writeValueAsString(body))
+        .build();
+  }
+
+  private static String pick(final List<String> values, final Random random) {
+    return values.get(random.nextInt(values.size()));
+  }
+}
@@ -0,0 +1,242 @@
+package com.wininger.cli_image_labeler.image.tagging.ollama;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.wininger.cli_image_labeler.image.tagging.utils.EventLog;
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpRequest;
+import dev.langchain4j.http.client.SuccessfulHttpResponse;
+import dev.langchain4j.http.client.sse.ServerSentEventListener;
+import dev.langchain4j.http.client.sse.ServerSentEventParser;
+
+/**
+ * Cuts down on the long tail of slow generations. When a request has been running for longer than the observed p95
+ * (or whichever percentile is configured) for requests like it, a duplicate is sent to another free slot in the
+ * {@link OllamaEndpointPool}, on a different endpoint than the original if one is free. Whichever finishes first is
+ * used and the other is cancelled.
+ *
+ * Hedges are only sent when the pool has a free slot (they never queue behind real work) and the total number of
+ * hedges is capped at a fraction of all requests. A request which loses to its hedge still counts towards the
+ * latencies, with how long it had run when it was cancelled, otherwise the stragglers would drop out of the window
+ * and the percentile would keep creeping down.
+ */
+public class HedgingHttpClient implements HttpClient {
+  private static final int LATENCY_WINDOW_SIZE = 200;
+
+  private final LoadBalancingHttpClient delegate;
+  private final OllamaEndpointPool pool;
+  private final double percentile;
+  private final int minSamples;
+  private final double budget;
+
+  private final ExecutorService executor;
+  private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong hedgesSent = new AtomicLong();
+  private final AtomicLong hedgesWon = new AtomicLong();
+
+  /**
+   * @param percentile the latency percentile (0-1) a request has to exceed before it is hedged
+   * @param minSamples how many requests of a kind need to have been seen before any of them are hedged
+   * @param budget the most hedges that may be sent, as a fraction of all requests
+   */
+  public HedgingHttpClient(
+      final LoadBalancingHttpClient delegate,
+      final OllamaEndpointPool pool,
+      final double percentile,
+      final int minSamples,
+      final double budget
+  ) {
+    this.delegate = delegate;
+    this.pool = pool;
+    this.percentile = percentile;
+    this.minSamples = minSamples;
+    this.budget = budget;
+    this.executor = Executors.newCachedThreadPool(runnable -> {
+      final Thread thread = new Thread(runnable, "ollama-hedging");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @Override
+  public SuccessfulHttpResponse execute(final HttpRequest request) {
+    requests.incrementAndGet();
+
+    // latencies are tracked separately per model and per kind of response since they differ wildly
+    final LatencyWindow window = latencies.computeIfAbsent(OllamaRequests.kind(request), LatencyWindow::new);
+    final OptionalLong hedgeAfterNanos = window.percentileNanos(percentile, minSamples);
+    if (hedgeAfterNanos.isEmpty()) {
+      return new Attempt(request, window, Set.of()).call();
+    }
+
+    final ExecutorCompletionService<SuccessfulHttpResponse> completion = new ExecutorCompletionService<>(executor);
+    final Attempt primaryAttempt = new Attempt(request, window, Set.of());
+    final Future<SuccessfulHttpResponse> primary = completion.submit(primaryAttempt);
+    Future<SuccessfulHttpResponse> hedge = null;
+
+    try {
+      Future<SuccessfulHttpResponse> first = completion.poll(hedgeAfterNanos.getAsLong(), TimeUnit.NANOSECONDS);
+      if (first == null) {
+        if (!canHedge()) {
+          return getResult(primary);
+        }
+
+        hedgesSent.incrementAndGet();
+        EventLog.info(null, "Request to %s is slower than p%.0f (%.1f s), sending a hedged request".formatted(
+            window.kind, percentile * 100, hedgeAfterNanos.getAsLong() / 1_000_000_000.0));
+        final OllamaEndpoint primaryEndpoint = primaryAttempt.endpoint;
+        hedge = completion.submit(new Attempt(request, window,
+            primaryEndpoint == null ? Set.of() : Set.of(primaryEndpoint)));
+        first = completion.take();
+      }
+
+      try {
+        final SuccessfulHttpResponse response = getResult(first);
+        if (first == hedge) {
+          hedgesWon.incrementAndGet();
+          // the primary is about to be cancelled, it took at least this long
+          primaryAttempt.sample();
+        }
+        return response;
+      } catch (RuntimeException e) {
+        if (hedge == null) {
+          throw e;
+        }
+        // whichever finished first failed, the other one may still succeed
+        return getResult(completion.take());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted waiting on Ollama", e);
+    } finally {
+      // cancelling interrupts the losing request, which aborts its http exchange and frees its slot in the pool
+      primary.cancel(true);
+      if (hedge != null) {
+        hedge.cancel(true);
+      }
+    }
+  }
+
+  @Override
+  public void execute(final HttpRequest request, final ServerSentEventParser parser,
+                      final ServerSentEventListener listener) {
+    // a stream can't be raced against another one, pass it straight through
+    delegate.execute(request, parser, listener);
+  }
+
+  public void printSummary(final PrintStream out) {
+    out.printf("Hedged requests: %d sent, %d finished first (%d requests total)%n",
+        hedgesSent.get(), hedgesWon.get(), requests.get());
+  }
+
+  private boolean canHedge() {
+    return hedgesSent.get() < budget * requests.get() && pool.hasFreeSlot();
+  }
+
+  long hedgesSent() {
+    return hedgesSent.get();
+  }
+
+  long hedgesWon() {
+    return hedgesWon.get();
+  }
+
+  /**
+   * One request sent to Ollama, the original or its hedge. Its latency is sampled once, when it finishes or when it
+   * is given up on.
+   */
+  private class Attempt implements Callable<SuccessfulHttpResponse> {
+    private final HttpRequest request;
+    private final LatencyWindow window;
+    private final Set<OllamaEndpoint> avoid;
+    private final long startTime = System.nanoTime();
+    private final AtomicBoolean sampled = new AtomicBoolean();
+    private volatile OllamaEndpoint endpoint;
+
+    Attempt(final HttpRequest request, final LatencyWindow window, final Set<OllamaEndpoint> avoid) {
+      this.request = request;
+      this.window = window;
+      this.avoid = avoid;
+    }
+
+    @Override
+    public SuccessfulHttpResponse call() {
+      final SuccessfulHttpResponse response = delegate.execute(request, avoid, routedTo -> endpoint = routedTo);
+      sample();
+      return response;
+    }
+
+    /**
+     * Records how long the request has run so far, unless it was already recorded.
+     */
+    void sample() {
+      if (sampled.compareAndSet(false, true)) {
+        window.record(System.nanoTime() - startTime);
+      }
+    }
+  }
+
+  private static SuccessfulHttpResponse getResult(final Future<SuccessfulHttpResponse> future)
+      throws InterruptedException {
+    try {
+      return future.get();
+    } catch (CancellationException e) {
+      throw new RuntimeException("Ollama request was cancelled", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      if (e.getCause() instanceof Error error) {
+        throw error;
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  /**
+   * The most recent latencies for one kind of request.
+   */
+  private static class LatencyWindow {
+    private final String kind;
+    private final long[] samples = new long[LATENCY_WINDOW_SIZE];
+    private int count = 0;
+    private int next = 0;
+
+    LatencyWindow(final String kind) {
+      this.kind = kind;
+    }
+
+    synchronized void record(final long nanos) {
+      samples[next] = nanos;
+      next = (next + 1) % samples.length;
+      count = Math.min(count + 1, samples.length);
+    }
+
+    synchronized OptionalLong percentileNanos(final double percentile, final int minSamples) {
+      if (count < minSamples) {
+        return OptionalLong.empty();
+      }
+
+      final long[] sorted = Arrays.copyOf(samples, count);
+      Arrays.sort(sorted);
+      return OptionalLong.of(sorted[(int) Math.min(count - 1, Math.ceil(percentile * count) - 1)]);
+    }
+  }
+}
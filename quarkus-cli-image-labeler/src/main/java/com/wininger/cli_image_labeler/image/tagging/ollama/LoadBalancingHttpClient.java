@@ -0,0 +1,133 @@
+package com.wininger.cli_image_labeler.image.tagging.ollama;
+
+import java.io.IOException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import com.wininger.cli_image_labeler.image.tagging.exceptions.NoOllamaEndpointAvailableException;
+import com.wininger.cli_image_labeler.image.tagging.utils.EventLog;
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpRequest;
+import dev.langchain4j.http.client.SuccessfulHttpResponse;
+import dev.langchain4j.http.client.sse.ServerSentEventListener;
+import dev.langchain4j.http.client.sse.ServerSentEventParser;
+
+/**
+ * Routes requests addressed to {@link OllamaEndpointPool#POOL_BASE_URL} to an endpoint from the pool. When an
+ * endpoint can't be reached the request is retried on another one and the dead endpoint is ejected from the pool.
+ *
+ * Only connection level failures are retried. Errors returned by Ollama itself and read timeouts (a slow
+ * generation) are passed straight back to the caller.
+ */
+public class LoadBalancingHttpClient implements HttpClient {
+  private final HttpClient delegate;
+  private final OllamaEndpointPool pool;
+
+  public LoadBalancingHttpClient(final HttpClient delegate, final OllamaEndpointPool pool) {
+    this.delegate = delegate;
+    this.pool = pool;
+  }
+
+  @Override
+  public SuccessfulHttpResponse execute(final HttpRequest request) {
+    return execute(request, Set.of(), endpoint -> {});
+  }
+
+  /**
+   * Sends the request to an endpoint other than those in `avoid` if another has a free slot, see
+   * {@link OllamaEndpointPool#acquire(java.util.Collection, java.util.Collection)}.
+   *
+   * @param routedTo told which endpoint each attempt is sent to, before it is sent
+   */
+  public SuccessfulHttpResponse execute(
+      final HttpRequest request,
+      final Set<OllamaEndpoint> avoid,
+      final Consumer<OllamaEndpoint> routedTo
+  ) {
+    final Set<OllamaEndpoint> tried = new HashSet<>();
+    RuntimeException lastFailure = null;
+
+    while (true) {
+      final Optional<OllamaEndpoint> acquired = pool.acquire(tried, avoid);
+      if (acquired.isEmpty()) {
+        throw new NoOllamaEndpointAvailableException(
+            "Request failed on every Ollama endpoint: " + tried, lastFailure);
+      }
+
+      final OllamaEndpoint endpoint = acquired.get();
+      routedTo.accept(endpoint);
+      final long startTime = System.nanoTime();
+      try {
+        final SuccessfulHttpResponse response = delegate.execute(routeTo(request, endpoint));
+        pool.release(endpoint, System.nanoTime() - startTime, true);
+        return response;
+      } catch (RuntimeException e) {
+        pool.release(endpoint, System.nanoTime() - startTime, false);
+
+        if (!isEndpointFailure(e)) {
+          throw e;
+        }
+
+        pool.eject(endpoint, e);
+        tried.add(endpoint);
+        lastFailure = e;
+        EventLog.warn(null, "Warning: Request to " + endpoint + " failed, retrying on another endpoint");
+      }
+    }
+  }
+
+  @Override
+  public void execute(final HttpRequest request, final ServerSentEventParser parser,
+                      final ServerSentEventListener listener) {
+    // Streaming isn't used by the labeling pipeline, so these are simply routed without any retries
+    final OllamaEndpoint endpoint = pool.acquire(Set.of())
+        .orElseThrow(() -> new NoOllamaEndpointAvailableException("No Ollama endpoint available", null));
+
+    final long startTime = System.nanoTime();
+    boolean succeeded = false;
+    try {
+      delegate.execute(routeTo(request, endpoint), parser, listener);
+      succeeded = true;
+    } finally {
+      pool.release(endpoint, System.nanoTime() - startTime, succeeded);
+    }
+  }
+
+  static HttpRequest routeTo(final HttpRequest request, final OllamaEndpoint endpoint) {
+    final String url = request.url();
+    if (!url.startsWith(OllamaEndpointPool.POOL_BASE_URL)) {
+      return request;
+    }
+
+    return HttpRequest.builder()
+        .method(request.method())
+        .url(endpoint.baseUrl() + url.substring(OllamaEndpointPool.POOL_BASE_URL.length()))
+        .headers(request.headers())
+        .body(request.body())
+        .build();
+  }
+
+  /**
+   * True if the failure means the endpoint couldn't be reached (or dropped the connection), as opposed to Ollama
+   * answering with an error or simply taking longer than the read timeout.
+   */
+  static boolean isEndpointFailure(final Throwable failure) {
+    for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+      if (cause instanceof HttpConnectTimeoutException) {
+        return true;
+      }
+      if (cause instanceof HttpTimeoutException) {
+        return false;
+      }
+      if (cause instanceof IOException) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+}
@@ -0,0 +1,297 @@
+package com.wininger.cli_image_labeler.image.tagging.ollama;
+
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wininger.cli_image_labeler.image.tagging.utils.EventLog;
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpMethod;
+import dev.langchain4j.http.client.HttpRequest;
+import dev.langchain4j.http.client.jdk.JdkHttpClient;
+import dev.langchain4j.model.chat.request.ResponseFormat;
+import dev.langchain4j.model.chat.request.ResponseFormatType;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.ollama.OllamaChatModel;
+import dev.langchain4j.model.ollama.OllamaChatRequestParameters;
+import dev.langchain4j.model.ollama.OllamaEmbeddingModel;
+import dev.langchain4j.service.output.JsonSchemas;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Instance;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import static com.wininger.cli_image_labeler.image.tagging.utils.PrintUtils.getTimeTakenMessage;
+
+/**
+ * Builds every Ollama model client used by the application. All of them share a single HTTP client so that
+ * connections to Ollama are pooled and reused across models and worker threads instead of each model (or each OCR
+ * call) opening its own.
+ *
+ * `il.ollama.url` may list several Ollama servers, requests are then spread across them by an
+ * {@link OllamaEndpointPool}.
+ *
+ * Also knows how to pre-load ("warm up") models so that the first image of a run does not pay the model load time.
+ *
+ * With `il.model.backend=fake` the models talk to a {@link FakeOllamaHttpClient} instead of a real Ollama server.
+ * Responses can also be recorded to and replayed from files, see {@link CassetteHttpClient}.
+ */
+@ApplicationScoped
+public class OllamaClients {
+  private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(15);
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private final boolean logRequests;
+  private final boolean logResponses;
+  private final int keepAliveSeconds;
+  // null when using the fake backend
+  private final OllamaEndpointPool endpointPool;
+
+  // null unless using the fake backend
+  private final FakeOllamaHttpClient fakeHttpClient;
+
+  // talks to whichever endpoint a request is addressed to
+  private final HttpClient directHttpClient;
+
+  // sends hedged requests for slow generations, null when hedging is disabled
+  private final HedgingHttpClient hedgingHttpClient;
+
+  // collects the timings Ollama reports with each response
+  private final OllamaTimingsHttpClient timingsHttpClient;
+
+  // records and replays responses, wraps whichever backend is in use
+  private final CassetteHttpClient cassetteHttpClient;
+
+  // routes requests across the endpoint pool (through the cassettes), this is what the models use
+  private final SharedHttpClientBuilder httpClientBuilder;
+
+  @Inject
+  public OllamaClients(
+      @ConfigProperty(name = "il.ollama.url", defaultValue = "http://localhost:11434/") String ollamaUrl,
+      @ConfigProperty(name = "ollama.log-requests", defaultValue = "false") boolean logRequests,
+      @ConfigProperty(name = "ollama.log-responses", defaultValue = "false") boolean logResponses,
+      @ConfigProperty(name = "il.ollama.keep-alive", defaultValue = "1800") int keepAliveSeconds,
+      @ConfigProperty(name = "il.ollama.max-connections", defaultValue = "8") int maxConnections,
+      @ConfigProperty(name = "il.ollama.read-timeout", defaultValue = "60s") Duration readTimeout,
+      @ConfigProperty(name = "il.ollama.endpoint-concurrency", defaultValue = "8") int endpointConcurrency,
+      @ConfigProperty(name = "il.ollama.health-check-interval", defaultValue = "10s") Duration healthCheckInterval,
+      @ConfigProperty(name = "il.ollama.hedging.enabled", defaultValue = "false") boolean hedgingEnabled,
+      @ConfigProperty(name = "il.ollama.hedging.percentile", defaultValue = "0.95") double hedgingPercentile,
+      @ConfigProperty(name = "il.ollama.hedging.min-samples", defaultValue = "20") int hedgingMinSamples,
+      @ConfigProperty(name = "il.ollama.hedging.budget", defaultValue = "0.1") double hedgingBudget,
+      @ConfigProperty(name = "il.model.backend", defaultValue = "ollama") String modelBackend,
+      @ConfigProperty(name = "il.ollama.cassette.mode", defaultValue = "off") CassetteHttpClient.Mode cassetteMode,
+      @ConfigProperty(name = "il.ollama.cassette.directory", defaultValue = "cassettes") Path cassetteDirectory,
+      Instance<FakeOllamaHttpClient> fakeHttpClients
+  ) {
+    this.logRequests = logRequests;
+    this.logResponses = logResponses;
+    this.keepAliveSeconds = keepAliveSeconds;
+
+    // The JDK client keeps idle connections around for re-use, cap how many it holds on to so it matches the number
+    // of requests we can actually have in flight. This is read once by the JDK so only set it if nobody else has.
+    if (System.getProperty("jdk.httpclient.connectionPoolSize") == null) {
+      System.setProperty("jdk.httpclient.connectionPoolSize", String.valueOf(maxConnections));
+    }
+
+    final java.net.http.HttpClient.Builder jdkClientBuilder = java.net.http.HttpClient.newBuilder()
+        // Ollama only speaks HTTP/1.1, don't bother attempting an upgrade on every new connection
+        .version(java.net.http.HttpClient.Version.HTTP_1_1)
+        .executor(Executors.newFixedThreadPool(maxConnections, runnable -> {
+          final Thread thread = new Thread(runnable, "ollama-http");
+          thread.setDaemon(true);
+          return thread;
+        }));
+
+    this.directHttpClient = JdkHttpClient.builder()
+        .httpClientBuilder(jdkClientBuilder)
+        .connectTimeout(CONNECT_TIMEOUT)
+        .readTimeout(readTimeout)
+        .build();
+
+    final HttpClient backendHttpClient;
+    if ("fake".equals(modelBackend)) {
+      EventLog.notice("Using the fake model backend, no requests will be sent to Ollama");
+      this.fakeHttpClient = fakeHttpClients.get();
+      this.endpointPool = null;
+      this.hedgingHttpClient = null;
+      backendHttpClient = fakeHttpClient;
+    } else if ("ollama".equals(modelBackend)) {
+      this.fakeHttpClient = null;
+      this.endpointPool = new OllamaEndpointPool(
+          OllamaEndpointPool.parseEndpoints(ollamaUrl, endpointConcurrency),
+          healthCheckInterval,
+          readTimeout);
+
+      final LoadBalancingHttpClient loadBalancingHttpClient = new LoadBalancingHttpClient(directHttpClient, endpointPool);
+      this.hedgingHttpClient = hedgingEnabled
+          ? new HedgingHttpClient(loadBalancingHttpClient, endpointPool, hedgingPercentile, hedgingMinSamples, hedgingBudget)
+          : null;
+      backendHttpClient = hedgingEnabled ? hedgingHttpClient : loadBalancingHttpClient;
+    } else {
+      throw new IllegalArgumentException(
+          "Unknown il.model.backend '%s', expected 'ollama' or 'fake'".formatted(modelBackend));
+    }
+
+    // timings are collected below the cassettes so that replayed responses don't count
+    this.timingsHttpClient = new OllamaTimingsHttpClient(backendHttpClient);
+    this.cassetteHttpClient = new CassetteHttpClient(timingsHttpClient, cassetteMode, cassetteDirectory);
+    this.httpClientBuilder = new SharedHttpClientBuilder(cassetteHttpClient, CONNECT_TIMEOUT, readTimeout);
+  }
+
+  @PreDestroy
+  void close() {
+    if (endpointPool != null) {
+      endpointPool.close();
+    }
+  }
+
+  /**
+   * Prints how many requests each Ollama endpoint served since `startTime` (and how many were hedged or replayed).
+   */
+  public void printEndpointSummary(final long startTime, final PrintStream out) {
+    if (fakeHttpClient != null) {
+      fakeHttpClient.printSummary(out);
+    } else {
+      endpointPool.printSummary(startTime, out);
+    }
+    if (hedgingHttpClient != null) {
+      hedgingHttpClient.printSummary(out);
+    }
+    timingsHttpClient.printSummary(out);
+    cassetteHttpClient.printSummary(out);
+  }
+
+  /**
+   * What Ollama reported about the requests made so far (tokens and durations), per kind of request.
+   */
+  public List<OllamaTimingsHttpClient.ModelTimings> modelTimings() {
+    return timingsHttpClient.snapshot();
+  }
+
+  /**
+   * Builds a chat model which returns free-form text.
+   */
+  public OllamaChatModel chatModel(final String modelName) {
+    return chatModel(modelName, null, null, null);
+  }
+
+  /**
+   * Builds a chat model which is constrained to return JSON matching the schema of the given class.
+   */
+  public OllamaChatModel chatModel(final String modelName, final Class<?> schemaClass) {
+    return chatModel(modelName, schemaClass, null, null);
+  }
+
+  /**
+   * Builds a chat model with limits on how much it generates and the size of its context.
+   *
+   * @param schemaClass if not null, the model is constrained to return JSON matching the schema of this class
+   * @param maxOutputTokens the most tokens to generate per response (num_predict), null for the model's default
+   * @param contextSize the size of the context window (num_ctx), null for the model's default
+   */
+  public OllamaChatModel chatModel(
+      final String modelName,
+      final Class<?> schemaClass,
+      final Integer maxOutputTokens,
+      final Integer contextSize
+  ) {
+    final OllamaChatModel.OllamaChatModelBuilder builder = chatModelBuilder(modelName, maxOutputTokens, contextSize);
+    if (schemaClass != null) {
+      builder.responseFormat(ResponseFormat.builder()
+          .type(ResponseFormatType.JSON)
+          .jsonSchema(JsonSchemas.jsonSchemaFrom(schemaClass).get())
+          .build());
+    }
+
+    return builder.build();
+  }
+
+  public EmbeddingModel embeddingModel(final String modelName) {
+    return OllamaEmbeddingModel.builder()
+        .httpClientBuilder(httpClientBuilder)
+        .baseUrl(OllamaEndpointPool.POOL_BASE_URL)
+        .modelName(modelName)
+        .build();
+  }
+
+  /**
+   * Asks every healthy Ollama endpoint to load each of the given models (in parallel) and keep them resident for the
+   * configured keep alive. Failures are reported but never fail the returned future, a model which could not be
+   * warmed up will just be loaded by the first real request instead.
+   */
+  public CompletableFuture<Void> warmUp(final Collection<String> modelNames) {
+    // nothing to warm up when not talking to Ollama, and no point when every response is coming from a cassette
+    if (endpointPool == null || cassetteHttpClient.mode() == CassetteHttpClient.Mode.REPLAY) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    final List<String> distinctModelNames = modelNames.stream().distinct().toList();
+    final List<OllamaEndpoint> endpoints = endpointPool.healthyEndpoints();
+    if (distinctModelNames.isEmpty() || endpoints.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    final ExecutorService warmUpPool = Executors.newFixedThreadPool(distinctModelNames.size() * endpoints.size());
+    final CompletableFuture<?>[] warmUps = endpoints.stream()
+        .flatMap(endpoint -> distinctModelNames.stream()
+            .map(modelName -> CompletableFuture.runAsync(() -> warmUp(endpoint, modelName), warmUpPool)))
+        .toArray(CompletableFuture[]::new);
+
+    return CompletableFuture.allOf(warmUps)
+        .whenComplete((ignored, ex) -> warmUpPool.shutdown());
+  }
+
+  private void warmUp(final OllamaEndpoint endpoint, final String modelName) {
+    final long startTime = System.currentTimeMillis();
+
+    try {
+      // An empty message list tells Ollama to just load the model
+      final Map<String, Object> body = new LinkedHashMap<>();
+      body.put("model", modelName);
+      body.put("messages", List.of());
+      body.put("keep_alive", keepAliveSeconds);
+
+      directHttpClient.execute(HttpRequest.builder()
+          .method(HttpMethod.POST)
+          .url(endpoint.baseUrl(), "api/chat")
+          .addHeader("Content-Type", "application/json")
+          .body(OBJECT_MAPPER.writeValueAsString(body))
+          .build());
+
+      EventLog.notice("Model %s is warm on %s (took %s)".formatted(
+          modelName, endpoint, getTimeTakenMessage(startTime, System.currentTimeMillis())));
+    } catch (JsonProcessingException | RuntimeException e) {
+      EventLog.warn(null, "Warning: Could not warm up model " + modelName + " on " + endpoint + ": " + e.getMessage());
+    }
+  }
+
+  private OllamaChatModel.OllamaChatModelBuilder chatModelBuilder(
+      final String modelName,
+      final Integer maxOutputTokens,
+      final Integer contextSize
+  ) {
+    return OllamaChatModel.builder()
+        .httpClientBuilder(httpClientBuilder)
+        .baseUrl(OllamaEndpointPool.POOL_BASE_URL)
+        .modelName(modelName)
+        .defaultRequestParameters(OllamaChatRequestParameters.builder()
+            .keepAlive(keepAliveSeconds)
+            .maxOutputTokens(maxOutputTokens)
+            .numCtx(contextSize)
+            .build())
+        .logRequests(logRequests)
+        .logResponses(logResponses);
+  }
+}
@@ -0,0 +1,90 @@
+package com.wininger.cli_image_labeler.image.tagging.ollama;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single Ollama server in the {@link OllamaEndpointPool}. Tracks how many requests are currently in flight against
+ * it, whether it is currently considered healthy, and how much work it has done so far.
+ *
+ * The in flight count is guarded by the owning pool, everything else is safe to read from any thread.
+ */
+public class OllamaEndpoint {
+  private final String baseUrl;
+  private final int maxConcurrency;
+
+  // guarded by the pool
+  int outstanding = 0;
+
+  private volatile boolean healthy = true;
+
+  private final AtomicLong completedRequests = new AtomicLong();
+  private final AtomicLong failedRequests = new AtomicLong();
+  private final AtomicLong busyNanos = new AtomicLong();
+
+  public OllamaEndpoint(final String baseUrl, final int maxConcurrency) {
+    this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  /**
+   * Parses an endpoint from configuration. The format is the base url optionally followed by `|` and the number of
+   * requests this endpoint may have in flight at once, e.g. `http://gpu-box:11434/|3`.
+   */
+  public static OllamaEndpoint parse(final String spec, final int defaultMaxConcurrency) {
+    final String trimmed = spec.trim();
+    final int separator = trimmed.lastIndexOf('|');
+    if (separator == -1) {
+      return new OllamaEndpoint(trimmed, defaultMaxConcurrency);
+    }
+
+    final String url = trimmed.substring(0, separator).trim();
+    final int maxConcurrency = Integer.parseInt(trimmed.substring(separator + 1).trim());
+    if (maxConcurrency < 1) {
+      throw new IllegalArgumentException("Ollama endpoint concurrency must be at least 1: " + spec);
+    }
+
+    return new OllamaEndpoint(url, maxConcurrency);
+  }
+
+  public String baseUrl() {
+    return baseUrl;
+  }
+
+  public int maxConcurrency() {
+    return maxConcurrency;
+  }
+
+  public boolean isHealthy() {
+    return healthy;
+  }
+
+  void setHealthy(final boolean healthy) {
+    this.healthy = healthy;
+  }
+
+  void recordRequest(final long durationNanos, final boolean succeeded) {
+    busyNanos.addAndGet(durationNanos);
+    if (succeeded) {
+      completedRequests.incrementAndGet();
+    } else {
+      failedRequests.incrementAndGet();
+    }
+  }
+
+  public long completedRequests() {
+    return completedRequests.get();
+  }
+
+  public long failedRequests() {
+    return failedRequests.get();
+  }
+
+  public long busyNanos() {
+    return busyNanos.get();
+  }
+
+  @Override
+  public String toString() {
+    return baseUrl;
+  }
+}
@@ -0,0 +1,236 @@
+package com.wininger.cli_image_labeler.image.tagging.ollama;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.wininger.cli_image_labeler.image.tagging.exceptions.NoOllamaEndpointAvailableException;
+import com.wininger.cli_image_labeler.image.tagging.utils.EventLog;
+
+import static com.wininger.cli_image_labeler.image.tagging.utils.PrintUtils.getTimeTakenMessage;
+
+/**
+ * A set of Ollama servers which requests are spread across. Each endpoint has its own limit on in flight requests,
+ * new requests go to the healthy endpoint with the fewest requests in flight, and callers block when every endpoint
+ * is at its limit.
+ *
+ * Endpoints are probed in the background, one that stops answering is ejected and is readmitted once it answers
+ * again. See {@link LoadBalancingHttpClient} for how requests are routed and retried.
+ */
+public class OllamaEndpointPool implements AutoCloseable {
+  /**
+   * Models are built against this base url, {@link LoadBalancingHttpClient} swaps it for the url of whichever
+   * endpoint the request is routed to.
+   */
+  public static final String POOL_BASE_URL = "http://ollama-endpoint-pool/";
+
+  private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(3);
+
+  private final List<OllamaEndpoint> endpoints;
+  private final Duration acquireTimeout;
+  private final HttpClient probeClient;
+  private final ScheduledExecutorService healthChecker;
+
+  public OllamaEndpointPool(
+      final List<OllamaEndpoint> endpoints,
+      final Duration healthCheckInterval,
+      final Duration acquireTimeout
+  ) {
+    if (endpoints.isEmpty()) {
+      throw new IllegalArgumentException("At least one Ollama endpoint is required");
+    }
+
+    this.endpoints = List.copyOf(endpoints);
+    this.acquireTimeout = acquireTimeout;
+    this.probeClient = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(PROBE_TIMEOUT)
+        .build();
+
+    this.healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "ollama-health-check");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.healthChecker.scheduleWithFixedDelay(this::checkHealth,
+        healthCheckInterval.toMillis(), healthCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Parses a comma separated list of endpoints, see {@link OllamaEndpoint#parse(String, int)} for the format of each.
+   */
+  public static List<OllamaEndpoint> parseEndpoints(final String specs, final int defaultMaxConcurrency) {
+    return Arrays.stream(specs.split(","))
+        .filter(spec -> !spec.isBlank())
+        .map(spec -> OllamaEndpoint.parse(spec, defaultMaxConcurrency))
+        .toList();
+  }
+
+  public List<OllamaEndpoint> endpoints() {
+    return endpoints;
+  }
+
+  public List<OllamaEndpoint> healthyEndpoints() {
+    return endpoints.stream().filter(OllamaEndpoint::isHealthy).toList();
+  }
+
+  /**
+   * Reserves a slot on the healthy endpoint with the fewest requests in flight, skipping any in `exclude`. Blocks
+   * while every candidate is at its concurrency limit.
+   *
+   * @return the endpoint, or empty if every healthy endpoint is excluded (i.e. the caller has already tried them all)
+   * @throws NoOllamaEndpointAvailableException if every endpoint stays ejected for longer than the acquire timeout
+   */
+  public Optional<OllamaEndpoint> acquire(final Collection<OllamaEndpoint> exclude) {
+    return acquire(exclude, List.of());
+  }
+
+  /**
+   * As {@link #acquire(Collection)}, but only takes a slot on an endpoint in `avoid` when no other endpoint has a free
+   * one, e.g. so a hedged request doesn't queue up on the endpoint which is already slow to answer it.
+   */
+  public synchronized Optional<OllamaEndpoint> acquire(
+      final Collection<OllamaEndpoint> exclude,
+      final Collection<OllamaEndpoint> avoid
+  ) {
+    final long deadline = System.nanoTime() + acquireTimeout.toNanos();
+
+    while (true) {
+      final List<OllamaEndpoint> candidates = endpoints.stream()
+          .filter(OllamaEndpoint::isHealthy)
+          .filter(endpoint -> !exclude.contains(endpoint))
+          .toList();
+
+      if (candidates.isEmpty() && !exclude.isEmpty()) {
+        return Optional.empty();
+      }
+
+      final Optional<OllamaEndpoint> leastLoaded = candidates.stream()
+          .filter(endpoint -> endpoint.outstanding < endpoint.maxConcurrency())
+          .min(Comparator.comparing((OllamaEndpoint endpoint) -> avoid.contains(endpoint))
+              .thenComparingInt(endpoint -> endpoint.outstanding)
+              .thenComparingInt(endpoint -> endpoint.outstanding - endpoint.maxConcurrency()));
+
+      if (leastLoaded.isPresent()) {
+        leastLoaded.get().outstanding++;
+        return leastLoaded;
+      }
+
+      // Everything is busy or down. Busy is fine, wait for a request to finish. Down we only wait so long for an
+      // endpoint to be readmitted.
+      final long remainingNanos = deadline - System.nanoTime();
+      if (candidates.isEmpty() && remainingNanos <= 0) {
+        throw new NoOllamaEndpointAvailableException(
+            "No healthy Ollama endpoint available after waiting " + acquireTimeout, null);
+      }
+
+      try {
+        if (candidates.isEmpty()) {
+          TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+        } else {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new NoOllamaEndpointAvailableException("Interrupted waiting for a free Ollama endpoint", e);
+      }
+    }
+  }
+
+  /**
+   * True if a request could be sent right now without waiting for a slot.
+   */
+  public synchronized boolean hasFreeSlot() {
+    return endpoints.stream()
+        .anyMatch(endpoint -> endpoint.isHealthy() && endpoint.outstanding < endpoint.maxConcurrency());
+  }
+
+  /**
+   * Gives back a slot reserved by {@link #acquire(Collection)} and records how the request went.
+   */
+  public synchronized void release(final OllamaEndpoint endpoint, final long durationNanos, final boolean succeeded) {
+    endpoint.outstanding--;
+    endpoint.recordRequest(durationNanos, succeeded);
+    notifyAll();
+  }
+
+  /**
+   * Stops routing requests to an endpoint until a health probe succeeds against it.
+   */
+  public synchronized void eject(final OllamaEndpoint endpoint, final Throwable reason) {
+    if (endpoint.isHealthy()) {
+      endpoint.setHealthy(false);
+      EventLog.warn(null, "Warning: Ejecting Ollama endpoint " + endpoint + ": " + reason.getMessage());
+    }
+  }
+
+  private synchronized void readmit(final OllamaEndpoint endpoint) {
+    if (!endpoint.isHealthy()) {
+      endpoint.setHealthy(true);
+      EventLog.notice("Readmitting Ollama endpoint " + endpoint);
+      notifyAll();
+    }
+  }
+
+  /**
+   * Probes every endpoint once, ejecting the ones which don't answer and readmitting the ones which do.
+   */
+  void checkHealth() {
+    for (final OllamaEndpoint endpoint : endpoints) {
+      try {
+        final HttpResponse<Void> response = probeClient.send(
+            HttpRequest.newBuilder(URI.create(endpoint.baseUrl() + "api/version"))
+                .timeout(PROBE_TIMEOUT)
+                .GET()
+                .build(),
+            HttpResponse.BodyHandlers.discarding());
+
+        if (response.statusCode() >= 200 && response.statusCode() < 300) {
+          readmit(endpoint);
+        } else {
+          eject(endpoint, new IllegalStateException("Health check returned status " + response.statusCode()));
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        eject(endpoint, e);
+      }
+    }
+  }
+
+  /**
+   * Prints how much work each endpoint did since `startTime`.
+   */
+  public void printSummary(final long startTime, final PrintStream out) {
+    final long now = System.currentTimeMillis();
+    final double elapsedSeconds = Math.max(1, now - startTime) / 1000.0;
+
+    out.println("\nOllama endpoints (over " + getTimeTakenMessage(startTime, now) + "):");
+    for (final OllamaEndpoint endpoint : endpoints) {
+      final long completed = endpoint.completedRequests();
+      final long total = completed + endpoint.failedRequests();
+      final double averageSeconds = total == 0 ? 0 : endpoint.busyNanos() / 1_000_000_000.0 / total;
+
+      out.printf("  %s: %d requests, %d failed, %.2f requests/s, %.1f s average%s%n",
+          endpoint, completed, endpoint.failedRequests(), completed / elapsedSeconds, averageSeconds,
+          endpoint.isHealthy() ? "" : " (currently ejected)");
+    }
+  }
+
+  @Override
+  public void close() {
+    healthChecker.shutdownNow();
+  }
+}
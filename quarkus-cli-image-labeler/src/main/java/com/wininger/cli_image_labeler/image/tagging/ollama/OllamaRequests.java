@@ -0,0 +1,30 @@
+package com.wininger.cli_image_labeler.image.tagging.ollama;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import dev.langchain4j.http.client.HttpRequest;
+
+/**
+ * Helpers for looking at the requests the models send to Ollama.
+ */
+final class OllamaRequests {
+  private static final Pattern MODEL_PATTERN = Pattern.compile("\"model\"\\s*:\\s*\"([^\"]+)\"");
+
+  private OllamaRequests() {
+  }
+
+  /**
+   * Groups requests whose performance should be comparable: the api called, the model, and whether a structured
+   * (JSON) response was asked for. e.g. "api/chat gemma3:4b (json)"
+   */
+  static String kind(final HttpRequest request) {
+    final String body = request.body() == null ? "" : request.body();
+    final Matcher model = MODEL_PATTERN.matcher(body);
+    final String path = request.url().replaceFirst("^https?://[^/]+/", "");
+
+    return path
+        + (model.find() ? " " + model.group(1) : "")
+        + (body.contains("\"format\"") ? " (json)" : "");
+  }
+}
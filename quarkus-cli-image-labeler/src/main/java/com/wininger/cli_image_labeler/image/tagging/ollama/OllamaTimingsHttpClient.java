@@ -0,0 +1,158 @@
+package com.wininger.cli_image_labeler.image.tagging.ollama;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpRequest;
+import dev.langchain4j.http.client.SuccessfulHttpResponse;
+import dev.langchain4j.http.client.sse.ServerSentEventListener;
+import dev.langchain4j.http.client.sse.ServerSentEventParser;
+
+import com.wininger.cli_image_labeler.image.tagging.utils.Histogram;
+
+/**
+ * Collects the timings Ollama reports with each chat response (prompt_eval_count/duration, eval_count/duration,
+ * load_duration) per kind of request, as histograms. langchain4j only passes the token counts through, so they are read
+ * from the raw responses here.
+ *
+ * prompt_eval_count only counts prompt tokens Ollama actually had to process, so it drops when a cached prompt prefix
+ * is reused.
+ */
+public class OllamaTimingsHttpClient implements HttpClient {
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private final HttpClient delegate;
+  private final Map<String, Timings> timingsByKind = new ConcurrentHashMap<>();
+
+  /**
+   * What Ollama reported for one kind of request (see {@link OllamaRequests#kind}), durations in nanos.
+   */
+  public record ModelTimings(
+      String kind,
+      long calls,
+      long promptTokens,
+      long generatedTokens,
+      long promptNanos,
+      long generationNanos,
+      long totalNanos,
+      long p50PromptNanos,
+      long p95PromptNanos,
+      long p50GenerationNanos,
+      long p95GenerationNanos,
+      long p50TotalNanos,
+      long p95TotalNanos,
+      long loadNanos
+  ) {
+    public double tokensPerSecond() {
+      return generationNanos == 0 ? 0 : generatedTokens / (generationNanos / 1_000_000_000.0);
+    }
+  }
+
+  public OllamaTimingsHttpClient(final HttpClient delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public SuccessfulHttpResponse execute(final HttpRequest request) {
+    final SuccessfulHttpResponse response = delegate.execute(request);
+
+    if (request.url().endsWith("api/chat")) {
+      record(OllamaRequests.kind(request), response.body());
+    }
+
+    return response;
+  }
+
+  @Override
+  public void execute(final HttpRequest request, final ServerSentEventParser parser,
+                      final ServerSentEventListener listener) {
+    delegate.execute(request, parser, listener);
+  }
+
+  private void record(final String kind, final String body) {
+    final JsonNode json;
+    try {
+      json = OBJECT_MAPPER.readTree(body);
+    } catch (JsonProcessingException e) {
+      return;
+    }
+
+    // not every backend reports durations, don't count zeros we never measured
+    if (json == null || !json.has("prompt_eval_duration")) {
+      return;
+    }
+
+    final Timings timings = timingsByKind.computeIfAbsent(kind, ignored -> new Timings());
+    timings.promptTokens.record(json.path("prompt_eval_count").asLong());
+    timings.promptNanos.record(json.path("prompt_eval_duration").asLong());
+    timings.generatedTokens.record(json.path("eval_count").asLong());
+    timings.generationNanos.record(json.path("eval_duration").asLong());
+    timings.totalNanos.record(json.path("total_duration").asLong());
+    timings.loadNanos.record(json.path("load_duration").asLong());
+  }
+
+  /**
+   * The timings for every kind of request seen so far, sorted by kind.
+   */
+  public List<ModelTimings> snapshot() {
+    return new TreeMap<>(timingsByKind).entrySet().stream()
+        .map(entry -> {
+          final Timings timings = entry.getValue();
+          return new ModelTimings(
+              entry.getKey(),
+              timings.promptNanos.count(),
+              timings.promptTokens.sum(),
+              timings.generatedTokens.sum(),
+              timings.promptNanos.sum(),
+              timings.generationNanos.sum(),
+              timings.totalNanos.sum(),
+              timings.promptNanos.valueAtPercentile(0.5),
+              timings.promptNanos.valueAtPercentile(0.95),
+              timings.generationNanos.valueAtPercentile(0.5),
+              timings.generationNanos.valueAtPercentile(0.95),
+              timings.totalNanos.valueAtPercentile(0.5),
+              timings.totalNanos.valueAtPercentile(0.95),
+              timings.loadNanos.sum());
+        })
+        .toList();
+  }
+
+  /**
+   * Prints the average Ollama reported timings for each kind of request.
+   */
+  public void printSummary(final PrintStream out) {
+    final List<ModelTimings> snapshot = snapshot();
+    if (snapshot.isEmpty()) {
+      return;
+    }
+
+    out.println("\nOllama timings (averages per call):");
+    for (final ModelTimings timings : snapshot) {
+      final long calls = timings.calls();
+
+      out.printf("  %s: %d calls, prompt eval %.0f tokens in %.0f ms, generation %.0f tokens in %.0f ms"
+              + " (%.1f tokens/s), load %.0f ms%n",
+          timings.kind(), calls,
+          timings.promptTokens() / (double) calls, timings.promptNanos() / 1_000_000.0 / calls,
+          timings.generatedTokens() / (double) calls, timings.generationNanos() / 1_000_000.0 / calls,
+          timings.tokensPerSecond(),
+          timings.loadNanos() / 1_000_000.0 / calls);
+    }
+  }
+
+  private static class Timings {
+    final Histogram promptTokens = new Histogram();
+    final Histogram promptNanos = new Histogram();
+    final Histogram generatedTokens = new Histogram();
+    final Histogram generationNanos = new Histogram();
+    final Histogram totalNanos = new Histogram();
+    final Histogram loadNanos = new Histogram();
+  }
+}
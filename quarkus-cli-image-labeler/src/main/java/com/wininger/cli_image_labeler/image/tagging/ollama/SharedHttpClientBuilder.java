@@ -0,0 +1,50 @@
+package com.wininger.cli_image_labeler.image.tagging.ollama;
+
+import java.time.Duration;
+
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpClientBuilder;
+
+/**
+ * An {@link HttpClientBuilder} that always hands back the same {@link HttpClient}. langchain4j builds a fresh
+ * client (and with it a fresh connection pool) for every model unless it is given a builder like this one, so all
+ * of our models share their connections to Ollama through it.
+ *
+ * The timeouts are owned by the shared client, setting them here is a no-op.
+ */
+public class SharedHttpClientBuilder implements HttpClientBuilder {
+  private final HttpClient httpClient;
+  private final Duration connectTimeout;
+  private final Duration readTimeout;
+
+  public SharedHttpClientBuilder(final HttpClient httpClient, final Duration connectTimeout, final Duration readTimeout) {
+    this.httpClient = httpClient;
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+  }
+
+  @Override
+  public Duration connectTimeout() {
+    return connectTimeout;
+  }
+
+  @Override
+  public HttpClientBuilder connectTimeout(final Duration timeout) {
+    return this;
+  }
+
+  @Override
+  public Duration readTimeout() {
+    return readTimeout;
+  }
+
+  @Override
+  public HttpClientBuilder readTimeout(final Duration timeout) {
+    return this;
+  }
+
+  @Override
+  public HttpClient build() {
+    return httpClient;
+  }
+}
@@ -0,0 +1,105 @@
+package com.wininger.cli_image_labeler.image.tagging.services;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks how often the low resolution first pass of adaptive resolution was good enough, and what that saved.
+ *
+ * We never run both resolutions for an image we kept at low resolution, so the time saved is an estimate: the
+ * difference between the average full resolution pass and the average low resolution pass (both as observed this run)
+ * for each image that did not need to be escalated. Time spent on low resolution passes which were then thrown away is
+ * reported alongside it.
+ */
+class AdaptiveResolutionStats {
+  private final String profileName;
+  private final int lowDimension;
+  private final int fullDimension;
+
+  private final LongAdder keptAtLow = new LongAdder();
+  private final LongAdder escalated = new LongAdder();
+  private final LongAdder alreadySmall = new LongAdder();
+
+  private final LongAdder lowPasses = new LongAdder();
+  private final LongAdder lowPassNanos = new LongAdder();
+  private final LongAdder fullPasses = new LongAdder();
+  private final LongAdder fullPassNanos = new LongAdder();
+  private final LongAdder discardedLowPassNanos = new LongAdder();
+
+  private final Map<String, LongAdder> escalationReasons = new ConcurrentHashMap<>();
+
+  AdaptiveResolutionStats(final String profileName, final int lowDimension, final int fullDimension) {
+    this.profileName = profileName;
+    this.lowDimension = lowDimension;
+    this.fullDimension = fullDimension;
+  }
+
+  String profileName() {
+    return profileName;
+  }
+
+  /**
+   * The image was no bigger than the low resolution to begin with, so there was nothing to decide.
+   */
+  void recordAlreadySmall() {
+    alreadySmall.increment();
+  }
+
+  void recordKeptAtLow(final long lowPassNanos) {
+    keptAtLow.increment();
+    recordLowPass(lowPassNanos);
+  }
+
+  void recordEscalated(final String reason, final long lowPassNanos, final long fullPassNanos) {
+    escalated.increment();
+    escalationReasons.computeIfAbsent(reason, ignored -> new LongAdder()).increment();
+    recordLowPass(lowPassNanos);
+    discardedLowPassNanos.add(lowPassNanos);
+    fullPasses.increment();
+    this.fullPassNanos.add(fullPassNanos);
+  }
+
+  private void recordLowPass(final long nanos) {
+    lowPasses.increment();
+    lowPassNanos.add(nanos);
+  }
+
+  void printSummary(final PrintStream out) {
+    final long kept = keptAtLow.sum();
+    final long escalatedCount = escalated.sum();
+    final long decided = kept + escalatedCount;
+
+    out.printf("%nAdaptive resolution (%s profile): %d kept at %dpx, %d escalated to %dpx, %d already %dpx or smaller%n",
+        profileName, kept, lowDimension, escalatedCount, fullDimension, alreadySmall.sum(), lowDimension);
+    if (decided == 0) {
+      return;
+    }
+
+    out.printf("  %dpx hit rate: %.0f%%%n", lowDimension, 100.0 * kept / decided);
+    escalationReasons.forEach((reason, count) ->
+        out.printf("  escalated because of %s: %d%n", reason, count.sum()));
+
+    final double averageLowSeconds = averageSeconds(lowPassNanos.sum(), lowPasses.sum());
+    final double discardedSeconds = discardedLowPassNanos.sum() / 1_000_000_000.0;
+    out.printf("  average pass: %dpx %.1f s%s%n", lowDimension, averageLowSeconds,
+        fullPasses.sum() == 0 ? "" : ", %dpx %.1f s".formatted(fullDimension,
+            averageSeconds(fullPassNanos.sum(), fullPasses.sum())));
+
+    if (fullPasses.sum() == 0) {
+      out.printf("  time saved: unknown until an image has been escalated to %dpx to compare against%n",
+          fullDimension);
+      return;
+    }
+
+    final double savedSeconds =
+        kept * (averageSeconds(fullPassNanos.sum(), fullPasses.sum()) - averageLowSeconds);
+    out.printf("  estimated time saved: %.1f s, minus %.1f s spent on discarded %dpx passes = %.1f s%n",
+        savedSeconds, discardedSeconds, lowDimension, savedSeconds - discardedSeconds);
+  }
+
+  private static double averageSeconds(final long nanos, final long count) {
+    return count == 0 ? 0 : nanos / 1_000_000_000.0 / count;
+  }
+}
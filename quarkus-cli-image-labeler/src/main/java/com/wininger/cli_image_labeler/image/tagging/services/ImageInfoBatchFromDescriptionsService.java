@@ -0,0 +1,35 @@
+package com.wininger.cli_image_labeler.image.tagging.services;
+
+import com.wininger.cli_image_labeler.image.tagging.dto.model_responses.ImageInfoBatchFromDescriptionsModelResponse;
+import dev.langchain4j.service.SystemMessage;
+import dev.langchain4j.service.UserMessage;
+
+/**
+ * Same extraction as {@link ImageInfoFromDescriptionService}, for several image descriptions in one request.
+ */
+public interface ImageInfoBatchFromDescriptionsService
+{
+  @SystemMessage("""
+      Below are detailed descriptions of several images, each starting with "Image <number>:".
+      Based on each description, extract structured information for that image.
+      
+      IMPORTANT: Return valid JSON only. Use straight double quotes ("), never curly/smart quotes.
+      Return exactly one entry per image, with its imageNumber, and never mix up details between images.
+      
+      Generate for each image:
+      - imageNumber: The number of the image description the entry is for
+      - tags: A list of 5-15 relevant tags. Start with high-level general tags (e.g., person, people,
+      building, flower, flowers, tree, trees, animal, animals, bird, cat, dog, chicken, car, food, landscape,
+      portrait, indoor, outdoor) then add more specific tags for subjects, settings, colors, and themes.
+      - fullDescription: A concise description summarizing the key elements (1-3 sentences)
+      - shortTitle: A very short title (max 100 characters)
+      - doesContainText: Briefly explain whether the image contains any visible text and what it says
+      - hasText: A boolean value indicating if there was any readable tex in the image (true/false)
+      (e.g., "Contains a sign reading Welcome", "Shows a book page with paragraphs", "Is an explanation a concept", "No visible text")
+      """)
+  @UserMessage("""
+      Image descriptions:
+      {{it}}
+      """)
+  ImageInfoBatchFromDescriptionsModelResponse extractImageInfoFromDetailedImageDescriptions(String numberedDescriptions);
+}
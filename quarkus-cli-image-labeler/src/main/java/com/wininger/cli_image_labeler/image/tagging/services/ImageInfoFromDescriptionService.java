@@ -1,11 +1,14 @@
 package com.wininger.cli_image_labeler.image.tagging.services;
 
 import com.wininger.cli_image_labeler.image.tagging.dto.model_responses.ImageInfoFromDescriptionModelResponse;
+import dev.langchain4j.service.SystemMessage;
 import dev.langchain4j.service.UserMessage;
 
 public interface ImageInfoFromDescriptionService
 {
-  @UserMessage("""
+  // The instructions are the same for every image and go first (as the system message) so Ollama can reuse the
+  // cached prompt prefix, only the description itself has to be processed for each image.
+  @SystemMessage("""
       Based on the following detailed description of an image, extract structured information.
       
       IMPORTANT: Return valid JSON only. Use straight double quotes ("), never curly/smart quotes.
@@ -19,7 +22,8 @@ public interface ImageInfoFromDescriptionService
       - doesContainText: Briefly explain whether the image contains any visible text and what it says
       - hasText: A boolean value indicating if there was any readable tex in the image (true/false)
       (e.g., "Contains a sign reading Welcome", "Shows a book page with paragraphs", "Is an explanation a concept", "No visible text")
-      
+      """)
+  @UserMessage("""
       Image description:
       ======
       {{it}}
@@ -1,40 +1,57 @@
 package com.wininger.cli_image_labeler.image.tagging.services;
 
 import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.imageio.ImageIO;
 
 import com.wininger.cli_image_labeler.image.tagging.dto.*;
+import com.wininger.cli_image_labeler.image.tagging.dto.model_responses.ImageInfoBatchFromDescriptionsModelResponse;
+import com.wininger.cli_image_labeler.image.tagging.dto.model_responses.ImageInfoBatchItemModelResponse;
 import com.wininger.cli_image_labeler.image.tagging.dto.model_responses.ImageInfoFromDescriptionModelResponse;
 import com.wininger.cli_image_labeler.image.tagging.exceptions.ExceededRetryLimitForModelRequest;
 import com.wininger.cli_image_labeler.image.tagging.exceptions.ImageReadException;
 import com.wininger.cli_image_labeler.image.tagging.exceptions.ImageWriteException;
+import com.wininger.cli_image_labeler.image.tagging.jfr.ImageLabelEvent;
+import com.wininger.cli_image_labeler.image.tagging.jfr.PipelineStageEvent;
 import dev.langchain4j.data.message.ImageContent;
+import dev.langchain4j.data.message.SystemMessage;
 import dev.langchain4j.data.message.TextContent;
 import dev.langchain4j.data.message.UserMessage;
-import dev.langchain4j.model.chat.ChatModel;
-import dev.langchain4j.model.chat.request.ResponseFormat;
-import dev.langchain4j.model.chat.request.ResponseFormatType;
 import dev.langchain4j.model.chat.response.ChatResponse;
 import dev.langchain4j.model.ollama.OllamaChatModel;
 import dev.langchain4j.service.AiServices;
-import dev.langchain4j.service.output.JsonSchemas;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import com.wininger.cli_image_labeler.image.tagging.ollama.OllamaClients;
+import com.wininger.cli_image_labeler.image.tagging.utils.DocumentImageClassifier;
+import com.wininger.cli_image_labeler.image.tagging.utils.EventLog;
+import com.wininger.cli_image_labeler.image.tagging.utils.LoadGovernor;
+import com.wininger.cli_image_labeler.image.tagging.utils.MicroBatcher;
+import com.wininger.cli_image_labeler.image.tagging.utils.SingleFlight;
+import com.wininger.cli_image_labeler.image.tagging.utils.StageTimer;
 import com.wininger.cli_image_labeler.setup.DataDirectoryInitializer;
 
 import static com.wininger.cli_image_labeler.image.tagging.utils.FileMetaDataUtils.getCreatedOn;
 import static com.wininger.cli_image_labeler.image.tagging.utils.FileMetaDataUtils.getFileCreatedAt;
 import static com.wininger.cli_image_labeler.image.tagging.utils.FileMetaDataUtils.getFileLastModified;
 import static com.wininger.cli_image_labeler.image.tagging.utils.FileMetaDataUtils.getGeoLocation;
+import static com.wininger.cli_image_labeler.image.tagging.utils.HashUtils.sha256Hex;
 import static com.wininger.cli_image_labeler.image.tagging.utils.ImageUtils.*;
 import static java.util.Objects.isNull;
 import static java.util.Objects.nonNull;
@@ -42,89 +59,286 @@ import static java.util.Objects.nonNull;
 @ApplicationScoped
 public class ImageInfoService
 {
-  private static final String MULTI_MODAL_MODAL = "gemma3:4b";
   private static final String OCR_MODEL = "deepseek-ocr:3b";
 
   private static final String TEXT_TAG = "text";
   private static final String PERSON_TAG = "person";
 
-  private static final Integer NUM_MODEL_RETRIES = 5;
+  private static final int IMAGE_DIMENSION_FOR_THUMBNAIL = 500;
 
-  // Maximum dimension (width or height) for resized images to avoid timeouts
-  private static final int MAX_IMAGE_DIMENSION = 1024;
+  // a document's text can be very long, its title and tags only need the gist of it
+  private static final int MAX_DOCUMENT_TEXT_FOR_EXTRACTION = 4000;
 
-  private static final int IMAGE_DIMENSION_FOR_THUMBNAIL = 500;
+  // Sent ahead of the image (as the system message) so that every description request starts with the same prefix,
+  // which lets Ollama reuse its cached processing of it instead of re-evaluating the instructions for each image
+  private static final SystemMessage DESCRIPTION_PROMPT = SystemMessage.from(
+      "Please provide a complete and thorough description of this image. " +
+      "Include all relevant details about the subjects, setting, colors, composition, " +
+      "and any text or notable elements visible in the image. Include a line which " +
+      "describes clearly if the image does or does not contain readable text. Only describe it as " +
+      "including text if the text is legible.");
+
+  // langchain4j's Ollama mapping can't send an image on its own, it has to travel with some text. Kept short and
+  // constant so the prefix above is all Ollama has to evaluate besides the image.
+  private static final TextContent DESCRIBE_THIS_IMAGE = TextContent.from("Describe this image.");
+
+  // Wording in a description that suggests the model couldn't make the image out well, used to decide if a low
+  // resolution pass should be re-run at the profile's maxImageDimension
+  private static final Pattern LOW_CONFIDENCE_WORDING = Pattern.compile(
+      "\\b(blurry|blurred|out of focus|pixelated|low[- ]resolution|indistinct|illegible|unclear|"
+          + "(difficult|hard) to (see|tell|make out|determine|discern|read)|"
+          + "(can't|cannot|can not|unable to) (be )?(see|tell|make out|determine|discern|read))\\b",
+      Pattern.CASE_INSENSITIVE);
+
+  private final OllamaClients ollamaClients;
+
+  private final OllamaChatModel ocrModel;
+
+  // the profile used unless the caller asks for another one, from il.profile
+  private final LabelingProfile defaultProfile;
+
+  // Models are built the first time a profile is used, most runs only ever use the default one
+  private final Map<LabelingProfile, ProfileModels> modelsByProfile = new ConcurrentHashMap<>();
+
+  // Limits how many extractions are in flight at once, separately from the descriptions, so that with a separate
+  // extraction model the two stages each get their own share of the model server. Null when not limited.
+  private final Semaphore extractionSlots;
+
+  // With il.extraction.batch-size above 1, descriptions finishing at about the same time are extracted together in
+  // one request, so the instructions and the request overhead are paid once per batch. Null when not batching.
+  private final MicroBatcher<LabelingProfile, String, ImageInfoFromDescriptionModelResponse> extractionBatcher;
+
+  private final int adaptiveInitialDimension;
+
+  private final int adaptiveMinTags;
 
-  private final OllamaChatModel unstructuredModel;
+  private final boolean documentRouting;
 
-  private final OllamaChatModel imageInfoFromDescriptionModel;
+  private final double documentThreshold;
 
-  private final ImageInfoFromDescriptionService imageInfoFromDescriptionService;
+  private final LongAdder imagesClassified = new LongAdder();
 
-  private final boolean logRequests;
+  private final LongAdder documentsRouted = new LongAdder();
 
-  private final boolean logResponses;
+  // kept per profile, each has its own full resolution (and evaluate-profiles labels with several in one run)
+  private final Map<LabelingProfile, AdaptiveResolutionStats> adaptiveResolutionStats = new ConcurrentHashMap<>();
 
-  private final String ollamaUrl;
+  // With parallel workers the same image can be in flight twice at once (a symlink, a copy in another folder...).
+  // These make the duplicate wait on the first request's result rather than asking the model again. Keyed by a hash
+  // of the model input.
+  private final SingleFlight<String, String> descriptionsInFlight = new SingleFlight<>("description");
+  private final SingleFlight<String, ImageInfoFromDescriptionModelResponse> extractionsInFlight =
+      new SingleFlight<>("extraction");
 
   @Inject
   public ImageInfoService(
-      @ConfigProperty(name = "ollama.log-requests", defaultValue = "false") boolean logRequests,
-      @ConfigProperty(name = "ollama.log-responses", defaultValue = "false") boolean logResponses,
-      @ConfigProperty(name = "il.ollama.url", defaultValue = "http://localhost:11434/") String ollamaUrl,
-      final SimilarityService similarityService
+      final OllamaClients ollamaClients,
+      final SimilarityService similarityService,
+      @ConfigProperty(name = "il.profile", defaultValue = "balanced") String profileName,
+      @ConfigProperty(name = "il.adaptive-resolution.enabled") Optional<Boolean> adaptiveResolution,
+      @ConfigProperty(name = "il.extraction.model") Optional<String> extractionModel,
+      @ConfigProperty(name = "il.extraction.concurrency") Optional<Integer> extractionConcurrency,
+      @ConfigProperty(name = "il.extraction.batch-size", defaultValue = "1") int extractionBatchSize,
+      @ConfigProperty(name = "il.extraction.batch-wait", defaultValue = "250ms") Duration extractionBatchWait,
+      @ConfigProperty(name = "il.adaptive-resolution.initial-dimension", defaultValue = "512") int adaptiveInitialDimension,
+      @ConfigProperty(name = "il.adaptive-resolution.min-tags", defaultValue = "4") int adaptiveMinTags,
+      @ConfigProperty(name = "il.document-routing.enabled", defaultValue = "false") boolean documentRouting,
+      @ConfigProperty(name = "il.document-routing.threshold", defaultValue = "0.8") double documentThreshold
   ) {
-    this.logRequests = logRequests;
-    this.logResponses = logResponses;
-    this.ollamaUrl = ollamaUrl;
+    this.ollamaClients = ollamaClients;
+    // il.adaptive-resolution.enabled and il.extraction.model, when set, override what the profile says
+    LabelingProfile profile = LabelingProfile.byName(profileName);
+    profile = adaptiveResolution.map(profile::withAdaptiveResolution).orElse(profile);
+    this.defaultProfile = extractionModel.map(profile::withExtractionModel).orElse(profile);
+    this.extractionSlots = extractionConcurrency.map(permits -> new Semaphore(permits, true)).orElse(null);
+    this.extractionBatcher = extractionBatchSize > 1
+        ? new MicroBatcher<>("extraction", extractionBatchSize, extractionBatchWait, this::extractBatch)
+        : null;
+    this.adaptiveInitialDimension = adaptiveInitialDimension;
+    this.adaptiveMinTags = adaptiveMinTags;
+    this.documentRouting = documentRouting;
+    this.documentThreshold = documentThreshold;
+
+    // Models are built once and share the same pooled http client, see OllamaClients
+    ocrModel = ollamaClients.chatModel(OCR_MODEL);
+    modelsFor(defaultProfile);
+  }
+
+  private ProfileModels modelsFor(final LabelingProfile profile) {
+    return modelsByProfile.computeIfAbsent(profile, this::buildModels);
+  }
 
-    unstructuredModel = getUnstructuredMultiModalModel();
-    imageInfoFromDescriptionModel = getMultiModalModel(ImageInfoFromDescriptionModelResponse.class);
+  private ProfileModels buildModels(final LabelingProfile profile) {
+    final OllamaChatModel descriptionModel = ollamaClients.chatModel(
+        profile.visionModel(), null, profile.maxDescriptionTokens(), profile.contextSize());
+    final OllamaChatModel imageInfoFromDescriptionModel = ollamaClients.chatModel(
+        profile.extractionModel(), ImageInfoFromDescriptionModelResponse.class, null, profile.contextSize());
 
-    imageInfoFromDescriptionService = AiServices.builder(ImageInfoFromDescriptionService.class)
+    final ImageInfoFromDescriptionService imageInfoFromDescriptionService = AiServices.builder(ImageInfoFromDescriptionService.class)
         .chatModel(imageInfoFromDescriptionModel)
         .chatRequestTransformer(req -> {
-          System.out.println("num messages: " + req.messages().size());
-          if (req.messages().size() > 1) {
+          // the system message with the instructions is expected, anything beyond it and the description is not
+          final long numMessages = req.messages().stream()
+              .filter(message -> !(message instanceof SystemMessage))
+              .count();
+          EventLog.info(null, "num messages: " + numMessages);
+          if (numMessages > 1) {
             // hopefully this is solved now, but leaving this in place just in case
             // https://github.com/quarkiverse/quarkus-langchain4j/issues/2071
-            System.out.println("Warning stale messages may be getting sent to the model: " + req.messages().size());
+            EventLog.warn(null, "Warning stale messages may be getting sent to the model: " + numMessages);
           }
 
           return req;
         })
         .build();
+
+    final ImageInfoBatchFromDescriptionsService imageInfoBatchFromDescriptionsService = AiServices.create(
+        ImageInfoBatchFromDescriptionsService.class,
+        ollamaClients.chatModel(
+            profile.extractionModel(), ImageInfoBatchFromDescriptionsModelResponse.class, null, profile.contextSize()));
+
+    return new ProfileModels(descriptionModel, imageInfoFromDescriptionService, imageInfoBatchFromDescriptionsService);
+  }
+
+  private record ProfileModels(
+      OllamaChatModel descriptionModel,
+      ImageInfoFromDescriptionService imageInfoFromDescriptionService,
+      ImageInfoBatchFromDescriptionsService imageInfoBatchFromDescriptionsService
+  ) {}
+
+  /**
+   * Pre-loads the models used by {@link #generateImageInfoAndMetadata(String, boolean)} so the first image of a run
+   * doesn't pay for loading them. Intended to be kicked off while the caller is still discovering images.
+   */
+  public CompletableFuture<Void> warmUpModels() {
+    return warmUpModels(defaultProfile);
+  }
+
+  public CompletableFuture<Void> warmUpModels(final LabelingProfile profile) {
+    return ollamaClients.warmUp(List.of(profile.visionModel(), profile.extractionModel()));
+  }
+
+  public LabelingProfile defaultProfile() {
+    return defaultProfile;
+  }
+
+  /**
+   * Prints how adaptive resolution did over the run (if it is enabled).
+   */
+  public void printAdaptiveResolutionSummary(final PrintStream out) {
+    if (defaultProfile.adaptiveResolution()) {
+      // reported even if no image got as far as the model
+      adaptiveResolutionStatsFor(defaultProfile);
+    }
+    adaptiveResolutionStats.values().stream()
+        .sorted(Comparator.comparing(AdaptiveResolutionStats::profileName))
+        .forEach(stats -> stats.printSummary(out));
+  }
+
+  private AdaptiveResolutionStats adaptiveResolutionStatsFor(final LabelingProfile profile) {
+    return adaptiveResolutionStats.computeIfAbsent(profile,
+        ignored -> new AdaptiveResolutionStats(profile.name(), adaptiveInitialDimension, profile.maxImageDimension()));
+  }
+
+  /**
+   * Prints how many images were sent straight to OCR as documents (if document routing is enabled).
+   */
+  public void printDocumentRoutingSummary(final PrintStream out) {
+    if (documentRouting && imagesClassified.sum() > 0) {
+      out.printf("Document routing: %d of %d images were read as screenshots/documents%n",
+          documentsRouted.sum(), imagesClassified.sum());
+    }
+  }
+
+  /**
+   * Prints how well extraction batching did (if it is enabled).
+   */
+  public void printExtractionBatchingSummary(final PrintStream out) {
+    if (extractionBatcher != null && extractionBatcher.batchesSent() + extractionBatcher.itemsAlone() > 0) {
+      out.printf("Extraction batching: %d descriptions in %d requests (%.1f per request), %d re-sent on their own, %d had no batch to join%n",
+          extractionBatcher.itemsSent(), extractionBatcher.batchesSent(),
+          extractionBatcher.itemsSent() / (double) Math.max(1, extractionBatcher.batchesSent()),
+          extractionBatcher.itemsFailed(),
+          extractionBatcher.itemsAlone());
+    }
   }
 
   public ImageInfo generateImageInfoAndMetadata(final String imagePath, final boolean keepThumbnails) {
+    return generateImageInfoAndMetadata(imagePath, keepThumbnails, defaultProfile);
+  }
+
+  /**
+   * Same as {@link #generateImageInfoAndMetadata(String, boolean)}, but labels the image with the given profile
+   * instead of the configured one.
+   */
+  public ImageInfo generateImageInfoAndMetadata(
+      final String imagePath,
+      final boolean keepThumbnails,
+      final LabelingProfile profile
+  ) {
+    final ImageLabelEvent labelEvent = ImageLabelEvent.begin(imagePath, profile.name());
+    try {
+      final ImageInfo imageInfo = labelImage(imagePath, keepThumbnails, profile, labelEvent);
+      labelEvent.succeeded();
+      return imageInfo;
+    } finally {
+      labelEvent.finish();
+    }
+  }
+
+  private ImageInfo labelImage(
+      final String imagePath,
+      final boolean keepThumbnails,
+      final LabelingProfile profile,
+      final ImageLabelEvent labelEvent
+  ) {
     // Load and resize the image
     final BufferedImage originalImage;
 
-    try {
-      originalImage = ImageIO.read(Paths.get(imagePath).toFile());
-    } catch (IOException ex) {
-      throw new ImageReadException(imagePath, ex);
+    final File imageFile = Paths.get(imagePath).toFile();
+    try (LoadGovernor.Admission ignored = LoadGovernor.admitCpuStage()) {
+      final long decodeStartTime = System.nanoTime();
+      final PipelineStageEvent decodeEvent = PipelineStageEvent.begin("decode", imagePath);
+      try {
+        originalImage = ImageIO.read(imageFile);
+      } catch (IOException ex) {
+        throw new ImageReadException(imagePath, ex);
+      } finally {
+        StageTimer.recordSince("decode", decodeStartTime);
+        decodeEvent.finish();
+      }
     }
 
     if (originalImage == null) {
       throw new ImageReadException(imagePath, new NullPointerException("Null value returned from ImageIO.read"));
     }
+    if (labelEvent.isEnabled()) {
+      // the file size costs a stat, only worth it when recording
+      labelEvent.dimensions(originalImage.getWidth(), originalImage.getHeight()).fileBytes(imageFile.length());
+    }
 
-    final ImageContent imageContent = getImageContentAndResizeIt(originalImage, imagePath);
-
-    // Step 1: Get unstructured detailed description from the vision model
-    System.out.println("Getting unstructured description from vision model...");
-    final String detailedDescription = getUnstructuredDescription(imageContent);
-    System.out.println("Detailed description received: " + detailedDescription.substring(0, Math.min(100, detailedDescription.length())) + "...");
-
-    // Step 2: Extract structured fields from the description
-    System.out.println("Extracting structured info from description...");
-    final ImageInfoFromDescriptionModelResponse extractedInfo = extractImageInfoFromDescription(detailedDescription, imagePath);
+    // Steps 1 & 2: Describe the image and extract structured fields from the description. Screenshots and documents
+    // skip the description, their text is read instead and the fields are extracted from that
+    final Optional<DocumentPass> documentPass = documentRouting
+        ? readAsDocument(originalImage, imagePath, profile)
+        : Optional.empty();
+
+    final ImageInfoFromDescriptionModelResponse extractedInfo;
+    if (documentPass.isPresent()) {
+      labelEvent.document(true);
+      extractedInfo = documentPass.get().extractedInfo();
+    } else if (profile.adaptiveResolution()) {
+      extractedInfo = describeAtAdaptiveResolution(originalImage, imagePath, profile);
+    } else {
+      extractedInfo = describeAtResolution(originalImage, imagePath, profile, profile.maxImageDimension()).extractedInfo();
+    }
 
     final boolean isText = extractedInfo.hasText(); //isText(extractedInfo.doesContainText());
     final List<String> normalizedTags = normalizeTags(extractedInfo, isText);
 
     // Step 3: Extract file metadata (GPS location and date taken)
+    final long metadataStartTime = System.nanoTime();
+    final PipelineStageEvent metadataEvent = PipelineStageEvent.begin("metadata", imagePath);
     Double gpsLatitude = null;
     Double gpsLongitude = null;
     Date imageTakenAt = null;
@@ -134,19 +348,19 @@ public class ImageInfoService
       gpsLatitude = geoLocation.get("latitude");
       gpsLongitude = geoLocation.get("longitude");
       if (gpsLatitude != null && gpsLongitude != null) {
-        System.out.printf("GPS location extracted: %.6f, %.6f%n", gpsLatitude, gpsLongitude);
+        EventLog.info(imagePath, "GPS location extracted: %.6f, %.6f".formatted(gpsLatitude, gpsLongitude));
       }
     } catch (Exception e) {
-      System.err.println("Warning: Could not extract GPS location from " + imagePath + ": " + e.getMessage());
+      EventLog.warn(imagePath, "Warning: Could not extract GPS location from " + imagePath + ": " + e.getMessage());
     }
 
     try {
       imageTakenAt = getCreatedOn(imagePath);
       if (imageTakenAt != null) {
-        System.out.println("Image taken at: " + imageTakenAt);
+        EventLog.info(imagePath, "Image taken at: " + imageTakenAt);
       }
     } catch (Exception e) {
-      System.err.println("Warning: Could not extract date taken from " + imagePath + ": " + e.getMessage());
+      EventLog.warn(imagePath, "Warning: Could not extract date taken from " + imagePath + ": " + e.getMessage());
     }
 
     // Step 4: Extract filesystem timestamps
@@ -156,16 +370,22 @@ public class ImageInfoService
     try {
       fileCreatedAt = getFileCreatedAt(imagePath);
       fileLastModified = getFileLastModified(imagePath);
-      System.out.println("File created at: " + fileCreatedAt);
-      System.out.println("File last modified: " + fileLastModified);
+      EventLog.info(imagePath, "File created at: " + fileCreatedAt);
+      EventLog.info(imagePath, "File last modified: " + fileLastModified);
     } catch (Exception e) {
-      System.err.println("Warning: Could not extract file timestamps from " + imagePath + ": " + e.getMessage());
+      EventLog.warn(imagePath, "Warning: Could not extract file timestamps from " + imagePath + ": " + e.getMessage());
     }
+    StageTimer.recordSince("metadata", metadataStartTime);
+    metadataEvent.finish();
 
     if (keepThumbnails) {
       // Save thumbnail to archive
+      final long thumbnailStartTime;
+      final PipelineStageEvent thumbnailEvent;
       final byte[] imageBytesForThumbnail;
-      try {
+      try (LoadGovernor.Admission ignored = LoadGovernor.admitCpuStage()) {
+        thumbnailStartTime = System.nanoTime();
+        thumbnailEvent = PipelineStageEvent.begin("thumbnail", imagePath);
         imageBytesForThumbnail = imageToJpegBytes(
             resizeImage(originalImage, IMAGE_DIMENSION_FOR_THUMBNAIL), 0.85f);
       }
@@ -174,6 +394,8 @@ public class ImageInfoService
       }
 
       saveThumbnail(imagePath, imageBytesForThumbnail);
+      StageTimer.recordSince("thumbnail", thumbnailStartTime);
+      thumbnailEvent.bytes(imageBytesForThumbnail.length).finish();
     }
 
     // Generate a thumbnail filename (TODO: Eventually let's actually return ImageContent and then defer
@@ -184,7 +406,8 @@ public class ImageInfoService
         extractedInfo.fullDescription(),
         extractedInfo.shortTitle(),
         isText,
-        null, // textContents - not populated in experimental method for now
+        // documents already had their text read, for other images it is filled in later by OcrService (if they have any)
+        documentPass.map(DocumentPass::text).orElse(null),
         thumbnailName,
         gpsLatitude,
         gpsLongitude,
@@ -194,38 +417,188 @@ public class ImageInfoService
     );
   }
 
+  /**
+   * If the image looks like a screenshot or document, reads its text with the OCR model and extracts the structured
+   * fields from that text rather than from a description of the image. Empty if it doesn't look like one (or no text
+   * could be read from it), in which case it should be described as usual.
+   */
+  private Optional<DocumentPass> readAsDocument(
+      final BufferedImage originalImage,
+      final String imagePath,
+      final LabelingProfile profile
+  ) {
+    final long classifyStartTime = System.nanoTime();
+    final PipelineStageEvent classifyEvent = PipelineStageEvent.begin("classify", imagePath);
+    final DocumentImageClassifier.Classification classification = DocumentImageClassifier.classify(originalImage);
+    StageTimer.recordSince("classify", classifyStartTime);
+    classifyEvent.finish();
+    imagesClassified.increment();
+
+    if (!classification.isDocument(documentThreshold)) {
+      return Optional.empty();
+    }
+
+    EventLog.info(imagePath, "Reading as a screenshot/document (score %.2f), skipping the image description".formatted(
+        classification.score()));
+    final ImageContent imageContent =
+        getImageContentAndResizeIt(originalImage, imagePath, profile.maxImageDimension(), profile.jpegQuality());
+
+    final long ocrStartTime = System.nanoTime();
+    final PipelineStageEvent ocrEvent = PipelineStageEvent.begin("ocr", imagePath).model(OCR_MODEL);
+    final String text;
+    try {
+      text = doOCR(imageContent);
+    } finally {
+      StageTimer.recordSince("ocr", ocrStartTime);
+      ocrEvent.finish();
+    }
+
+    if (isNull(text) || text.isBlank()) {
+      EventLog.info(imagePath, "No text read from the document, describing it as an image instead");
+      return Optional.empty();
+    }
+
+    final String textForExtraction = text.length() > MAX_DOCUMENT_TEXT_FOR_EXTRACTION
+        ? text.substring(0, MAX_DOCUMENT_TEXT_FOR_EXTRACTION) + "..."
+        : text;
+    final ImageInfoFromDescriptionModelResponse extractedInfo = extractImageInfoFromDescription(
+        "A screenshot or scanned document. It contains readable text, which reads:\n" + textForExtraction,
+        imagePath, profile);
+
+    documentsRouted.increment();
+
+    // we know it has text, whatever the model made of it
+    return Optional.of(new DocumentPass(text, new ImageInfoFromDescriptionModelResponse(
+        extractedInfo.tags(), extractedInfo.fullDescription(), extractedInfo.shortTitle(),
+        extractedInfo.doesContainText(), true)));
+  }
+
+  private record DocumentPass(
+      String text,
+      ImageInfoFromDescriptionModelResponse extractedInfo
+  ) {}
+
+  /**
+   * Labels the image at `adaptiveInitialDimension` first and only re-runs it at the profile's maxImageDimension when the first
+   * pass looks like it needed more detail (text, very few tags, or a description that hedges about what it sees).
+   */
+  private ImageInfoFromDescriptionModelResponse describeAtAdaptiveResolution(
+      final BufferedImage originalImage,
+      final String imagePath,
+      final LabelingProfile profile
+  ) {
+    final int maxDimension = profile.maxImageDimension();
+    if (Math.max(originalImage.getWidth(), originalImage.getHeight()) <= adaptiveInitialDimension
+        || adaptiveInitialDimension >= maxDimension) {
+      adaptiveResolutionStatsFor(profile).recordAlreadySmall();
+      return describeAtResolution(originalImage, imagePath, profile, maxDimension).extractedInfo();
+    }
+
+    final DescriptionPass lowResolutionPass =
+        describeAtResolution(originalImage, imagePath, profile, adaptiveInitialDimension);
+    final Optional<String> reasonToEscalate = reasonToEscalate(lowResolutionPass);
+    if (reasonToEscalate.isEmpty()) {
+      adaptiveResolutionStatsFor(profile).recordKeptAtLow(lowResolutionPass.nanos());
+      return lowResolutionPass.extractedInfo();
+    }
+
+    EventLog.info(imagePath, "Re-running at %dpx because the %dpx pass found %s".formatted(
+        maxDimension, adaptiveInitialDimension, reasonToEscalate.get()));
+    final DescriptionPass fullResolutionPass = describeAtResolution(originalImage, imagePath, profile, maxDimension);
+    adaptiveResolutionStatsFor(profile).recordEscalated(
+        reasonToEscalate.get(), lowResolutionPass.nanos(), fullResolutionPass.nanos());
+
+    return fullResolutionPass.extractedInfo();
+  }
+
+  private Optional<String> reasonToEscalate(final DescriptionPass pass) {
+    if (Boolean.TRUE.equals(pass.extractedInfo().hasText())) {
+      return Optional.of("text");
+    }
+    if (pass.extractedInfo().tags().size() < adaptiveMinTags) {
+      return Optional.of("few tags");
+    }
+    if (LOW_CONFIDENCE_WORDING.matcher(pass.detailedDescription()).find()) {
+      return Optional.of("low confidence");
+    }
+
+    return Optional.empty();
+  }
+
+  private DescriptionPass describeAtResolution(
+      final BufferedImage originalImage,
+      final String imagePath,
+      final LabelingProfile profile,
+      final int maxDimension
+  ) {
+    final long startTime = System.nanoTime();
+    final ImageContent imageContent =
+        getImageContentAndResizeIt(originalImage, imagePath, maxDimension, profile.jpegQuality());
+
+    // Step 1: Get unstructured detailed description from the vision model
+    EventLog.info(imagePath, "Getting unstructured description from vision model...");
+    final String detailedDescription = getUnstructuredDescription(imageContent, imagePath, profile);
+    EventLog.info(imagePath, "Detailed description received: " + detailedDescription.substring(0, Math.min(100, detailedDescription.length())) + "...");
+
+    // Step 2: Extract structured fields from the description
+    EventLog.info(imagePath, "Extracting structured info from description...");
+    final ImageInfoFromDescriptionModelResponse extractedInfo = extractImageInfoFromDescription(detailedDescription, imagePath, profile);
+
+    return new DescriptionPass(detailedDescription, extractedInfo, System.nanoTime() - startTime);
+  }
+
+  private record DescriptionPass(
+      String detailedDescription,
+      ImageInfoFromDescriptionModelResponse extractedInfo,
+      long nanos
+  ) {}
+
   // At this point we've already read the image, the only reason we are taking imagePath is for logging fileSize
   // and including imagePath in the exception message
-  private ImageContent getImageContentAndResizeIt(BufferedImage originalImage, final String imagePath) {
-    try {
+  private ImageContent getImageContentAndResizeIt(
+      final BufferedImage originalImage,
+      final String imagePath,
+      final int maxDimension,
+      final float jpegQuality
+  ) {
+    long encodeStartTime = 0;
+    try (LoadGovernor.Admission ignored = LoadGovernor.admitCpuStage()) {
+      final long startTime = System.nanoTime();
       final int originalWidth = originalImage.getWidth();
       final int originalHeight = originalImage.getHeight();
 
-      final BufferedImage resizedImage = resizeImage(originalImage, MAX_IMAGE_DIMENSION);
+      final BufferedImage resizedImage = resizeImage(originalImage, maxDimension);
+      StageTimer.recordSince("resize", startTime);
+      encodeStartTime = System.nanoTime();
 
       final int resizedWidth = resizedImage.getWidth();
       final int resizedHeight = resizedImage.getHeight();
 
       // Convert a resized image to JPEG with compression for smaller file size
       // Always use JPEG to ensure good compression regardless of source format
-      final byte[] imageBytes = imageToJpegBytes(resizedImage, 0.85f); // 85% quality
+      final byte[] imageBytes = imageToJpegBytes(resizedImage, jpegQuality);
       final long resizedFileSize = imageBytes.length;
 
       // Log the resize information
       final long originalFileSize = Files.size(Paths.get(imagePath));
-      System.out.printf("Image resize: %dx%d (%.1f KB) -> %dx%d (%.1f KB)%n",
+      EventLog.info(imagePath, "Image resize: %dx%d (%.1f KB) -> %dx%d (%.1f KB)".formatted(
           originalWidth, originalHeight, originalFileSize / 1024.0,
-          resizedWidth, resizedHeight, resizedFileSize / 1024.0);
+          resizedWidth, resizedHeight, resizedFileSize / 1024.0));
 
       final String base64Img = Base64.getEncoder().encodeToString(imageBytes);
       final long base64Size = base64Img.length();
-      System.out.printf("Base64 size: %.1f KB%n", base64Size / 1024.0);
+      EventLog.info(imagePath, "Base64 size: %.1f KB".formatted(base64Size / 1024.0));
 
       return ImageContent.from(base64Img, "image/jpeg");
     }
     catch (IOException ex) {
       throw new RuntimeException("Could not parse image: " + imagePath, ex);
     }
+    finally {
+      if (encodeStartTime != 0) {
+        StageTimer.recordSince("encode", encodeStartTime);
+      }
+    }
   }
 
   /**
@@ -239,30 +612,128 @@ public class ImageInfoService
       final Path thumbnailPath = DataDirectoryInitializer.getThumbnailsDirectory().resolve(thumbnailFilename);
 
       Files.write(thumbnailPath, thumbnailBytes);
-      System.out.println("Thumbnail saved: " + thumbnailPath);
+      EventLog.info(imagePath, "Thumbnail saved: " + thumbnailPath);
     }
     catch (IOException e) {
       // Log error but don't fail the entire operation if thumbnail saving fails
-      System.err.println("Warning: Failed to save thumbnail for " + imagePath + ": " + e.getMessage());
+      EventLog.warn(imagePath, "Warning: Failed to save thumbnail for " + imagePath + ": " + e.getMessage());
     }
   }
 
-  private ImageInfoFromDescriptionModelResponse extractImageInfoFromDescription(final String detailedDescription, final String imagePathForLogging) {
-    int numbTimesTried = 0;
+  private ImageInfoFromDescriptionModelResponse extractImageInfoFromDescription(
+      final String detailedDescription,
+      final String imagePathForLogging,
+      final LabelingProfile profile
+  ) {
+    final long startTime = System.nanoTime();
+    final PipelineStageEvent event =
+        PipelineStageEvent.begin("extract", imagePathForLogging).model(profile.extractionModel());
+    try {
+      return extractionsInFlight.execute(
+          sha256Hex(profile.name() + "\n" + detailedDescription),
+          () -> extractionBatcher == null
+              ? extractWithinConcurrencyLimit(detailedDescription, imagePathForLogging, profile)
+              // anything the batch had no valid result for is extracted on its own, with the usual retries
+              : extractionBatcher.submit(profile, detailedDescription)
+                  .orElseGet(() -> extractWithinConcurrencyLimit(detailedDescription, imagePathForLogging, profile)));
+    } finally {
+      StageTimer.recordSince("extract", startTime);
+      event.finish();
+    }
+  }
 
-    while (numbTimesTried < NUM_MODEL_RETRIES) {
-      if (numbTimesTried > 0) {
-        System.out.println("Failed to get a valid result from the model for image: " + imagePathForLogging);
-        System.out.printf("Trying again %s/%s%n", numbTimesTried + 1, NUM_MODEL_RETRIES);
+  private ImageInfoFromDescriptionModelResponse extractWithinConcurrencyLimit(
+      final String detailedDescription,
+      final String imagePathForLogging,
+      final LabelingProfile profile
+  ) {
+    if (extractionSlots == null) {
+      return extractImageInfoFromDescriptionWithRetries(detailedDescription, imagePathForLogging, profile);
+    }
+
+    extractionSlots.acquireUninterruptibly();
+    try {
+      return extractImageInfoFromDescriptionWithRetries(detailedDescription, imagePathForLogging, profile);
+    } finally {
+      extractionSlots.release();
+    }
+  }
+
+  /**
+   * Extracts the structured info of several descriptions in one request. There are no retries here, an entry which
+   * is missing or incomplete comes back as null and {@link MicroBatcher} leaves it to be extracted on its own.
+   */
+  private List<ImageInfoFromDescriptionModelResponse> extractBatch(
+      final LabelingProfile profile,
+      final List<String> detailedDescriptions
+  ) {
+    final StringBuilder numberedDescriptions = new StringBuilder();
+    for (int i = 0; i < detailedDescriptions.size(); i++) {
+      numberedDescriptions.append("======\nImage ").append(i + 1).append(":\n")
+          .append(detailedDescriptions.get(i)).append('\n');
+    }
+    numberedDescriptions.append("======");
+
+    EventLog.info(null, "Extracting structured info from " + detailedDescriptions.size() + " descriptions at once...");
+    if (extractionSlots != null) {
+      extractionSlots.acquireUninterruptibly();
+    }
+    final ImageInfoBatchFromDescriptionsModelResponse response;
+    try {
+      response = modelsFor(profile).imageInfoBatchFromDescriptionsService()
+          .extractImageInfoFromDetailedImageDescriptions(numberedDescriptions.toString());
+    } finally {
+      if (extractionSlots != null) {
+        extractionSlots.release();
       }
+    }
 
-      final var result = imageInfoFromDescriptionService.extractImageInfoFromDetailedImageDescription(detailedDescription);
+    final List<ImageInfoFromDescriptionModelResponse> results =
+        new ArrayList<>(Collections.nCopies(detailedDescriptions.size(), null));
+    if (isNull(response) || isNull(response.images())) {
+      return results;
+    }
+
+    for (final ImageInfoBatchItemModelResponse item : response.images()) {
+      if (isNull(item) || isNull(item.imageNumber())
+          || item.imageNumber() < 1 || item.imageNumber() > detailedDescriptions.size()) {
+        continue;
+      }
+      final ImageInfoFromDescriptionModelResponse extractedInfo = item.toImageInfoFromDescription();
+      if (isComplete(extractedInfo)) {
+        results.set(item.imageNumber() - 1, extractedInfo);
+      }
+    }
+
+    return results;
+  }
 
-      if (nonNull(result) &&
+  private static boolean isComplete(final ImageInfoFromDescriptionModelResponse result) {
+    return nonNull(result) &&
         nonNull(result.tags()) &&
         nonNull(result.fullDescription()) &&
         nonNull(result.shortTitle()) &&
-        nonNull(result.doesContainText())) {
+        nonNull(result.doesContainText());
+  }
+
+  private ImageInfoFromDescriptionModelResponse extractImageInfoFromDescriptionWithRetries(
+      final String detailedDescription,
+      final String imagePathForLogging,
+      final LabelingProfile profile
+  ) {
+    final ImageInfoFromDescriptionService imageInfoFromDescriptionService =
+        modelsFor(profile).imageInfoFromDescriptionService();
+    int numbTimesTried = 0;
+
+    while (numbTimesTried < profile.modelRetries()) {
+      if (numbTimesTried > 0) {
+        EventLog.info(imagePathForLogging, "Failed to get a valid result from the model for image: " + imagePathForLogging);
+        EventLog.info(imagePathForLogging, "Trying again %s/%s".formatted(numbTimesTried + 1, profile.modelRetries()));
+      }
+
+      final var result = imageInfoFromDescriptionService.extractImageInfoFromDetailedImageDescription(detailedDescription);
+
+      if (isComplete(result)) {
         return result;
       }
 
@@ -272,48 +743,48 @@ public class ImageInfoService
 
     // if we got this far without returning a result it means we exhausted our retries
     throw new ExceededRetryLimitForModelRequest(
-      "Could not extract image info after %s tries".formatted(NUM_MODEL_RETRIES));
+      "Could not extract image info after %s tries".formatted(profile.modelRetries()));
+  }
+
+  /**
+   * Reads the text in an image with the OCR model. Slow, so only worth it for images already found to contain text,
+   * see {@link OcrService}.
+   */
+  public String extractText(final String imagePath) {
+    final BufferedImage originalImage;
+    try {
+      originalImage = ImageIO.read(Paths.get(imagePath).toFile());
+    } catch (IOException ex) {
+      throw new ImageReadException(imagePath, ex);
+    }
+
+    if (originalImage == null) {
+      throw new ImageReadException(imagePath, new NullPointerException("Null value returned from ImageIO.read"));
+    }
+
+    final ImageContent imageContent = getImageContentAndResizeIt(
+        originalImage, imagePath, defaultProfile.maxImageDimension(), defaultProfile.jpegQuality());
+
+    final long startTime = System.nanoTime();
+    final PipelineStageEvent event = PipelineStageEvent.begin("ocr", imagePath).model(OCR_MODEL);
+    try {
+      return doOCR(imageContent);
+    } finally {
+      StageTimer.recordSince("ocr", startTime);
+      event.finish();
+    }
   }
 
   // worked well on cli: `llama run deepseek-ocr '"/Users/chriswininger/Pictures/test-images/25-12-17 08-50-55 3819.png"\nExtract the text in the image.'`
   private String doOCR(final ImageContent imageContent) {
-    final ChatModel modelOcr = OllamaChatModel.builder()
-        .modelName(OCR_MODEL)
-        .baseUrl(ollamaUrl)
-        .build();
-
     final TextContent command = TextContent.from("\nExtract the text in the image.");
     final UserMessage userMessage = UserMessage.from(imageContent, command);
-    final ChatResponse chatResponse = modelOcr.chat(userMessage);
+    final ChatResponse chatResponse = ocrModel.chat(userMessage);
 
     // Parse the JSON response into ImageInfoModelResponse
     return chatResponse.aiMessage().text();
   }
 
-  private OllamaChatModel getMultiModalModel(Class schemaClass) {
-    final var responseFormat = ResponseFormat.builder()
-        .type(ResponseFormatType.JSON)
-        .jsonSchema(JsonSchemas.jsonSchemaFrom(schemaClass).get())
-        .build();
-
-    return OllamaChatModel.builder()
-        .modelName(MULTI_MODAL_MODAL)
-        .baseUrl(ollamaUrl)
-        .responseFormat(responseFormat)
-        .logRequests(logRequests)
-        .logResponses(logResponses)
-        .build();
-  }
-
-  private OllamaChatModel getUnstructuredMultiModalModel() {
-    return OllamaChatModel.builder()
-        .modelName(MULTI_MODAL_MODAL)
-        .baseUrl(ollamaUrl)
-        .logRequests(logRequests)
-        .logResponses(logResponses)
-        .build();
-  }
-
   /**
    * Gets a complete and thorough unstructured text description of an image from the model.
    * Unlike other methods, this does not attempt to parse the response as JSON.
@@ -322,21 +793,38 @@ public class ImageInfoService
    * @return the model's free-form text description of the image
    */
   public String getUnstructuredDescription(final ImageContent imageContent) {
-    final TextContent prompt = TextContent.from(
-        "Please provide a complete and thorough description of this image. " +
-        "Include all relevant details about the subjects, setting, colors, composition, " +
-        "and any text or notable elements visible in the image. Include a line which " +
-        "describes clearly if the image does or does not contain readable text. Only describe it as " +
-        "including text if the text is legible.");
+    return getUnstructuredDescription(imageContent, null, defaultProfile);
+  }
 
-    final UserMessage userMessage = UserMessage.from(imageContent, prompt);
-    final ChatResponse chatResponse = unstructuredModel.chat(userMessage);
+  private String getUnstructuredDescription(
+      final ImageContent imageContent,
+      final String imagePath,
+      final LabelingProfile profile
+  ) {
+    final long startTime = System.nanoTime();
+    final PipelineStageEvent event = PipelineStageEvent.begin("describe", imagePath).model(profile.visionModel());
+    try {
+      return describe(imageContent, profile);
+    } finally {
+      StageTimer.recordSince("describe", startTime);
+      event.finish();
+    }
+  }
 
-    return chatResponse.aiMessage().text();
+  private String describe(final ImageContent imageContent, final LabelingProfile profile) {
+    // the prompt never changes, so the profile (the model and its options) and the image identify the request
+    final String key = sha256Hex(profile.name() + "\n" + imageContent.image().base64Data());
+    return descriptionsInFlight.execute(key, () -> {
+      final ChatResponse chatResponse =
+          modelsFor(profile).descriptionModel().chat(DESCRIPTION_PROMPT, UserMessage.from(imageContent, DESCRIBE_THIS_IMAGE));
+
+      return chatResponse.aiMessage().text();
+    });
   }
 
   // TODO -- split tags with spaces so that tags like 'animal portrait' become 'animal', 'portrait'
-  private List<String> normalizeTags(final ImageInfoFromDescriptionModelResponse modelResponse, final boolean isText) {
+  // package-private (and static) for NormalizeTagsBenchmark
+  static List<String> normalizeTags(final ImageInfoFromDescriptionModelResponse modelResponse, final boolean isText) {
     // should have already checked this by now, but just in case :-)
     if (isNull(modelResponse.tags())) {
       return null;
@@ -0,0 +1,370 @@
+package com.wininger.cli_image_labeler.image.tagging.services;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import com.wininger.cli_image_labeler.image.tagging.db.ImageInfoEntity;
+import com.wininger.cli_image_labeler.image.tagging.db.ImageInfoRepository;
+import com.wininger.cli_image_labeler.image.tagging.db.SkippedImageEntity;
+import com.wininger.cli_image_labeler.image.tagging.db.SkippedImageRepository;
+import com.wininger.cli_image_labeler.image.tagging.db.TagEntity;
+import com.wininger.cli_image_labeler.image.tagging.db.TagRepository;
+import com.wininger.cli_image_labeler.image.tagging.dto.ImageInfo;
+import com.wininger.cli_image_labeler.image.tagging.utils.EventLog;
+import com.wininger.cli_image_labeler.image.tagging.utils.PrintUtils;
+import com.wininger.cli_image_labeler.image.tagging.utils.StageTimer;
+import com.wininger.cli_image_labeler.setup.DataDirectoryInitializer;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.control.ActivateRequestContext;
+import jakarta.inject.Inject;
+
+import static com.wininger.cli_image_labeler.image.tagging.utils.PrintUtils.printImageInfoResults;
+
+/**
+ * Labels one image at a time and saves it to the database: skipping those already saved or turned away by the
+ * pre-filters, generating the rest with {@link ImageInfoService} and handing text images on to {@link OcrService}.
+ * Shared by everything which labels images (write-tags-to-local-db, serve, watch and, without saving,
+ * generate-image-tags), which decide what to label and when.
+ */
+@ApplicationScoped
+public class ImageLabelingService {
+  private static final Set<String> IMAGE_EXTENSIONS = Set.of(
+      "jpg", "jpeg", "png", "gif", "bmp", "webp", "tiff", "tif"
+  );
+
+  private final ImageInfoService imageInfoService;
+  private final ImageInfoRepository imageTagRepository;
+  private final TagRepository tagRepository;
+  private final OcrService ocrService;
+  private final ImagePreFilter imagePreFilter;
+  private final SkippedImageRepository skippedImageRepository;
+
+  private final AtomicInteger failedImages = new AtomicInteger(0);
+  private final AtomicInteger skippedImages = new AtomicInteger(0);
+
+  /**
+   * What became of an image.
+   *
+   * @param imageInfo what was generated, null unless it was labeled or updated
+   * @param error     why it failed, null unless it did
+   */
+  public record ProcessedImage(EventLog.Outcome outcome, ImageInfo imageInfo, String error) {}
+
+  @Inject
+  public ImageLabelingService(
+      final ImageInfoService imageInfoService,
+      final ImageInfoRepository imageTagRepository,
+      final TagRepository tagRepository,
+      final OcrService ocrService,
+      final ImagePreFilter imagePreFilter,
+      final SkippedImageRepository skippedImageRepository
+  ) {
+    this.imageInfoService = imageInfoService;
+    this.imageTagRepository = imageTagRepository;
+    this.tagRepository = tagRepository;
+    this.ocrService = ocrService;
+    this.imagePreFilter = imagePreFilter;
+    this.skippedImageRepository = skippedImageRepository;
+  }
+
+  /**
+   * Whether the file has the extension of a supported image type.
+   */
+  public boolean isImageFile(final Path path) {
+    final String fileName = path.getFileName().toString().toLowerCase();
+    final int lastDot = fileName.lastIndexOf('.');
+    if (lastDot == -1) {
+      return false;
+    }
+    final String extension = fileName.substring(lastDot + 1);
+    return IMAGE_EXTENSIONS.contains(extension);
+  }
+
+  /**
+   * Labels the image and saves it, unless it is already saved (and not to be updated) or the pre-filters skip it.
+   * Failures are reported, counted and logged to failLogName rather than thrown.
+   */
+  public ProcessedImage processImage(final Path imagePath, final String failLogName, final boolean updateExisting) {
+    final long startTime = System.currentTimeMillis();
+    final String fullPath = imagePath.toAbsolutePath().toString();
+    EventLog.imageStarted(fullPath);
+
+    try {
+      EventLog.info(fullPath, "\n=== Processing: " + fullPath + " ===");
+
+      // Check if image already exists in database (requires request context)
+      final long lookupStartTime = System.nanoTime();
+      final ImageInfoEntity existing = findExistingImage(fullPath);
+      StageTimer.recordSince("db lookup", lookupStartTime);
+      if (existing != null && !updateExisting) {
+        EventLog.info(fullPath, "Image already exists in database, skipping...");
+        EventLog.imageFinished(fullPath, EventLog.Outcome.ALREADY_LABELED,
+            System.currentTimeMillis() - startTime, null);
+        return new ProcessedImage(EventLog.Outcome.ALREADY_LABELED, null, null);
+      }
+      if (existing != null) {
+        EventLog.info(fullPath, "Image already exists in database, updating...");
+      } else if (skipWithoutLabeling(imagePath, fullPath, updateExisting)) {
+        EventLog.imageFinished(fullPath, EventLog.Outcome.SKIPPED, System.currentTimeMillis() - startTime, null);
+        return new ProcessedImage(EventLog.Outcome.SKIPPED, null, null);
+      }
+
+      // Generate image info - this calls AI services and should NOT be in request context
+      final ImageInfo imageInfo = imageInfoService.generateImageInfoAndMetadata(fullPath, true);
+
+      if (Objects.isNull(imageInfo.tags())) {
+        throw new RuntimeException("Null tags were returned");
+      }
+
+      // Save to database (requires request context)
+      final long saveStartTime = System.nanoTime();
+      saveImageToDatabase(fullPath, imageInfo, existing != null);
+      StageTimer.recordSince("db save", saveStartTime);
+
+      final EventLog.Outcome outcome = existing != null ? EventLog.Outcome.UPDATED : EventLog.Outcome.LABELED;
+      if (EventLog.isRunning()) {
+        EventLog.imageFinished(fullPath, outcome, System.currentTimeMillis() - startTime, resultFields(imageInfo));
+      } else {
+        printImageInfoResults(imageInfo, startTime);
+      }
+
+      // Read the text (if there is any) in the background, only the text_contents of the saved row is updated
+      ocrService.submitIfText(fullPath, imageInfo);
+      return new ProcessedImage(outcome, imageInfo, null);
+
+    } catch (Exception e) {
+      return failed(imagePath, failLogName, startTime, e);
+    }
+  }
+
+  /**
+   * Labels the image without saving it (generate-image-tags), unless the pre-filters skip it. Skips are recorded and
+   * failures reported, counted and logged the same as by {@link #processImage}. Nothing is printed about a labeled
+   * image, the caller prints the results.
+   */
+  public ProcessedImage labelImage(final Path imagePath, final String failLogName) {
+    final long startTime = System.currentTimeMillis();
+    final String fullPath = imagePath.toAbsolutePath().toString();
+    EventLog.imageStarted(fullPath);
+
+    try {
+      EventLog.info(fullPath, "\n=== Processing: " + fullPath + " ===");
+      if (skipWithoutLabeling(imagePath, fullPath, false)) {
+        EventLog.imageFinished(fullPath, EventLog.Outcome.SKIPPED, System.currentTimeMillis() - startTime, null);
+        return new ProcessedImage(EventLog.Outcome.SKIPPED, null, null);
+      }
+
+      final ImageInfo imageInfo = imageInfoService.generateImageInfoAndMetadata(fullPath, false);
+      EventLog.imageFinished(fullPath, EventLog.Outcome.LABELED, System.currentTimeMillis() - startTime,
+          resultFields(imageInfo));
+      return new ProcessedImage(EventLog.Outcome.LABELED, imageInfo, null);
+
+    } catch (Exception e) {
+      return failed(imagePath, failLogName, startTime, e);
+    }
+  }
+
+  private ProcessedImage failed(
+      final Path imagePath,
+      final String failLogName,
+      final long startTime,
+      final Exception e
+  ) {
+    final String fullPath = imagePath.toAbsolutePath().toString();
+    EventLog.warn(fullPath, "Error processing image " + imagePath + ": " + e.getMessage());
+    failedImages.incrementAndGet();
+    writeFailedImageProcess(imagePath, failLogName, e);
+    EventLog.imageFinished(fullPath, EventLog.Outcome.FAILED, System.currentTimeMillis() - startTime,
+        Map.of("error", e.getClass().getName(), "message", String.valueOf(e.getMessage())));
+    // Continue processing other images even if one fails
+    return new ProcessedImage(EventLog.Outcome.FAILED, null, e.getClass().getName() + ": " + e.getMessage());
+  }
+
+  /**
+   * Checks the image against the pre-filters, recording it in skipped_images if it isn't worth labeling. An image
+   * skipped on an earlier run isn't examined again unless its size or modified time changed, or the run is
+   * --update-existing (the filters may have been changed since).
+   *
+   * @return true if the image should not be labeled
+   */
+  private boolean skipWithoutLabeling(
+      final Path imagePath,
+      final String fullPath,
+      final boolean updateExisting
+  ) throws IOException {
+    if (!imagePreFilter.isEnabled()) {
+      return false;
+    }
+
+    final long fileSize = Files.size(imagePath);
+    final long fileLastModified = Files.getLastModifiedTime(imagePath).toMillis();
+
+    final SkippedImageEntity previousSkip = findPreviousSkip(fullPath);
+    if (previousSkip != null && !updateExisting
+        && previousSkip.getFileSize() == fileSize && previousSkip.getFileLastModified() == fileLastModified) {
+      EventLog.info(fullPath, "Image was skipped before (" + previousSkip.getReason() + "), skipping...");
+      skippedImages.incrementAndGet();
+      return true;
+    }
+
+    final long filterStartTime = System.nanoTime();
+    final Optional<String> reason = imagePreFilter.reasonToSkip(imagePath);
+    StageTimer.recordSince("prefilter", filterStartTime);
+
+    if (reason.isPresent()) {
+      EventLog.info(fullPath, "Skipping, " + reason.get());
+      recordSkip(fullPath, reason.get(), fileSize, fileLastModified);
+      skippedImages.incrementAndGet();
+      return true;
+    }
+
+    if (previousSkip != null) {
+      // the file (or the filters) changed and it's worth labeling now
+      forgetSkip(fullPath);
+    }
+    return false;
+  }
+
+  /**
+   * What is logged about a labeled image, the same as {@link PrintUtils#printImageInfoResults} prints.
+   */
+  public static Map<String, Object> resultFields(final ImageInfo imageInfo) {
+    final Map<String, Object> fields = new LinkedHashMap<>();
+    fields.put("title", imageInfo.shortTitle());
+    fields.put("description", imageInfo.fullDescription());
+    fields.put("tags", imageInfo.tags());
+    fields.put("isText", imageInfo.isText());
+    if (imageInfo.textContents() != null) {
+      fields.put("textContents", imageInfo.textContents());
+    }
+    return fields;
+  }
+
+  /**
+   * How many images have failed to process since startup, callers wanting a single run's count take the difference.
+   */
+  public int failedImageCount() {
+    return failedImages.get();
+  }
+
+  /**
+   * How many images the pre-filters have skipped since startup, including those skipped on an earlier run.
+   */
+  public int skippedImageCount() {
+    return skippedImages.get();
+  }
+
+  @ActivateRequestContext
+  public ImageInfoEntity findExistingImage(final String fullPath) {
+    return imageTagRepository.findByFullPath(fullPath);
+  }
+
+  /**
+   * The paths of every image saved or skipped by an earlier run.
+   */
+  @ActivateRequestContext
+  public Set<String> findSavedPaths() {
+    final Set<String> saved = new HashSet<>(imageTagRepository.findFileLastModifiedByPath().keySet());
+    saved.addAll(skippedImageRepository.findFileLastModifiedByPath().keySet());
+    return saved;
+  }
+
+  @ActivateRequestContext
+  SkippedImageEntity findPreviousSkip(final String fullPath) {
+    return skippedImageRepository.findByFullPath(fullPath);
+  }
+
+  @ActivateRequestContext
+  void recordSkip(final String fullPath, final String reason, final long fileSize, final long fileLastModified) {
+    skippedImageRepository.upsert(fullPath, reason, fileSize, fileLastModified);
+  }
+
+  @ActivateRequestContext
+  void forgetSkip(final String fullPath) {
+    skippedImageRepository.delete(fullPath);
+  }
+
+  @ActivateRequestContext
+  void saveImageToDatabase(final String fullPath, final ImageInfo imageInfo, final boolean isUpdate) {
+    // Upsert all tags into the tags table and collect TagEntity objects
+    final List<TagEntity> tagEntities = imageInfo.tags().stream()
+        .map(tagRepository::upsertTag)
+        .collect(Collectors.toList());
+
+    // Fetch the existing entity within this request context if updating
+    final ImageInfoEntity existing = isUpdate
+        ? imageTagRepository.findByFullPath(fullPath)
+        : null;
+
+    if (existing != null) {
+      // Update existing entry
+      existing.setDescription(imageInfo.fullDescription());
+      existing.setTags(tagEntities);
+      existing.setThumbnailName(imageInfo.thumbnailName());
+      existing.setShortTitle(imageInfo.shortTitle());
+      existing.setIsText(imageInfo.isText());
+      existing.setTextContents(imageInfo.textContents());
+      existing.setGpsLatitude(imageInfo.gpsLatitude());
+      existing.setGpsLongitude(imageInfo.gpsLongitude());
+      existing.setImageTakenAt(imageInfo.imageTakenAt());
+      existing.setFileCreatedAt(imageInfo.fileCreatedAt());
+      existing.setFileLastModified(imageInfo.fileLastModified());
+      final ImageInfoEntity updated = imageTagRepository.update(existing);
+
+      EventLog.info(fullPath, "Updated database entry with ID: " + updated.getId());
+    } else {
+      // Save new entry to database
+      imageTagRepository.save(
+          fullPath,
+          imageInfo.fullDescription(),
+          tagEntities,
+          imageInfo.thumbnailName(),
+          imageInfo.shortTitle(),
+          imageInfo.isText(),
+          imageInfo.textContents(),
+          imageInfo.gpsLatitude(),
+          imageInfo.gpsLongitude(),
+          imageInfo.imageTakenAt(),
+          imageInfo.fileCreatedAt(),
+          imageInfo.fileLastModified()
+      );
+    }
+  }
+
+  private void writeFailedImageProcess(final Path imagePath, final String failLogName, final Exception exception) {
+    try {
+      final Path dataDir = DataDirectoryInitializer.getDataDirectory();
+      final Path logFile = dataDir.resolve(failLogName);
+      final String fullPath = imagePath.toAbsolutePath().toString();
+      final String exceptionClass = exception.getClass().getName();
+      final String logEntry = "\"" + fullPath + "\", \"" + exceptionClass + "\"\n";
+
+      // Create a data directory if it doesn't exist
+      if (!Files.exists(dataDir)) {
+        Files.createDirectories(dataDir);
+      }
+
+      // Append to a log file (create if it doesn't exist)
+      Files.writeString(
+          logFile,
+          logEntry,
+          StandardOpenOption.CREATE,
+          StandardOpenOption.APPEND
+      );
+    } catch (IOException e) {
+      // If we can't write to the log file, just print a warning
+      EventLog.warn(null, "Warning: Failed to write to " + failLogName + ": " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package com.wininger.cli_image_labeler.image.tagging.services;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Decides, before any pixels are decoded, whether an image is worth labeling at all. Libraries are full of icons,
+ * emoji, web thumbnails and spacer GIFs which would each cost a full decode and a couple of model calls.
+ *
+ * Only the path, the file size and the dimensions from the image header are looked at, so this takes well under a
+ * millisecond per file. An image whose header can't be read isn't filtered, labeling will report the problem.
+ */
+@ApplicationScoped
+public class ImagePreFilter {
+  private final boolean enabled;
+  private final long minPixels;
+  private final double maxAspectRatio;
+  private final long minFileSize;
+  private final List<PathMatcher> excludeMatchers;
+  private final List<String> excludeGlobs;
+
+  @Inject
+  public ImagePreFilter(
+      @ConfigProperty(name = "il.prefilter.enabled", defaultValue = "true") boolean enabled,
+      @ConfigProperty(name = "il.prefilter.min-pixels", defaultValue = "16384") long minPixels,
+      @ConfigProperty(name = "il.prefilter.max-aspect-ratio", defaultValue = "10") double maxAspectRatio,
+      @ConfigProperty(name = "il.prefilter.min-file-size", defaultValue = "2048") long minFileSize,
+      @ConfigProperty(name = "il.prefilter.exclude-globs") Optional<List<String>> excludeGlobs
+  ) {
+    this.enabled = enabled;
+    this.minPixels = minPixels;
+    this.maxAspectRatio = maxAspectRatio;
+    this.minFileSize = minFileSize;
+    this.excludeGlobs = excludeGlobs.orElse(List.of());
+    this.excludeMatchers = this.excludeGlobs.stream()
+        .map(glob -> FileSystems.getDefault().getPathMatcher("glob:" + glob))
+        .toList();
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return why the image should not be labeled, or empty if it should be
+   */
+  public Optional<String> reasonToSkip(final Path imagePath) throws IOException {
+    if (!enabled) {
+      return Optional.empty();
+    }
+
+    final Path absolutePath = imagePath.toAbsolutePath();
+    for (int i = 0; i < excludeMatchers.size(); i++) {
+      if (excludeMatchers.get(i).matches(absolutePath)) {
+        return Optional.of("path matches " + excludeGlobs.get(i));
+      }
+    }
+
+    final long fileSize = Files.size(imagePath);
+    if (fileSize < minFileSize) {
+      return Optional.of("file is %d bytes, under %d".formatted(fileSize, minFileSize));
+    }
+
+    final int[] dimensions = readDimensions(imagePath);
+    if (dimensions == null) {
+      return Optional.empty();
+    }
+
+    final int width = dimensions[0];
+    final int height = dimensions[1];
+    if ((long) width * height < minPixels) {
+      return Optional.of("%dx%d is under %d pixels".formatted(width, height, minPixels));
+    }
+
+    final double aspectRatio = (double) Math.max(width, height) / Math.max(1, Math.min(width, height));
+    if (aspectRatio > maxAspectRatio) {
+      return Optional.of("%dx%d is wider than %s:1".formatted(width, height, formatRatio(maxAspectRatio)));
+    }
+
+    return Optional.empty();
+  }
+
+  /**
+   * Reads the width and height of the first image in the file from its header, without decoding it.
+   *
+   * @return {width, height}, or null if no reader understands the file
+   */
+  static int[] readDimensions(final Path imagePath) throws IOException {
+    try (ImageInputStream input = ImageIO.createImageInputStream(imagePath.toFile())) {
+      if (input == null) {
+        return null;
+      }
+
+      final Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+      if (!readers.hasNext()) {
+        return null;
+      }
+
+      final ImageReader reader = readers.next();
+      try {
+        // seekForwardOnly and ignoreMetadata, the header is all that's needed
+        reader.setInput(input, true, true);
+        return new int[] {reader.getWidth(0), reader.getHeight(0)};
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  private static String formatRatio(final double ratio) {
+    return ratio == Math.rint(ratio) ? String.valueOf((long) ratio) : String.valueOf(ratio);
+  }
+}
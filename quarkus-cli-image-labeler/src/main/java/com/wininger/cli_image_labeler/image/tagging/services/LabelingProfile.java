@@ -0,0 +1,61 @@
+package com.wininger.cli_image_labeler.image.tagging.services;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A named bundle of the settings which trade labeling speed against quality. Selected with `il.profile`, see
+ * {@link ImageInfoService}. `balanced` is how images were always labeled before profiles existed.
+ *
+ * @param visionModel the Ollama model which describes the image
+ * @param extractionModel the Ollama model which extracts structured info from the description, this is text only so
+ *                        it can be a much smaller model than the vision one
+ * @param maxImageDimension the longest side, in pixels, of the image sent to the model
+ * @param jpegQuality JPEG quality (0-1) of the image sent to the model
+ * @param maxDescriptionTokens the most tokens the model may generate for a description (num_predict), null for the
+ *                             model's default
+ * @param contextSize the model's context window (num_ctx), null for the model's default
+ * @param modelRetries how many times structured info extraction is attempted before giving up
+ * @param adaptiveResolution if true images are labeled at a lower resolution first, and only re-run at
+ *                           `maxImageDimension` when needed
+ */
+public record LabelingProfile(
+    String name,
+    String visionModel,
+    String extractionModel,
+    int maxImageDimension,
+    float jpegQuality,
+    Integer maxDescriptionTokens,
+    Integer contextSize,
+    int modelRetries,
+    boolean adaptiveResolution
+) {
+  public static final LabelingProfile FAST =
+      new LabelingProfile("fast", "gemma3:4b", "gemma3:1b", 768, 0.8f, 256, 4096, 2, true);
+
+  public static final LabelingProfile BALANCED =
+      new LabelingProfile("balanced", "gemma3:4b", "gemma3:4b", 1024, 0.85f, null, null, 5, false);
+
+  public static final LabelingProfile THOROUGH =
+      new LabelingProfile("thorough", "gemma3:12b", "gemma3:12b", 1024, 0.92f, null, 8192, 5, false);
+
+  public static final List<LabelingProfile> ALL = List.of(FAST, BALANCED, THOROUGH);
+
+  public static LabelingProfile byName(final String name) {
+    return ALL.stream()
+        .filter(profile -> profile.name().equalsIgnoreCase(name.trim()))
+        .findFirst()
+        .orElseThrow(() -> new IllegalArgumentException("Unknown labeling profile '%s', expected one of %s"
+            .formatted(name, Arrays.toString(ALL.stream().map(LabelingProfile::name).toArray()))));
+  }
+
+  public LabelingProfile withAdaptiveResolution(final boolean adaptiveResolution) {
+    return new LabelingProfile(name, visionModel, extractionModel, maxImageDimension, jpegQuality, maxDescriptionTokens, contextSize,
+        modelRetries, adaptiveResolution);
+  }
+
+  public LabelingProfile withExtractionModel(final String extractionModel) {
+    return new LabelingProfile(name, visionModel, extractionModel, maxImageDimension, jpegQuality, maxDescriptionTokens,
+        contextSize, modelRetries, adaptiveResolution);
+  }
+}
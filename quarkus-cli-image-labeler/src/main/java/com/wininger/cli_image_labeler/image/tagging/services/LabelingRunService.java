@@ -0,0 +1,336 @@
+package com.wininger.cli_image_labeler.image.tagging.services;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.wininger.cli_image_labeler.image.tagging.ollama.OllamaClients;
+import com.wininger.cli_image_labeler.image.tagging.utils.BacklogOrder;
+import com.wininger.cli_image_labeler.image.tagging.utils.EventLog;
+import com.wininger.cli_image_labeler.image.tagging.utils.FileMetaDataUtils;
+import com.wininger.cli_image_labeler.image.tagging.utils.LoadGovernor;
+import com.wininger.cli_image_labeler.image.tagging.utils.PathListReader;
+import com.wininger.cli_image_labeler.image.tagging.utils.Shard;
+import com.wininger.cli_image_labeler.image.tagging.utils.StageTimer;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import static com.wininger.cli_image_labeler.image.tagging.utils.PrintUtils.getTimeTakenMessage;
+
+/**
+ * Labels a batch of images, a directory or a list of them, on a pool of workers: puts them in order, shows progress
+ * through the {@link EventLog}, and prints the run's summaries and metrics once they're all done. Each image is
+ * labeled by {@link ImageLabelingService}. write-tags-to-local-db and benchmark-ingest run their batches through here,
+ * everything about a run is in its {@link Options}.
+ */
+@ApplicationScoped
+public class LabelingRunService {
+  /**
+   * The order to label a run's images in, see {@link BacklogOrder}.
+   */
+  public enum Schedule { walk, newest, interleave, spread }
+
+  /**
+   * Photos taken further apart than this are in different clusters for {@link Schedule#spread}.
+   */
+  private static final Duration SPREAD_CLUSTER_GAP = Duration.ofHours(6);
+
+  /**
+   * How a run labels its images.
+   *
+   * @param parallelism      how many images are labeled at once
+   * @param updateExisting   relabel images which are already saved, rather than skipping them
+   * @param schedule         the order to label them in
+   * @param shard            only label the images in this shard, null for all of them
+   * @param nice             throttle the workers to the load on the rest of the machine, see {@link LoadGovernor}
+   * @param metricsFile      where to write the run's metrics, null for nowhere
+   * @param metricsInterval  how often to print the metrics while running, zero for only at the end
+   * @param logFile          where to write what happened to each image as JSON Lines, null for nowhere
+   */
+  public record Options(
+      int parallelism,
+      boolean updateExisting,
+      Schedule schedule,
+      Shard shard,
+      boolean nice,
+      Path metricsFile,
+      Duration metricsInterval,
+      Path logFile
+  ) {
+    /**
+     * Every image in the order found, not throttled, with no metrics or log file.
+     */
+    public static Options of(final int parallelism, final boolean updateExisting) {
+      return new Options(parallelism, updateExisting, Schedule.walk, null, false, null, Duration.ZERO, null);
+    }
+
+    boolean inShard(final Path image) {
+      return shard == null || shard.includes(image);
+    }
+
+    String describeShard() {
+      return shard == null ? "" : " in shard " + shard;
+    }
+  }
+
+  private final ImageLabelingService labelingService;
+  private final ImageInfoService imageInfoService;
+  private final OllamaClients ollamaClients;
+  private final OcrService ocrService;
+
+  @Inject
+  public LabelingRunService(
+      final ImageLabelingService labelingService,
+      final ImageInfoService imageInfoService,
+      final OllamaClients ollamaClients,
+      final OcrService ocrService
+  ) {
+    this.labelingService = labelingService;
+    this.imageInfoService = imageInfoService;
+    this.ollamaClients = ollamaClients;
+    this.ocrService = ocrService;
+  }
+
+  /**
+   * Labels a single image, printing what it was labeled with.
+   */
+  public void labelFile(final Path image, final boolean updateExisting) {
+    final long startTime = System.currentTimeMillis();
+    labelingService.processImage(image, failLogName(startTime), updateExisting);
+    ocrService.awaitPending();
+    System.out.printf("\n\nCompleted processing image in: %s",
+        getTimeTakenMessage(startTime, System.currentTimeMillis()));
+  }
+
+  /**
+   * Labels the images in a directory and its subdirectories.
+   */
+  public void labelDirectory(final Path directory, final Options options) {
+    final long startTime = System.currentTimeMillis();
+    // Load the models while we walk the directory so the first images don't pay for it
+    final CompletableFuture<Void> warmUp = imageInfoService.warmUpModels();
+
+    final List<Path> imageFiles;
+    try (Stream<Path> paths = Files.walk(directory)) {
+      imageFiles = schedule(paths
+          .filter(Files::isRegularFile)
+          .filter(labelingService::isImageFile)
+          .filter(options::inShard)
+          .collect(Collectors.toList()), options);
+    } catch (IOException e) {
+      System.err.println("Error walking directory: " + e.getMessage());
+      throw new RuntimeException("Failed to process directory", e);
+    }
+    warmUp.join();
+
+    System.out.println("Found " + imageFiles.size() + " image(s) to process" + options.describeShard()
+        + " with parallelism=" + options.parallelism());
+    // from here on the workers' output goes through the event log, which shows a progress line instead
+    EventLog.start(imageFiles.size(), options.logFile());
+    processImages(imageFiles.iterator(), options, startTime);
+  }
+
+  /**
+   * Labels the images listed in a file or on stdin (-), each handed to the workers as soon as it's read (so the list
+   * can come from a find which is still running). With a {@link Schedule} other than walk the whole list is read
+   * first, to order it.
+   */
+  public void labelList(final String fileList, final Options options) {
+    final long startTime = System.currentTimeMillis();
+    final CompletableFuture<Void> warmUp = imageInfoService.warmUpModels();
+
+    try (PathListReader listed = PathListReader.open(fileList)) {
+      final Stream<Path> images = StreamSupport.stream(Spliterators.spliteratorUnknownSize(listed, Spliterator.ORDERED), false)
+          .filter(this::isListedImage)
+          .filter(options::inShard);
+      if (options.schedule() != Schedule.walk) {
+        final List<Path> imageFiles = schedule(images.collect(Collectors.toList()), options);
+        warmUp.join();
+        System.out.println("Read " + imageFiles.size() + " image(s) to process" + options.describeShard() + " from "
+            + ("-".equals(fileList) ? "stdin" : fileList) + " with parallelism=" + options.parallelism());
+        EventLog.start(imageFiles.size(), options.logFile());
+        processImages(imageFiles.iterator(), options, startTime);
+        return;
+      }
+
+      warmUp.join();
+      System.out.println("Reading the images to process" + options.describeShard() + " from "
+          + ("-".equals(fileList) ? "stdin" : fileList) + " with parallelism=" + options.parallelism());
+      EventLog.start(options.logFile());
+      processImages(images.iterator(), options, startTime);
+    } catch (UncheckedIOException e) {
+      // closes the progress line and --log-file, if the run got as far as starting them
+      EventLog.finish();
+      System.err.println("Error reading the list of images " + fileList + ": " + e.getCause().getMessage());
+    } catch (IOException e) {
+      EventLog.finish();
+      System.err.println("Error reading the list of images " + fileList + ": " + e.getMessage());
+    }
+  }
+
+  private static String failLogName(final long startTime) {
+    return "failed-image-processing-%s.log".formatted(startTime);
+  }
+
+  /**
+   * Puts the images in the order the run's schedule asks for.
+   */
+  private List<Path> schedule(final List<Path> images, final Options options) {
+    return switch (options.schedule()) {
+      case walk -> images;
+      case interleave -> BacklogOrder.interleaveDirectories(images);
+      case newest -> BacklogOrder.newestFirst(images, takenAt(images, options)::get);
+      case spread -> BacklogOrder.spreadOverTime(images, takenAt(images, options)::get, SPREAD_CLUSTER_GAP);
+    };
+  }
+
+  /**
+   * When each image was taken, by its EXIF date or else its modified time. Reading the EXIF means opening every
+   * file, so images which are already saved (and will only be skipped) just get their modified time.
+   */
+  private Map<Path, Long> takenAt(final List<Path> images, final Options options) {
+    final long start = System.currentTimeMillis();
+    final Set<String> saved = options.updateExisting() ? Set.of() : labelingService.findSavedPaths();
+    System.out.println("Reading when " + images.size() + " image(s) were taken, to schedule them...");
+
+    final Map<Path, Long> takenAt = images.parallelStream()
+        .collect(Collectors.toConcurrentMap(path -> path,
+            path -> takenAt(path, !saved.contains(path.toAbsolutePath().toString())), (first, second) -> first));
+
+    System.out.println("Read in " + getTimeTakenMessage(start, System.currentTimeMillis()));
+    return takenAt;
+  }
+
+  private static long takenAt(final Path path, final boolean readExif) {
+    if (readExif) {
+      try {
+        final Date createdOn = FileMetaDataUtils.getCreatedOn(path.toString());
+        if (createdOn != null) {
+          return createdOn.getTime();
+        }
+      } catch (Exception e) {
+        // no usable EXIF, fall back to the modified time
+      }
+    }
+    try {
+      return Files.getLastModifiedTime(path).toMillis();
+    } catch (IOException e) {
+      // gone already, it will fail when it's processed
+      return 0;
+    }
+  }
+
+  /**
+   * Whether a listed path can be processed, with a warning if not (a directory walk only finds images).
+   */
+  private boolean isListedImage(final Path path) {
+    if (!Files.isRegularFile(path)) {
+      EventLog.warn(path.toString(), "Warning: Skipping " + path + ", it does not exist or is not a file");
+      return false;
+    }
+    if (!labelingService.isImageFile(path)) {
+      EventLog.warn(path.toString(), "Warning: Skipping " + path + ", it is not a supported image type");
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Hands each image to the workers as the iterator produces it, waits for them all and prints the run's summaries.
+   * The event log must already be started.
+   */
+  private void processImages(final Iterator<Path> imagePaths, final Options options, final long startTime) {
+    final String failLogName = failLogName(startTime);
+    final ExecutorService pool = Executors.newFixedThreadPool(options.parallelism());
+    final LoadGovernor governor = LoadGovernor.forRun(options.parallelism(), options.nice());
+    final AtomicInteger processed = new AtomicInteger(0);
+
+    final int failedBefore = labelingService.failedImageCount();
+    final int skippedBefore = labelingService.skippedImageCount();
+    final RunMetrics metrics = new RunMetrics(ollamaClients, options.metricsFile(), processed::get,
+        () -> labelingService.failedImageCount() - failedBefore);
+    metrics.reportEvery(options.metricsInterval());
+
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      try {
+        while (imagePaths.hasNext()) {
+          final Path imagePath = imagePaths.next();
+          final long queuedAt = System.nanoTime();
+          EventLog.imageQueued();
+          futures.add(pool.submit(() -> {
+            // how long the image waited for a free worker
+            StageTimer.recordSince("queue wait", queuedAt);
+            final long throttledAt = System.nanoTime();
+            governor.acquire();
+            try {
+              if (options.nice()) {
+                // how long --nice held it back
+                StageTimer.recordSince("nice wait", throttledAt);
+              }
+              labelingService.processImage(imagePath, failLogName, options.updateExisting());
+              processed.incrementAndGet();
+            } finally {
+              governor.release();
+            }
+            return null;
+          }));
+        }
+      } catch (UncheckedIOException e) {
+        // finish the images already read
+        EventLog.warn(null, "Error reading the list of images, no more will be processed: " + e.getCause().getMessage());
+      }
+      EventLog.allImagesQueued();
+
+      // Wait for all tasks to complete
+      for (final Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (Exception e) {
+          EventLog.warn(null, "Unexpected error: " + e.getMessage());
+        }
+      }
+    } finally {
+      pool.shutdown();
+      governor.close();
+    }
+
+    // text images are still being read in the background, their rows aren't finished until that's done
+    ocrService.awaitPending();
+    EventLog.finish();
+
+    ollamaClients.printEndpointSummary(startTime, System.out);
+    imageInfoService.printAdaptiveResolutionSummary(System.out);
+    imageInfoService.printDocumentRoutingSummary(System.out);
+    imageInfoService.printExtractionBatchingSummary(System.out);
+    ocrService.printSummary();
+    final int skippedImages = labelingService.skippedImageCount() - skippedBefore;
+    if (skippedImages > 0) {
+      System.out.println("Pre-filters skipped " + skippedImages + " image(s), see the skipped_images table");
+    }
+    metrics.finish();
+    if (options.metricsFile() != null) {
+      System.out.println("Metrics written to " + options.metricsFile().toAbsolutePath());
+    }
+    System.out.printf("\n\nCompleted processing all images in: %s",
+        getTimeTakenMessage(startTime, System.currentTimeMillis()));
+  }
+}
@@ -0,0 +1,123 @@
+package com.wininger.cli_image_labeler.image.tagging.services;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.wininger.cli_image_labeler.image.tagging.db.ImageInfoRepository;
+import com.wininger.cli_image_labeler.image.tagging.dto.ImageInfo;
+import com.wininger.cli_image_labeler.image.tagging.utils.EventLog;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Reads the text of images found to contain some and stores it as the image's text_contents, so it can be searched.
+ *
+ * OCR is slow and most photos have no text, so it isn't part of labeling. Images are handed over once their label
+ * has been saved, and are read in the background on a pool of their own (`il.ocr.concurrency`) while labeling moves
+ * on to the next image. Callers wait for what is still queued with {@link #awaitPending()} before finishing.
+ */
+@ApplicationScoped
+public class OcrService {
+  private final ImageInfoService imageInfoService;
+  private final ImageInfoRepository imageInfoRepository;
+  private final boolean enabled;
+  private final ExecutorService ocrPool;
+
+  private final Set<CompletableFuture<Void>> pending = ConcurrentHashMap.newKeySet();
+
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong busyNanos = new AtomicLong();
+
+  @Inject
+  public OcrService(
+      final ImageInfoService imageInfoService,
+      final ImageInfoRepository imageInfoRepository,
+      @ConfigProperty(name = "il.ocr.enabled", defaultValue = "false") boolean enabled,
+      @ConfigProperty(name = "il.ocr.concurrency", defaultValue = "1") int concurrency
+  ) {
+    this.imageInfoService = imageInfoService;
+    this.imageInfoRepository = imageInfoRepository;
+    this.enabled = enabled;
+
+    final AtomicInteger threadCount = new AtomicInteger();
+    this.ocrPool = Executors.newFixedThreadPool(concurrency, runnable -> {
+      final Thread thread = new Thread(runnable, "ocr-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Queues the text of an image, which must already be saved, to be read and stored. Does nothing when OCR is
+   * disabled, the image has no text, or its text was already read while labeling it (see document routing in
+   * {@link ImageInfoService}).
+   */
+  public void submitIfText(final String fullPath, final ImageInfo imageInfo) {
+    if (!enabled || !Boolean.TRUE.equals(imageInfo.isText()) || imageInfo.textContents() != null) {
+      return;
+    }
+
+    final CompletableFuture<Void> ocr = CompletableFuture.runAsync(() -> readAndStoreText(fullPath), ocrPool);
+    pending.add(ocr);
+    ocr.whenComplete((ignored, failure) -> pending.remove(ocr));
+  }
+
+  private void readAndStoreText(final String fullPath) {
+    final long startTime = System.nanoTime();
+    try {
+      final String text = imageInfoService.extractText(fullPath);
+      if (!imageInfoRepository.updateTextContents(fullPath, text)) {
+        EventLog.warn(fullPath, "Warning: Could not store the text of " + fullPath + ", it is no longer in the database");
+      }
+      completed.incrementAndGet();
+      EventLog.info(fullPath, "OCR complete for " + fullPath + " (" + text.length() + " characters)");
+    } catch (Exception e) {
+      // the label is already saved, the image is only missing its text
+      failed.incrementAndGet();
+      EventLog.warn(fullPath, "Warning: OCR failed for " + fullPath + ": " + e.getMessage());
+    } finally {
+      busyNanos.addAndGet(System.nanoTime() - startTime);
+    }
+  }
+
+  /**
+   * Blocks until every image queued so far has been read (or has failed).
+   */
+  public void awaitPending() {
+    while (!pending.isEmpty()) {
+      final List<CompletableFuture<Void>> snapshot = List.copyOf(pending);
+      if (!snapshot.isEmpty()) {
+        EventLog.notice("Waiting on OCR of " + snapshot.size() + " image(s)...");
+      }
+      CompletableFuture.allOf(snapshot.toArray(CompletableFuture[]::new)).join();
+    }
+  }
+
+  public void printSummary() {
+    final long total = completed.get() + failed.get();
+    if (total == 0) {
+      return;
+    }
+
+    System.out.printf("OCR: %d images read, %d failed, %.1f s average%n",
+        completed.get(), failed.get(), busyNanos.get() / 1_000_000_000.0 / total);
+  }
+
+  @PreDestroy
+  void shutdown() {
+    ocrPool.shutdownNow();
+  }
+}
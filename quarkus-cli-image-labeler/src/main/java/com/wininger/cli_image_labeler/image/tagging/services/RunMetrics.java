@@ -0,0 +1,270 @@
+package com.wininger.cli_image_labeler.image.tagging.services;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.wininger.cli_image_labeler.image.tagging.ollama.OllamaClients;
+import com.wininger.cli_image_labeler.image.tagging.ollama.OllamaTimingsHttpClient.ModelTimings;
+import com.wininger.cli_image_labeler.image.tagging.utils.EventLog;
+import com.wininger.cli_image_labeler.image.tagging.utils.StageTimer;
+import com.wininger.cli_image_labeler.image.tagging.utils.StageTimer.StageTotals;
+
+/**
+ * Reports where the time of a run went: the time per stage from {@link StageTimer} (decode, resize, encode, describe,
+ * extract, metadata, thumbnail, db save, queue wait...) and the tokens and durations Ollama reported for each kind of
+ * request, along with the overall throughput.
+ *
+ * The report is printed as a table at the end of the run, and every `interval` while it runs if one is given. When a
+ * metrics file is given it is (re)written each time too, as JSON, or in the Prometheus text format if its name ends in
+ * `.prom` (e.g. for node_exporter's textfile collector), so runs can be compared with each other.
+ */
+public class RunMetrics {
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+  private final OllamaClients ollamaClients;
+  private final Path metricsFile;
+  private final LongSupplier imagesProcessed;
+  private final LongSupplier imagesFailed;
+  private final long startNanos = System.nanoTime();
+
+  private ScheduledExecutorService reporter;
+
+  public record Snapshot(
+      double elapsedSeconds,
+      long images,
+      long failedImages,
+      List<StageTotals> stages,
+      List<ModelTimings> models
+  ) {
+    public double imagesPerMinute() {
+      return elapsedSeconds == 0 ? 0 : images / elapsedSeconds * 60;
+    }
+  }
+
+  /**
+   * @param metricsFile where to write the metrics, null to only print them
+   * @param imagesProcessed how many images have been processed so far (including those which failed)
+   * @param imagesFailed how many of those failed
+   */
+  public RunMetrics(
+      final OllamaClients ollamaClients,
+      final Path metricsFile,
+      final LongSupplier imagesProcessed,
+      final LongSupplier imagesFailed
+  ) {
+    this.ollamaClients = ollamaClients;
+    this.metricsFile = metricsFile;
+    this.imagesProcessed = imagesProcessed;
+    this.imagesFailed = imagesFailed;
+  }
+
+  /**
+   * Starts reporting every `interval`, does nothing if it isn't positive.
+   */
+  public void reportEvery(final Duration interval) {
+    if (interval.isZero() || interval.isNegative()) {
+      return;
+    }
+
+    reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "metrics-reporter");
+      thread.setDaemon(true);
+      return thread;
+    });
+    reporter.scheduleAtFixedRate(() -> report("Metrics so far"),
+        interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops the periodic reports and reports the whole run.
+   */
+  public Snapshot finish() {
+    if (reporter != null) {
+      reporter.shutdownNow();
+    }
+    return report("Run metrics");
+  }
+
+  public Snapshot snapshot() {
+    return new Snapshot((System.nanoTime() - startNanos) / 1_000_000_000.0, imagesProcessed.getAsLong(),
+        imagesFailed.getAsLong(), StageTimer.snapshot(), ollamaClients.modelTimings());
+  }
+
+  private Snapshot report(final String title) {
+    final Snapshot snapshot = snapshot();
+    print(title, snapshot);
+
+    if (metricsFile != null) {
+      try {
+        write(snapshot, metricsFile);
+      } catch (IOException e) {
+        EventLog.warn(null, "Warning: Could not write metrics to " + metricsFile + ": " + e.getMessage());
+      }
+    }
+    return snapshot;
+  }
+
+  public static void print(final String title, final Snapshot snapshot) {
+    System.out.printf("%n%s: %d images (%d failed) in %.1f s, %.1f images/min%n",
+        title, snapshot.images(), snapshot.failedImages(), snapshot.elapsedSeconds(), snapshot.imagesPerMinute());
+
+    System.out.printf("  %-14s %7s %9s %9s %9s %9s %9s %10s%n",
+        "stage", "calls", "avg ms", "p50 ms", "p95 ms", "p99 ms", "max ms", "total s");
+    for (final StageTotals stage : snapshot.stages()) {
+      System.out.printf("  %-14s %7d %9.1f %9.1f %9.1f %9.1f %9.1f %10.1f%n",
+          stage.stage(), stage.count(), stage.averageMillis(), stage.p50Millis(), stage.p95Millis(),
+          stage.p99Millis(), stage.maxMillis(), stage.totalSeconds());
+    }
+
+    if (snapshot.models().isEmpty()) {
+      return;
+    }
+    System.out.println("  Model requests, as reported by the model server:");
+    System.out.printf("  %-36s %7s %12s %12s %8s %9s %9s%n",
+        "request", "calls", "prompt tok", "output tok", "tok/s", "p50 ms", "p95 ms");
+    for (final ModelTimings model : snapshot.models()) {
+      System.out.printf("  %-36s %7d %12d %12d %8.1f %9.1f %9.1f%n",
+          model.kind(), model.calls(), model.promptTokens(), model.generatedTokens(), model.tokensPerSecond(),
+          model.p50TotalNanos() / 1_000_000.0, model.p95TotalNanos() / 1_000_000.0);
+    }
+  }
+
+  /**
+   * Writes the snapshot to the file (replacing it), in the Prometheus text format if the name ends in `.prom`,
+   * otherwise as JSON.
+   */
+  public static void write(final Snapshot snapshot, final Path file) throws IOException {
+    final String content = file.getFileName().toString().endsWith(".prom") ? toPrometheus(snapshot) : toJson(snapshot);
+
+    // written next to it and moved into place, so whatever reads the file never sees half of it
+    final Path absoluteFile = file.toAbsolutePath();
+    final Path temporaryFile = absoluteFile.resolveSibling(absoluteFile.getFileName() + ".tmp");
+    Files.writeString(temporaryFile, content);
+    Files.move(temporaryFile, absoluteFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  static String toJson(final Snapshot snapshot) throws JsonProcessingException {
+    final Map<String, Object> json = new LinkedHashMap<>();
+    json.put("elapsedSeconds", snapshot.elapsedSeconds());
+    json.put("images", snapshot.images());
+    json.put("failedImages", snapshot.failedImages());
+    json.put("imagesPerMinute", snapshot.imagesPerMinute());
+
+    json.put("stages", snapshot.stages().stream().map(stage -> {
+      final Map<String, Object> stageJson = new LinkedHashMap<>();
+      stageJson.put("stage", stage.stage());
+      stageJson.put("count", stage.count());
+      stageJson.put("totalSeconds", stage.totalSeconds());
+      stageJson.put("averageMillis", stage.averageMillis());
+      stageJson.put("p50Millis", stage.p50Millis());
+      stageJson.put("p95Millis", stage.p95Millis());
+      stageJson.put("p99Millis", stage.p99Millis());
+      stageJson.put("maxMillis", stage.maxMillis());
+      return stageJson;
+    }).toList());
+
+    json.put("models", snapshot.models().stream().map(model -> {
+      final Map<String, Object> modelJson = new LinkedHashMap<>();
+      modelJson.put("request", model.kind());
+      modelJson.put("calls", model.calls());
+      modelJson.put("promptTokens", model.promptTokens());
+      modelJson.put("generatedTokens", model.generatedTokens());
+      modelJson.put("tokensPerSecond", model.tokensPerSecond());
+      modelJson.put("promptSeconds", model.promptNanos() / 1_000_000_000.0);
+      modelJson.put("generationSeconds", model.generationNanos() / 1_000_000_000.0);
+      modelJson.put("loadSeconds", model.loadNanos() / 1_000_000_000.0);
+      modelJson.put("p50PromptMillis", model.p50PromptNanos() / 1_000_000.0);
+      modelJson.put("p95PromptMillis", model.p95PromptNanos() / 1_000_000.0);
+      modelJson.put("p50GenerationMillis", model.p50GenerationNanos() / 1_000_000.0);
+      modelJson.put("p95GenerationMillis", model.p95GenerationNanos() / 1_000_000.0);
+      modelJson.put("p50TotalMillis", model.p50TotalNanos() / 1_000_000.0);
+      modelJson.put("p95TotalMillis", model.p95TotalNanos() / 1_000_000.0);
+      return modelJson;
+    }).toList());
+
+    return OBJECT_MAPPER.writeValueAsString(json);
+  }
+
+  static String toPrometheus(final Snapshot snapshot) {
+    final StringBuilder prometheus = new StringBuilder();
+
+    metric(prometheus, "il_run_seconds", "gauge", "How long the run has taken so far");
+    sample(prometheus, "il_run_seconds", "", snapshot.elapsedSeconds());
+    metric(prometheus, "il_images_total", "counter", "Images processed, including those which failed");
+    sample(prometheus, "il_images_total", "", snapshot.images());
+    metric(prometheus, "il_images_failed_total", "counter", "Images which failed");
+    sample(prometheus, "il_images_failed_total", "", snapshot.failedImages());
+
+    metric(prometheus, "il_stage_seconds", "summary", "Time spent in each stage of processing an image");
+    for (final StageTotals stage : snapshot.stages()) {
+      final String labels = "stage=\"" + escape(stage.stage()) + "\"";
+      sample(prometheus, "il_stage_seconds", labels + ",quantile=\"0.5\"", stage.p50Nanos() / 1e9);
+      sample(prometheus, "il_stage_seconds", labels + ",quantile=\"0.95\"", stage.p95Nanos() / 1e9);
+      sample(prometheus, "il_stage_seconds", labels + ",quantile=\"0.99\"", stage.p99Nanos() / 1e9);
+      sample(prometheus, "il_stage_seconds_sum", labels, stage.totalSeconds());
+      sample(prometheus, "il_stage_seconds_count", labels, stage.count());
+    }
+
+    metric(prometheus, "il_model_request_seconds", "summary", "Model request durations reported by the model server");
+    for (final ModelTimings model : snapshot.models()) {
+      final String labels = "request=\"" + escape(model.kind()) + "\"";
+      sample(prometheus, "il_model_request_seconds", labels + ",quantile=\"0.5\"", model.p50TotalNanos() / 1e9);
+      sample(prometheus, "il_model_request_seconds", labels + ",quantile=\"0.95\"", model.p95TotalNanos() / 1e9);
+      sample(prometheus, "il_model_request_seconds_sum", labels, model.totalNanos() / 1e9);
+      sample(prometheus, "il_model_request_seconds_count", labels, model.calls());
+    }
+    metric(prometheus, "il_model_prompt_tokens_total", "counter", "Prompt tokens the model server had to process");
+    for (final ModelTimings model : snapshot.models()) {
+      sample(prometheus, "il_model_prompt_tokens_total", "request=\"" + escape(model.kind()) + "\"",
+          model.promptTokens());
+    }
+    metric(prometheus, "il_model_generated_tokens_total", "counter", "Tokens the model server generated");
+    for (final ModelTimings model : snapshot.models()) {
+      sample(prometheus, "il_model_generated_tokens_total", "request=\"" + escape(model.kind()) + "\"",
+          model.generatedTokens());
+    }
+
+    return prometheus.toString();
+  }
+
+  private static void metric(final StringBuilder prometheus, final String name, final String type, final String help) {
+    prometheus.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    prometheus.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(final StringBuilder prometheus, final String name, final String labels,
+                             final long value) {
+    sample(prometheus, name, labels, String.valueOf(value));
+  }
+
+  private static void sample(final StringBuilder prometheus, final String name, final String labels,
+                             final double value) {
+    sample(prometheus, name, labels, String.valueOf(value));
+  }
+
+  private static void sample(final StringBuilder prometheus, final String name, final String labels,
+                             final String value) {
+    prometheus.append(name);
+    if (!labels.isEmpty()) {
+      prometheus.append('{').append(labels).append('}');
+    }
+    prometheus.append(' ').append(value).append('\n');
+  }
+
+  private static String escape(final String labelValue) {
+    return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
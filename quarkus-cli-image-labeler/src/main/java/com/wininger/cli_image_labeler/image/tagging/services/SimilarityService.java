@@ -1,12 +1,11 @@
 package com.wininger.cli_image_labeler.image.tagging.services;
 
+import com.wininger.cli_image_labeler.image.tagging.ollama.OllamaClients;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.ollama.OllamaEmbeddingModel;
 import dev.langchain4j.store.embedding.CosineSimilarity;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
-import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import java.util.List;
 
@@ -22,13 +21,8 @@ public class SimilarityService {
     private final EmbeddingModel embeddingModel;
 
     @Inject
-    public SimilarityService(
-        @ConfigProperty(name = "il.ollama.url", defaultValue = "http://localhost:11434/") String ollamaUrl
-    ) {
-        this.embeddingModel = OllamaEmbeddingModel.builder()
-            .baseUrl(ollamaUrl)
-            .modelName(EMBEDDING_MODEL)
-            .build();
+    public SimilarityService(final OllamaClients ollamaClients) {
+        this.embeddingModel = ollamaClients.embeddingModel(EMBEDDING_MODEL);
     }
 
     /**
@@ -0,0 +1,125 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Orders a backlog of images so a long run covers the whole library early, rather than finishing one directory (or
+ * year) before starting the next. Each takes the images in the order they were found and returns a new list, images
+ * which tie keep the order they were found in.
+ */
+public class BacklogOrder {
+
+  private BacklogOrder() {}
+
+  /**
+   * The most recently taken images first.
+   *
+   * @param takenAt when each image was taken, in epoch millis
+   */
+  public static List<Path> newestFirst(final List<Path> images, final ToLongFunction<Path> takenAt) {
+    final List<Path> ordered = new ArrayList<>(images);
+    ordered.sort(Comparator.comparingLong(takenAt).reversed());
+    return ordered;
+  }
+
+  /**
+   * One image from each directory in turn, so every directory gets some labeled images before any is finished.
+   */
+  public static List<Path> interleaveDirectories(final List<Path> images) {
+    final Map<Path, List<Path>> byDirectory = new LinkedHashMap<>();
+    for (final Path image : images) {
+      byDirectory.computeIfAbsent(image.getParent(), directory -> new ArrayList<>()).add(image);
+    }
+    return roundRobin(new ArrayList<>(byDirectory.values()));
+  }
+
+  /**
+   * Groups the images into clusters of photos taken close together (a day out, an event), where a cluster ends at a
+   * gap of more than clusterGap between one photo and the next. Then takes one image from each cluster in turn, newest
+   * cluster first: the first round labels one representative per cluster, from the middle of it, and each round after
+   * fills in the clusters a little more, halving the gaps between the images it has already labeled.
+   *
+   * @param takenAt when each image was taken, in epoch millis
+   */
+  public static List<Path> spreadOverTime(final List<Path> images, final ToLongFunction<Path> takenAt,
+                                          final Duration clusterGap) {
+    final List<Path> byTime = new ArrayList<>(images);
+    byTime.sort(Comparator.comparingLong(takenAt));
+
+    final List<List<Path>> clusters = new ArrayList<>();
+    List<Path> cluster = new ArrayList<>();
+    long previous = Long.MIN_VALUE;
+    for (final Path image : byTime) {
+      final long time = takenAt.applyAsLong(image);
+      if (!cluster.isEmpty() && time - previous > clusterGap.toMillis()) {
+        clusters.add(cluster);
+        cluster = new ArrayList<>();
+      }
+      cluster.add(image);
+      previous = time;
+    }
+    if (!cluster.isEmpty()) {
+      clusters.add(cluster);
+    }
+
+    final List<List<Path>> spreadClusters = new ArrayList<>();
+    for (int i = clusters.size() - 1; i >= 0; i--) {
+      spreadClusters.add(bisectionOrder(clusters.get(i)));
+    }
+    return roundRobin(spreadClusters);
+  }
+
+  /**
+   * The middle item, then the middles of the halves either side of it, then of the quarters and so on.
+   */
+  static <T> List<T> bisectionOrder(final List<T> items) {
+    final List<T> ordered = new ArrayList<>(items.size());
+    // ranges as {from inclusive, to exclusive}, taken breadth first
+    final Deque<int[]> ranges = new ArrayDeque<>();
+    ranges.add(new int[] {0, items.size()});
+    while (!ranges.isEmpty()) {
+      final int[] range = ranges.poll();
+      if (range[0] >= range[1]) {
+        continue;
+      }
+      final int middle = (range[0] + range[1]) / 2;
+      ordered.add(items.get(middle));
+      ranges.add(new int[] {range[0], middle});
+      ranges.add(new int[] {middle + 1, range[1]});
+    }
+    return ordered;
+  }
+
+  /**
+   * The first item of each group, then the second of each and so on, dropping groups as they run out (so one huge
+   * directory among thousands of small ones doesn't mean going over all of them for each of its images).
+   */
+  private static <T> List<T> roundRobin(final List<List<T>> groups) {
+    final List<T> ordered = new ArrayList<>();
+    List<Iterator<T>> remaining = new ArrayList<>();
+    for (final List<T> group : groups) {
+      remaining.add(group.iterator());
+    }
+    while (!remaining.isEmpty()) {
+      final List<Iterator<T>> next = new ArrayList<>(remaining.size());
+      for (final Iterator<T> group : remaining) {
+        if (group.hasNext()) {
+          ordered.add(group.next());
+          next.add(group);
+        }
+      }
+      remaining = next;
+    }
+    return ordered;
+  }
+}
@@ -0,0 +1,104 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * A cheap CPU check for whether an image is a screenshot or a document (a page of text, a slide, a diagram) rather
+ * than a photo, so it can be sent straight to OCR instead of being described like a photo.
+ *
+ * Documents are mostly one background color, use few colors overall, have a moderate amount of sharp edges (text),
+ * and screenshots come in screen sized dimensions. Each of those contributes to a score between 0 and 1.
+ */
+public class DocumentImageClassifier {
+  // the image is scaled down to this before looking at it, plenty for these statistics and keeps this to a few ms
+  public static final int CLASSIFIER_DIMENSION = 512;
+
+  // width x height of common phone, tablet and monitor screens, checked in either orientation
+  private static final Set<String> SCREEN_RESOLUTIONS = Set.of(
+      "1170x2532", "1179x2556", "1284x2778", "1290x2796", "1125x2436", "1242x2688", "828x1792", "750x1334",
+      "1242x2208", "1080x1920", "1080x2340", "1080x2400", "1440x3200", "1440x3120", "1536x2048", "1668x2388",
+      "2048x2732", "1640x2360", "1280x720", "1366x768", "1440x900", "1536x864", "1600x900", "1680x1050",
+      "1920x1080", "1920x1200", "2560x1440", "2560x1600", "2880x1800", "3024x1964", "3456x2234", "3840x2160");
+
+  // luminance difference between neighbouring pixels which counts as an edge
+  private static final int EDGE_THRESHOLD = 64;
+
+  // colors are bucketed to 4 bits per channel, close shades of a background count as the same color
+  private static final int COLOR_BUCKETS = 1 << 12;
+
+  private static final int PALETTE_SIZE = 8;
+
+  /**
+   * @param score how document-like the image is, 0 to 1
+   * @param backgroundShare fraction of pixels in the most common color
+   * @param paletteShare fraction of pixels in the {@value #PALETTE_SIZE} most common colors
+   * @param edgeDensity fraction of pixels on a sharp edge
+   * @param screenResolution true if the original dimensions are those of a common screen
+   */
+  public record Classification(
+      double score,
+      double backgroundShare,
+      double paletteShare,
+      double edgeDensity,
+      boolean screenResolution
+  ) {
+    public boolean isDocument(final double threshold) {
+      return score >= threshold;
+    }
+  }
+
+  public static Classification classify(final BufferedImage originalImage) {
+    final boolean screenResolution = isScreenResolution(originalImage.getWidth(), originalImage.getHeight());
+
+    final BufferedImage image = ImageUtils.resizeImage(originalImage, CLASSIFIER_DIMENSION);
+    final int width = image.getWidth();
+    final int height = image.getHeight();
+    final int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+    final int[] colorCounts = new int[COLOR_BUCKETS];
+    final int[] luma = new int[pixels.length];
+    for (int i = 0; i < pixels.length; i++) {
+      final int r = (pixels[i] >> 16) & 0xff;
+      final int g = (pixels[i] >> 8) & 0xff;
+      final int b = pixels[i] & 0xff;
+      colorCounts[((r >> 4) << 8) | ((g >> 4) << 4) | (b >> 4)]++;
+      luma[i] = (r * 299 + g * 587 + b * 114) / 1000;
+    }
+
+    int edges = 0;
+    for (int y = 0; y < height - 1; y++) {
+      for (int x = 0; x < width - 1; x++) {
+        final int i = y * width + x;
+        if (Math.abs(luma[i] - luma[i + 1]) > EDGE_THRESHOLD || Math.abs(luma[i] - luma[i + width]) > EDGE_THRESHOLD) {
+          edges++;
+        }
+      }
+    }
+
+    Arrays.sort(colorCounts);
+    int paletteCount = 0;
+    for (int i = 0; i < PALETTE_SIZE; i++) {
+      paletteCount += colorCounts[COLOR_BUCKETS - 1 - i];
+    }
+
+    final double total = pixels.length;
+    final double backgroundShare = colorCounts[COLOR_BUCKETS - 1] / total;
+    final double paletteShare = paletteCount / total;
+    final double edgeDensity = edges / (double) Math.max(1, (width - 1) * (height - 1));
+
+    // a photo rarely has half its pixels in one color or almost all in eight, a page of text nearly always does.
+    // Text has crisp edges but isn't all edges (that's noise or foliage), and a blank image has none.
+    final double score = 0.35 * Math.min(1, backgroundShare / 0.5)
+        + 0.35 * Math.min(1, paletteShare / 0.9)
+        + 0.15 * (edgeDensity >= 0.01 && edgeDensity <= 0.35 ? 1 : 0)
+        + 0.15 * (screenResolution ? 1 : 0);
+
+    return new Classification(score, backgroundShare, paletteShare, edgeDensity, screenResolution);
+  }
+
+  static boolean isScreenResolution(final int width, final int height) {
+    return SCREEN_RESOLUTIONS.contains(width + "x" + height) || SCREEN_RESOLUTIONS.contains(height + "x" + width);
+  }
+}
@@ -0,0 +1,398 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Where the workers labeling a directory report what they are doing, instead of printing it. Printing from many
+ * threads at once serializes them on the (synchronized) console and interleaves their lines into a mess, so during a
+ * run events go into a {@link RingBuffer} and a single thread drains it: it keeps one live progress line up to date
+ * (rate, ETA, images in flight, failures), shows warnings and notices above it and writes everything, including each
+ * image's details, to an optional JSON Lines log. Workers never wait on the terminal or the file, if the buffer is ever
+ * full the event is dropped (and counted).
+ *
+ * <pre>
+ *   EventLog.start(imageFiles.size(), logFile);
+ *   ...
+ *   EventLog.imageStarted(fullPath);
+ *   EventLog.info(fullPath, "Image resize: ...");
+ *   EventLog.imageFinished(fullPath, EventLog.Outcome.LABELED, millis, Map.of("title", title));
+ *   ...
+ *   EventLog.finish();
+ * </pre>
+ *
+ * Outside of a run (labeling one image, generate-image-tags...) messages are printed straight away as usual. Everything
+ * but the warnings goes to stdout, unless a command keeps that for its results ({@link #setConsole}).
+ */
+public class EventLog {
+  private static final int BUFFER_CAPACITY = 1 << 16;
+  private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  // how often the progress line is redrawn on a terminal, or printed again when the output is a file or pipe
+  private static final long TERMINAL_REFRESH_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+  private static final long PLAIN_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(10);
+  private static final String CLEAR_LINE = "\r\033[K";
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private static volatile Run run;
+  private static volatile PrintStream console = System.out;
+
+  public enum Outcome {
+    LABELED, UPDATED, ALREADY_LABELED, SKIPPED, FAILED
+  }
+
+  private enum Level {
+    // only written to the log file
+    DETAIL,
+    // shown above the progress line as well
+    NOTICE,
+    WARNING
+  }
+
+  private record Event(
+      long timeMillis,
+      String thread,
+      String type,
+      Level level,
+      String imagePath,
+      String message,
+      Map<String, Object> fields
+  ) {}
+
+  /**
+   * Starts routing events through the buffer, until {@link #finish()}.
+   *
+   * @param totalImages how many images the run will process, for the progress line
+   * @param logFile     where to write every event as JSON Lines, or null for only the progress line and warnings
+   */
+  public static void start(final long totalImages, final Path logFile) {
+    start(totalImages, true, logFile);
+  }
+
+  /**
+   * Starts a run whose images are still being found (read from a list as it arrives...): count each with
+   * {@link #imageQueued()} and call {@link #allImagesQueued()} once there are no more.
+   */
+  public static void start(final Path logFile) {
+    start(0, false, logFile);
+  }
+
+  private static synchronized void start(final long totalImages, final boolean allQueued, final Path logFile) {
+    if (run != null) {
+      throw new IllegalStateException("An event log run is already in progress");
+    }
+
+    BufferedWriter logWriter = null;
+    if (logFile != null) {
+      try {
+        logWriter = Files.newBufferedWriter(logFile);
+      } catch (IOException e) {
+        System.err.println("Warning: Could not open the event log " + logFile + ", carrying on without it: " + e.getMessage());
+      }
+    }
+    run = new Run(totalImages, allQueued, logFile, logWriter);
+  }
+
+  /**
+   * Counts one more image towards the total, ignored once all of them are (the total was given up front...).
+   */
+  public static void imageQueued() {
+    final Run current = run;
+    if (current != null && !current.allQueued) {
+      current.total.increment();
+    }
+  }
+
+  public static void allImagesQueued() {
+    final Run current = run;
+    if (current != null) {
+      current.allQueued = true;
+    }
+  }
+
+  /**
+   * Where the messages, notices and progress line are printed from now on (warnings always go to stderr).
+   * generate-image-tags --format jsonl points it at stderr, to keep stdout for the JSON.
+   */
+  public static void setConsole(final PrintStream console) {
+    EventLog.console = console;
+  }
+
+  /**
+   * Shows whatever is left in the buffer, prints the final progress line and closes the log file.
+   */
+  public static synchronized void finish() {
+    if (run == null) {
+      return;
+    }
+    final Run finished = run;
+    run = null;
+    finished.stop();
+  }
+
+  public static boolean isRunning() {
+    return run != null;
+  }
+
+  /**
+   * Detail about an image (or the pipeline), printed outside of a run and only logged during one.
+   *
+   * @param imagePath the image it's about, null if it isn't about one
+   */
+  public static void info(final String imagePath, final String message) {
+    final Run current = run;
+    if (current == null) {
+      console.println(message);
+    } else {
+      current.offer(new Event(System.currentTimeMillis(), Thread.currentThread().getName(), "detail", Level.DETAIL,
+          imagePath, message, null));
+    }
+  }
+
+  /**
+   * Something worth seeing while the run goes on, shown above the progress line.
+   */
+  public static void notice(final String message) {
+    final Run current = run;
+    if (current == null) {
+      console.println(message);
+    } else {
+      current.offer(new Event(System.currentTimeMillis(), Thread.currentThread().getName(), "notice", Level.NOTICE,
+          null, message, null));
+    }
+  }
+
+  /**
+   * A warning or error, printed to stderr as is (so include the "Warning: " or "Error ..." prefix).
+   */
+  public static void warn(final String imagePath, final String message) {
+    final Run current = run;
+    if (current == null) {
+      System.err.println(message);
+    } else {
+      current.offer(new Event(System.currentTimeMillis(), Thread.currentThread().getName(), "warning", Level.WARNING,
+          imagePath, message, null));
+    }
+  }
+
+  public static void imageStarted(final String imagePath) {
+    final Run current = run;
+    if (current != null) {
+      current.inFlight.increment();
+      current.offer(new Event(System.currentTimeMillis(), Thread.currentThread().getName(), "started", Level.DETAIL,
+          imagePath, null, null));
+    }
+  }
+
+  /**
+   * @param fields anything else worth logging about the image (its title, tags, the error...), may be null
+   */
+  public static void imageFinished(
+      final String imagePath,
+      final Outcome outcome,
+      final long millis,
+      final Map<String, Object> fields
+  ) {
+    final Run current = run;
+    if (current == null) {
+      return;
+    }
+
+    current.inFlight.decrement();
+    current.finished.increment();
+    if (outcome == Outcome.FAILED) {
+      current.failed.increment();
+    } else if (outcome == Outcome.SKIPPED) {
+      current.skipped.increment();
+    }
+
+    final Map<String, Object> allFields = new LinkedHashMap<>();
+    allFields.put("millis", millis);
+    if (fields != null) {
+      allFields.putAll(fields);
+    }
+    current.offer(new Event(System.currentTimeMillis(), Thread.currentThread().getName(),
+        outcome.name().toLowerCase(), Level.DETAIL, imagePath, null, allFields));
+  }
+
+  /**
+   * One run: the buffer, the counters behind the progress line (kept outside of the buffer so they are right even if
+   * events are dropped) and the thread which drains it.
+   */
+  private static final class Run {
+    private final RingBuffer<Event> events = new RingBuffer<>(BUFFER_CAPACITY);
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder finished = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder total = new LongAdder();
+
+    private final Path logFile;
+    private final BufferedWriter logWriter;
+    // where it started printing, for the whole run
+    private final PrintStream console = EventLog.console;
+    private final boolean terminal = System.console() != null;
+    private final long startNanos = System.nanoTime();
+    private final Thread drainer;
+
+    private volatile boolean allQueued;
+    private volatile boolean stopping;
+    // the rest is only touched by the drainer
+    private long lastProgressNanos;
+    private boolean progressShown;
+
+    private Run(final long totalImages, final boolean allQueued, final Path logFile, final BufferedWriter logWriter) {
+      this.total.add(totalImages);
+      this.allQueued = allQueued;
+      this.logFile = logFile;
+      this.logWriter = logWriter;
+      this.drainer = new Thread(this::drainUntilStopped, "event-log");
+      drainer.setDaemon(true);
+      drainer.start();
+    }
+
+    private void offer(final Event event) {
+      if (!events.offer(event)) {
+        dropped.increment();
+      }
+    }
+
+    private void drainUntilStopped() {
+      while (!stopping) {
+        events.drain(this::handle);
+        final long now = System.nanoTime();
+        if (now - lastProgressNanos >= (terminal ? TERMINAL_REFRESH_NANOS : PLAIN_REFRESH_NANOS)) {
+          showProgress(now);
+        }
+        LockSupport.parkNanos(DRAIN_INTERVAL_NANOS);
+      }
+      events.drain(this::handle);
+    }
+
+    private void handle(final Event event) {
+      if (event.level() != Level.DETAIL) {
+        clearProgress();
+        (event.level() == Level.WARNING ? System.err : console).println(event.message());
+      }
+
+      if (logWriter != null) {
+        final Map<String, Object> json = new LinkedHashMap<>();
+        json.put("time", Instant.ofEpochMilli(event.timeMillis()).toString());
+        json.put("thread", event.thread());
+        json.put("event", event.type());
+        if (event.imagePath() != null) {
+          json.put("image", event.imagePath());
+        }
+        if (event.message() != null) {
+          json.put("message", event.message().strip());
+        }
+        if (event.fields() != null) {
+          json.putAll(event.fields());
+        }
+        try {
+          logWriter.write(OBJECT_MAPPER.writeValueAsString(json));
+          logWriter.newLine();
+        } catch (JsonProcessingException e) {
+          // a field which can't be serialized, skip the line rather than the log
+        } catch (IOException e) {
+          dropped.increment();
+        }
+      }
+    }
+
+    private void clearProgress() {
+      if (terminal && progressShown) {
+        console.print(CLEAR_LINE);
+        progressShown = false;
+      }
+    }
+
+    private void showProgress(final long now) {
+      lastProgressNanos = now;
+      if (terminal) {
+        console.print(CLEAR_LINE + progressLine(now));
+        console.flush();
+        progressShown = true;
+      } else {
+        console.println(progressLine(now));
+      }
+    }
+
+    private String progressLine(final long now) {
+      final long done = finished.sum();
+      final long totalImages = total.sum();
+      final double seconds = (now - startNanos) / 1_000_000_000.0;
+      final double rate = seconds > 0 ? done / seconds : 0;
+
+      final StringBuilder line = new StringBuilder()
+          .append("Progress: ").append(done).append('/').append(totalImages);
+      if (!allQueued) {
+        // more are on the way, a percentage or ETA would only mislead
+        line.append(" found so far");
+      } else if (totalImages > 0) {
+        line.append(" (").append(done * 100 / totalImages).append("%)");
+      }
+      line.append(", %.2f images/s".formatted(rate));
+      if (allQueued && rate > 0 && done < totalImages) {
+        line.append(", ETA ").append(formatSeconds((long) ((totalImages - done) / rate)));
+      }
+      line.append(", ").append(inFlight.sum()).append(" in flight");
+      line.append(", ").append(failed.sum()).append(" failed");
+      if (skipped.sum() > 0) {
+        line.append(", ").append(skipped.sum()).append(" skipped");
+      }
+      return line.toString();
+    }
+
+    private void stop() {
+      stopping = true;
+      LockSupport.unpark(drainer);
+      try {
+        drainer.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+
+      // the final state, on its own line
+      showProgress(System.nanoTime());
+      if (terminal) {
+        console.println();
+      }
+
+      if (logWriter != null) {
+        try {
+          logWriter.close();
+          console.println("Event log written to " + logFile.toAbsolutePath());
+        } catch (IOException e) {
+          System.err.println("Warning: Could not finish writing the event log " + logFile + ": " + e.getMessage());
+        }
+      }
+      if (dropped.sum() > 0) {
+        System.err.println("Warning: " + dropped.sum() + " event(s) were dropped, the event log couldn't keep up");
+      }
+    }
+  }
+
+  private static String formatSeconds(final long seconds) {
+    if (seconds >= 3600) {
+      return "%dh%02dm".formatted(seconds / 3600, seconds % 3600 / 60);
+    }
+    if (seconds >= 60) {
+      return "%dm%02ds".formatted(seconds / 60, seconds % 60);
+    }
+    return seconds + "s";
+  }
+}
@@ -14,6 +14,7 @@ import com.drew.imaging.ImageProcessingException;
 import com.drew.metadata.Metadata;
 import com.drew.metadata.exif.ExifSubIFDDirectory;
 import com.drew.metadata.exif.GpsDirectory;
+import com.wininger.cli_image_labeler.image.tagging.jfr.PipelineStageEvent;
 
 public class FileMetaDataUtils
 {
@@ -21,7 +22,7 @@ public class FileMetaDataUtils
     final Map<String, Double> result = new HashMap<>();
     final File imageFile = new File(imagePath);
 
-    final Metadata metadata = ImageMetadataReader.readMetadata(imageFile);
+    final Metadata metadata = readMetadata(imageFile, "geo location");
 
     // Extract GPS coordinates
     final GpsDirectory gpsDirectory = metadata.getFirstDirectoryOfType(GpsDirectory.class);
@@ -42,13 +43,13 @@ public class FileMetaDataUtils
     final Map<String, Object> result = new HashMap<>();
     final File imageFile = new File(imagePath);
 
-    final Metadata metadata = ImageMetadataReader.readMetadata(imageFile);
+    final Metadata metadata = readMetadata(imageFile, "created on");
 
     // Extract EXIF data (focal length, date taken)
     final ExifSubIFDDirectory exifDirectory = metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
 
       // Date/time original (created on)
-      if (exifDirectory.containsTag(ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL)) {
+      if (exifDirectory != null && exifDirectory.containsTag(ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL)) {
         return exifDirectory.getDate(ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL);
       } else {
         return null;
@@ -74,4 +75,18 @@ public class FileMetaDataUtils
     final BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
     return new Date(attrs.lastModifiedTime().toMillis());
   }
+
+  /**
+   * Reads all of the image's metadata (which means parsing every segment of it), recorded as a pipeline stage.
+   */
+  private static Metadata readMetadata(final File imageFile, final String stage)
+      throws ImageProcessingException, IOException {
+    final PipelineStageEvent event = PipelineStageEvent.begin("metadata: " + stage, imageFile.getPath())
+        .bytes(imageFile.length());
+    try {
+      return ImageMetadataReader.readMetadata(imageFile);
+    } finally {
+      event.finish();
+    }
+  }
 }
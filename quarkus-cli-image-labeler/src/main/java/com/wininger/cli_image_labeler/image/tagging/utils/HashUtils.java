@@ -0,0 +1,22 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+public class HashUtils {
+  /**
+   * Returns the SHA-256 hash of the UTF-8 bytes of `value` as a hex string.
+   */
+  public static String sha256Hex(final String value) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+    catch (NoSuchAlgorithmException e) {
+      // every JVM is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+}
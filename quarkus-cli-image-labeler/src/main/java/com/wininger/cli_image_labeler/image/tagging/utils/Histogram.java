@@ -0,0 +1,91 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed size, lock free histogram of non-negative values (durations in nanos, token counts...), in the style of
+ * HdrHistogram. Values below 128 are counted exactly, larger ones in log-linear buckets 1/64th of a power of two wide,
+ * so any percentile is within about 1.5% of the real value, whatever the range of values recorded.
+ */
+public class Histogram {
+  // values below this are their own bucket
+  private static final int EXACT_LIMIT = 128;
+  private static final int SUB_BUCKET_BITS = 6;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // enough buckets for any positive long
+  private static final int BUCKETS = EXACT_LIMIT + (Long.SIZE - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  public void record(final long value) {
+    final long clamped = Math.max(0, value);
+    counts.incrementAndGet(bucketOf(clamped));
+    count.increment();
+    sum.add(clamped);
+    max.accumulate(clamped);
+  }
+
+  public long count() {
+    return count.sum();
+  }
+
+  public long sum() {
+    return sum.sum();
+  }
+
+  public long max() {
+    return max.get();
+  }
+
+  public double mean() {
+    final long n = count();
+    return n == 0 ? 0 : sum() / (double) n;
+  }
+
+  /**
+   * @param percentile 0-1, e.g. 0.99
+   * @return the value below which that share of the recorded values fall, 0 if nothing was recorded
+   */
+  public long valueAtPercentile(final double percentile) {
+    final long n = count();
+    if (n == 0) {
+      return 0;
+    }
+
+    final long rank = Math.max(1, (long) Math.ceil(percentile * n));
+    long seen = 0;
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      seen += counts.get(bucket);
+      if (seen >= rank) {
+        // never report more than was actually recorded
+        return Math.min(highestValueIn(bucket), max());
+      }
+    }
+    return max();
+  }
+
+  static int bucketOf(final long value) {
+    if (value < EXACT_LIMIT) {
+      return (int) value;
+    }
+
+    // shift the value so its top 7 bits remain, they are in [64, 128)
+    final int shift = (Long.SIZE - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS + 1);
+    return EXACT_LIMIT + (shift - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+  }
+
+  static long highestValueIn(final int bucket) {
+    if (bucket < EXACT_LIMIT) {
+      return bucket;
+    }
+
+    final int shift = (bucket - EXACT_LIMIT) / SUB_BUCKETS + 1;
+    final long subBucket = (bucket - EXACT_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
@@ -13,12 +13,16 @@ import java.nio.file.Paths;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
+import com.wininger.cli_image_labeler.image.tagging.jfr.PipelineStageEvent;
+
 public class ImageUtils {
   /**
    * Converts a BufferedImage to a JPEG byte array with specified quality. This ensures good compression regardless of
    * source format.
    */
   public static byte[] imageToJpegBytes(final BufferedImage image, final float quality) throws IOException {
+    final PipelineStageEvent event = PipelineStageEvent.begin("encode", null)
+        .dimensions(image.getWidth(), image.getHeight());
     final ByteArrayOutputStream baos = new ByteArrayOutputStream();
 
     // Get JPEG writer
@@ -39,7 +43,9 @@ public class ImageUtils {
       writer.dispose();
     }
 
-    return baos.toByteArray();
+    final byte[] jpegBytes = baos.toByteArray();
+    event.bytes(jpegBytes.length).finish();
+    return jpegBytes;
   }
 
   /**
@@ -64,6 +70,8 @@ public class ImageUtils {
     final int newWidth = (int) (originalWidth * scale);
     final int newHeight = (int) (originalHeight * scale);
 
+    final PipelineStageEvent event = PipelineStageEvent.begin("resize", null).dimensions(newWidth, newHeight);
+
     // Create resized image with better quality rendering
     final BufferedImage resizedImage = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_RGB);
 
@@ -79,6 +87,7 @@ public class ImageUtils {
       g2d.dispose();
     }
 
+    event.finish();
     return resizedImage;
   }
 
@@ -0,0 +1,326 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Limits how many images are worked on at once, and separately how many of them are in the CPU heavy stages (decoding,
+ * resizing and encoding, see {@link #admitCpuStage()}), so a long run can share a machine someone is using. When it is
+ * started it samples the machine's load every few seconds. While the rest of the machine is over the CPU or load
+ * {@link Targets} it halves the CPU stage limit first, so the images already waiting on the model carry on, and only
+ * once that is down to one does it halve the number of images. Memory over its target halves the number of images
+ * straight away, they hold the decoded pictures. Once the machine has been comfortably under the targets for a while
+ * it raises them again one at a time (images first), up to the run's parallelism. Neither limit drops below one, a
+ * nice run is slowed down, not stopped.
+ * <p>
+ * Our own CPU use is taken out of the CPU and load average figures, otherwise the run would throttle itself on an
+ * otherwise idle machine. Anything the model server does counts as someone else's load, so with a local model running
+ * on the CPU a nice run settles at a lower parallelism than it would otherwise.
+ * <p>
+ * A governor which was never started doesn't limit anything beyond its maximum.
+ */
+public class LoadGovernor implements AutoCloseable {
+  /**
+   * What the rest of the machine should stay under.
+   *
+   * @param otherCpu      the share of all CPUs used by other processes, 0 to 1
+   * @param loadPerCore   the load average from other processes, divided by the number of CPUs
+   * @param memoryUsed    the share of memory in use, 0 to 1
+   */
+  public record Targets(double otherCpu, double loadPerCore, double memoryUsed) {}
+
+  public static final Targets DEFAULT_TARGETS = new Targets(0.5, 1.0, 0.9);
+
+  /**
+   * One reading of the machine's load. A negative value means it isn't available on this platform.
+   */
+  public record LoadSample(double otherCpu, double loadPerCore, double memoryUsed) {}
+
+  /**
+   * How many calm samples in a row it takes to raise the limit by one.
+   */
+  static final int CALM_SAMPLES_TO_RAISE = 3;
+
+  /**
+   * A sample is calm when everything is below this share of its target, the gap keeps the limit from see-sawing
+   * around a target.
+   */
+  private static final double CALM_FRACTION = 0.8;
+
+  /**
+   * How often a nice run samples the machine's load.
+   */
+  private static final Duration NICE_SAMPLE_INTERVAL = Duration.ofSeconds(2);
+
+  /**
+   * The started nice governor whose CPU stage limit {@link #admitCpuStage()} applies, null when nothing is throttled.
+   */
+  private static volatile LoadGovernor nice;
+
+  /**
+   * A place in the CPU heavy stages, given back when closed.
+   */
+  public interface Admission extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  private static final Admission NOT_THROTTLED = () -> {};
+
+  private final int maxConcurrency;
+  private final Targets targets;
+  private final Object lock = new Object();
+  private int limit;
+  private int active;
+  private int cpuStageLimit;
+  private int cpuStageActive;
+  private int calmSamples;
+  private ScheduledExecutorService sampler;
+
+  public LoadGovernor(final int maxConcurrency, final Targets targets) {
+    this.maxConcurrency = Math.max(1, maxConcurrency);
+    this.targets = targets;
+    this.limit = this.maxConcurrency;
+    this.cpuStageLimit = this.maxConcurrency;
+  }
+
+  /**
+   * A governor for a run's workers, which only throttles them if the run is nice (--nice), otherwise it lets all
+   * parallelism of them run.
+   */
+  public static LoadGovernor forRun(final int parallelism, final boolean nice) {
+    final LoadGovernor governor = new LoadGovernor(parallelism, DEFAULT_TARGETS);
+    if (nice) {
+      governor.start(NICE_SAMPLE_INTERVAL);
+      LoadGovernor.nice = governor;
+      EventLog.notice("Nice: throttling to the load on the rest of the machine");
+    }
+    return governor;
+  }
+
+  /**
+   * Waits for a place in the CPU heavy stages of labeling an image under the running nice governor, straight away
+   * when there is none. Use it around the work, not around model calls:
+   *
+   * <pre>
+   *   try (LoadGovernor.Admission ignored = LoadGovernor.admitCpuStage()) {
+   *     ... resize and encode ...
+   *   }
+   * </pre>
+   */
+  public static Admission admitCpuStage() {
+    final LoadGovernor governor = nice;
+    if (governor == null) {
+      return NOT_THROTTLED;
+    }
+
+    final long startTime = System.nanoTime();
+    try {
+      governor.acquireCpuStage();
+    } catch (InterruptedException e) {
+      // the worker is being stopped, let it finish quickly rather than wait
+      Thread.currentThread().interrupt();
+      return NOT_THROTTLED;
+    }
+    // how long --nice held the stage back
+    StageTimer.recordSince("nice cpu wait", startTime);
+    return governor::releaseCpuStage;
+  }
+
+  /**
+   * Samples the machine's load every interval and adjusts the limit from then on.
+   */
+  public void start(final Duration interval) {
+    start(interval, LoadGovernor::sampleSystem);
+  }
+
+  void start(final Duration interval, final Supplier<LoadSample> samples) {
+    sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "load-governor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    sampler.scheduleAtFixedRate(() -> {
+      // an exception would cancel the schedule, leaving the limits wherever they were
+      try {
+        adjust(samples.get());
+      } catch (RuntimeException e) {
+        EventLog.warn(null, "Warning: Could not sample the machine's load, keeping the current limits: " + e);
+      }
+    }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Waits until fewer images than the limit are being worked on, then takes a place. Each call must be followed by
+   * {@link #release()}.
+   */
+  public void acquire() throws InterruptedException {
+    synchronized (lock) {
+      while (active >= limit) {
+        lock.wait();
+      }
+      active++;
+    }
+  }
+
+  public void release() {
+    synchronized (lock) {
+      active--;
+      lock.notifyAll();
+    }
+  }
+
+  public int limit() {
+    synchronized (lock) {
+      return limit;
+    }
+  }
+
+  void acquireCpuStage() throws InterruptedException {
+    synchronized (lock) {
+      while (cpuStageActive >= cpuStageLimit) {
+        lock.wait();
+      }
+      cpuStageActive++;
+    }
+  }
+
+  void releaseCpuStage() {
+    synchronized (lock) {
+      cpuStageActive--;
+      lock.notifyAll();
+    }
+  }
+
+  public int cpuStageLimit() {
+    synchronized (lock) {
+      return cpuStageLimit;
+    }
+  }
+
+  /**
+   * Applies one sample to the limits, halving one if anything is over its target and raising one by one after enough
+   * calm samples (see the class comment for which). Images already being worked on carry on when a limit is lowered,
+   * no more are started until they are under the new limit.
+   */
+  void adjust(final LoadSample sample) {
+    final List<String> overCpu = overCpuTargets(sample, 1.0);
+    final List<String> overMemory = overMemoryTarget(sample, 1.0);
+    final int limitBefore;
+    final int cpuStageLimitBefore;
+    final int limitAfter;
+    final int cpuStageLimitAfter;
+    synchronized (lock) {
+      limitBefore = limit;
+      cpuStageLimitBefore = cpuStageLimit;
+      if (!overCpu.isEmpty() || !overMemory.isEmpty()) {
+        calmSamples = 0;
+        if (!overMemory.isEmpty() || cpuStageLimit == 1) {
+          limit = Math.max(1, limit / 2);
+        }
+        if (!overCpu.isEmpty()) {
+          cpuStageLimit = Math.max(1, cpuStageLimit / 2);
+        }
+      } else if (overCpuTargets(sample, CALM_FRACTION).isEmpty() && overMemoryTarget(sample, CALM_FRACTION).isEmpty()
+          && ++calmSamples >= CALM_SAMPLES_TO_RAISE) {
+        calmSamples = 0;
+        if (limit < maxConcurrency) {
+          limit++;
+        } else {
+          cpuStageLimit = Math.min(maxConcurrency, cpuStageLimit + 1);
+        }
+      }
+      limitAfter = limit;
+      cpuStageLimitAfter = cpuStageLimit;
+      lock.notifyAll();
+    }
+
+    if (limitAfter < limitBefore || cpuStageLimitAfter < cpuStageLimitBefore) {
+      final List<String> over = new ArrayList<>(overCpu);
+      over.addAll(overMemory);
+      EventLog.notice("Nice: the machine is busy (%s), working on %d image(s) at a time, %d resizing at once"
+        .formatted(String.join(", ", over), limitAfter, cpuStageLimitAfter));
+    } else if (limitAfter > limitBefore || cpuStageLimitAfter > cpuStageLimitBefore) {
+      EventLog.notice("Nice: the machine is quieter, working on %d image(s) at a time, %d resizing at once"
+        .formatted(limitAfter, cpuStageLimitAfter));
+    }
+  }
+
+  private List<String> overCpuTargets(final LoadSample sample, final double fraction) {
+    final List<String> over = new ArrayList<>();
+    if (sample.otherCpu() > targets.otherCpu() * fraction) {
+      over.add("other processes' CPU %.0f%%".formatted(sample.otherCpu() * 100));
+    }
+    if (sample.loadPerCore() > targets.loadPerCore() * fraction) {
+      over.add("load %.2f per CPU".formatted(sample.loadPerCore()));
+    }
+    return over;
+  }
+
+  private List<String> overMemoryTarget(final LoadSample sample, final double fraction) {
+    return sample.memoryUsed() > targets.memoryUsed() * fraction
+        ? List.of("memory %.0f%% used".formatted(sample.memoryUsed() * 100))
+        : List.of();
+  }
+
+  @Override
+  public void close() {
+    if (sampler != null) {
+      sampler.shutdownNow();
+    }
+    if (nice == this) {
+      nice = null;
+    }
+  }
+
+  /**
+   * Reads the machine's load from the OperatingSystemMXBean.
+   */
+  static LoadSample sampleSystem() {
+    if (!(ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os)) {
+      return new LoadSample(-1, -1, -1);
+    }
+    final int cpus = os.getAvailableProcessors();
+
+    // both are shares of all CPUs, negative until there is something to compare with
+    final double systemCpu = os.getCpuLoad();
+    final double processCpu = Math.max(0, os.getProcessCpuLoad());
+    final double otherCpu = systemCpu < 0 ? -1 : Math.max(0, systemCpu - processCpu);
+
+    // the load average counts our own runnable threads, roughly the CPUs we kept busy
+    final double loadAverage = os.getSystemLoadAverage();
+    final double loadPerCore = loadAverage < 0 ? -1 : Math.max(0, loadAverage - processCpu * cpus) / cpus;
+
+    final long total = os.getTotalMemorySize();
+    final long available = availableMemory(os);
+    final double memoryUsed = total <= 0 ? -1 : 1.0 - (double) available / total;
+
+    return new LoadSample(otherCpu, loadPerCore, memoryUsed);
+  }
+
+  /**
+   * The bean's free memory leaves out the page cache on Linux, which the kernel gives back as soon as it's needed, so
+   * a machine that has been up a while always looks full. MemAvailable counts it, use that where there is one.
+   */
+  private static long availableMemory(final com.sun.management.OperatingSystemMXBean os) {
+    try {
+      for (final String line : Files.readAllLines(Path.of("/proc/meminfo"))) {
+        if (line.startsWith("MemAvailable:")) {
+          return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+        }
+      }
+    } catch (IOException | NumberFormatException e) {
+      // not Linux, fall back to the bean
+    }
+    return os.getFreeMemorySize();
+  }
+}
@@ -0,0 +1,164 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Groups concurrent calls with the same key into batches which are handled in one go. A batch is handed over once it
+ * has `maxBatchSize` items, or `maxWait` after its first item arrived, whichever comes first.
+ *
+ * There is no thread of its own, the caller who opened a batch waits for it to fill (or time out) and then runs the
+ * handler on behalf of everyone in it, while the others wait on their result. Callers get an empty result for an item
+ * the handler had no result for (or when the whole batch failed), and are expected to handle that item on its own.
+ * The same goes for a batch which closed with only its first item, there is nothing to gain from handling it as one.
+ */
+public class MicroBatcher<K, I, O> {
+
+  /**
+   * Handles a whole batch. The results must be in the order of the items, a null result (or a missing one, if the list
+   * is short) means that item failed.
+   */
+  @FunctionalInterface
+  public interface BatchHandler<K, I, O> {
+    List<O> handle(K key, List<I> items);
+  }
+
+  private final String name;
+  private final int maxBatchSize;
+  private final Duration maxWait;
+  private final BatchHandler<K, I, O> handler;
+
+  // batches still taking items, guarded by itself
+  private final Map<K, Batch<I, O>> open = new HashMap<>();
+
+  private final AtomicLong batchesSent = new AtomicLong();
+  private final AtomicLong itemsSent = new AtomicLong();
+  private final AtomicLong itemsFailed = new AtomicLong();
+  private final AtomicLong itemsAlone = new AtomicLong();
+
+  /**
+   * @param name what is being batched, only used for logging
+   */
+  public MicroBatcher(
+      final String name,
+      final int maxBatchSize,
+      final Duration maxWait,
+      final BatchHandler<K, I, O> handler
+  ) {
+    this.name = name;
+    this.maxBatchSize = maxBatchSize;
+    this.maxWait = maxWait;
+    this.handler = handler;
+  }
+
+  /**
+   * Adds the item to the open batch for its key (opening one if there is none) and waits for the batch to be handled.
+   *
+   * @return the item's result, or empty if the batch had none for it
+   */
+  public Optional<O> submit(final K key, final I item) {
+    final CompletableFuture<Optional<O>> result = new CompletableFuture<>();
+    final Batch<I, O> batch;
+    final boolean opened;
+
+    synchronized (open) {
+      batch = open.computeIfAbsent(key, ignored -> new Batch<>());
+      batch.items.add(item);
+      batch.results.add(result);
+      opened = batch.items.size() == 1;
+
+      if (batch.items.size() >= maxBatchSize) {
+        open.remove(key);
+        batch.full.complete(null);
+      }
+    }
+
+    if (opened) {
+      awaitFull(batch);
+      synchronized (open) {
+        // still open if it timed out before filling up, nothing can be added to it from here on
+        open.remove(key, batch);
+      }
+      send(key, batch);
+    }
+
+    return result.join();
+  }
+
+  private void awaitFull(final Batch<I, O> batch) {
+    try {
+      batch.full.get(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      // send what there is
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void send(final K key, final Batch<I, O> batch) {
+    if (batch.items.size() == 1) {
+      itemsAlone.incrementAndGet();
+      batch.results.get(0).complete(Optional.empty());
+      return;
+    }
+
+    batchesSent.incrementAndGet();
+    itemsSent.addAndGet(batch.items.size());
+
+    List<O> results = List.of();
+    try {
+      results = handler.handle(key, List.copyOf(batch.items));
+    } catch (RuntimeException e) {
+      EventLog.warn(null, "Warning: A " + name + " batch of " + batch.items.size() + " failed, handling each on its own: "
+          + e.getMessage());
+    } finally {
+      // always complete every result, the rest of the batch is blocked on them
+      for (int i = 0; i < batch.results.size(); i++) {
+        final O itemResult = i < results.size() ? results.get(i) : null;
+        if (itemResult == null) {
+          itemsFailed.incrementAndGet();
+        }
+        batch.results.get(i).complete(Optional.ofNullable(itemResult));
+      }
+    }
+  }
+
+  public long batchesSent() {
+    return batchesSent.get();
+  }
+
+  public long itemsSent() {
+    return itemsSent.get();
+  }
+
+  /**
+   * The number of items the handler had no result for, which their callers then had to handle on their own.
+   */
+  public long itemsFailed() {
+    return itemsFailed.get();
+  }
+
+  /**
+   * The number of items nothing else arrived with in time, which their callers then handled on their own.
+   */
+  public long itemsAlone() {
+    return itemsAlone.get();
+  }
+
+  private static class Batch<I, O> {
+    private final List<I> items = new ArrayList<>();
+    private final List<CompletableFuture<Optional<O>>> results = new ArrayList<>();
+    private final CompletableFuture<Void> full = new CompletableFuture<>();
+  }
+}
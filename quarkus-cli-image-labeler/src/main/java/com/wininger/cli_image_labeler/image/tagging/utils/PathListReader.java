@@ -0,0 +1,104 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a list of paths, one at a time as they arrive, from a file or stdin (so a command can start on the first
+ * while `find` is still looking for the rest). Paths are separated by newlines, or by NUL characters as `find -print0`
+ * and `xargs -0` use, whichever comes first in the input. Blank entries are ignored, as is the '\r' of a Windows line
+ * ending.
+ */
+public class PathListReader implements Iterator<Path>, Closeable {
+  private static final int NOT_DECIDED = -1;
+
+  private final Reader reader;
+  private int delimiter = NOT_DECIDED;
+  private Path next;
+  private boolean finished;
+
+  public PathListReader(final Reader reader) {
+    this.reader = reader instanceof BufferedReader ? reader : new BufferedReader(reader);
+  }
+
+  /**
+   * @param fileOrDash the file to read the list from, or "-" for stdin
+   */
+  public static PathListReader open(final String fileOrDash) throws IOException {
+    if ("-".equals(fileOrDash)) {
+      return new PathListReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+    }
+    return new PathListReader(Files.newBufferedReader(Paths.get(fileOrDash), StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Blocks until the next path has been read or the input ends.
+   *
+   * @throws UncheckedIOException if the input can't be read
+   */
+  @Override
+  public boolean hasNext() {
+    if (next == null && !finished) {
+      try {
+        next = readNext();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      finished = next == null;
+    }
+    return next != null;
+  }
+
+  @Override
+  public Path next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    final Path path = next;
+    next = null;
+    return path;
+  }
+
+  private Path readNext() throws IOException {
+    final StringBuilder entry = new StringBuilder();
+    int c;
+    while ((c = reader.read()) != -1) {
+      if (delimiter == NOT_DECIDED && (c == '\n' || c == '\0')) {
+        delimiter = c;
+      }
+      if (c == delimiter) {
+        final Path path = toPath(entry);
+        if (path != null) {
+          return path;
+        }
+        entry.setLength(0);
+      } else {
+        entry.append((char) c);
+      }
+    }
+    // the last entry needn't end with a delimiter
+    return toPath(entry);
+  }
+
+  private Path toPath(final StringBuilder entry) {
+    if (delimiter != '\0' && entry.length() > 0 && entry.charAt(entry.length() - 1) == '\r') {
+      entry.setLength(entry.length() - 1);
+    }
+    return entry.toString().isBlank() ? null : Paths.get(entry.toString());
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
@@ -7,16 +7,27 @@ public class PrintUtils
   public static void printImageInfoResults(
       final ImageInfo imageInfo,
       final long startTime
+  ) {
+    System.out.println(formatImageInfoResults(imageInfo, startTime));
+  }
+
+  /**
+   * The lines {@link #printImageInfoResults} prints, as one string (without a trailing newline).
+   */
+  public static String formatImageInfoResults(
+      final ImageInfo imageInfo,
+      final long startTime
   ) {
     final String tagsString = String.join(", ", imageInfo.tags());
-    System.out.println("Title: " + imageInfo.shortTitle());
-    System.out.println("Description: " + imageInfo.fullDescription());
-    System.out.println("Tags: " + tagsString);
-    System.out.println("isText: " + imageInfo.isText());
+    final StringBuilder results = new StringBuilder()
+        .append("Title: ").append(imageInfo.shortTitle()).append('\n')
+        .append("Description: ").append(imageInfo.fullDescription()).append('\n')
+        .append("Tags: ").append(tagsString).append('\n')
+        .append("isText: ").append(imageInfo.isText()).append('\n');
     if (imageInfo.isText()) {
-      System.out.println("textContent: " + imageInfo.textContents());
+      results.append("textContent: ").append(imageInfo.textContents()).append('\n');
     }
-    System.out.println("Time Taken: " + getTimeTakenMessage(startTime, System.currentTimeMillis()));
+    return results.append("Time Taken: ").append(getTimeTakenMessage(startTime, System.currentTimeMillis())).toString();
   }
 
   public static String getTimeTakenMessage(final long startTime, final long endTime) {
@@ -0,0 +1,105 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import java.util.function.Consumer;
+
+/**
+ * Hands the results of work done in parallel to a sink one at a time, either in the order the work was submitted or
+ * in the order it finished, while never holding more than `window` pieces of work (in flight or finished and waiting
+ * on an earlier one). Usage, from the one thread which submits:
+ *
+ * <pre>
+ *   final ReorderBuffer&lt;Result&gt; buffer = new ReorderBuffer&lt;&gt;(parallelism * 4, true, this::print);
+ *   for (long sequence = 0; sequence &lt; items.size(); sequence++) {
+ *     buffer.awaitRoomFor(sequence);
+ *     pool.submit(() -&gt; buffer.complete(sequence, process(item)));
+ *   }
+ *   buffer.awaitEmpty();
+ * </pre>
+ *
+ * In input order one slow item holds back the sink (and, once the window is full, new work) until it finishes, which
+ * is the price of bounded memory.
+ */
+public class ReorderBuffer<T> {
+  private final int window;
+  private final boolean inputOrder;
+  private final Consumer<T> sink;
+  // finished results waiting on an earlier one, by sequence modulo the window
+  private final Object[] waiting;
+
+  private long nextToEmit;
+  private int inFlight;
+
+  /**
+   * @param inputOrder true to hand results to the sink in the order they were submitted, false for as they finish
+   * @param sink       called with each result, one at a time
+   */
+  public ReorderBuffer(final int window, final boolean inputOrder, final Consumer<T> sink) {
+    if (window < 1) {
+      throw new IllegalArgumentException("window must be at least 1, was " + window);
+    }
+    this.window = window;
+    this.inputOrder = inputOrder;
+    this.sink = sink;
+    this.waiting = new Object[window];
+  }
+
+  /**
+   * Blocks until there is room for the work with the given sequence number, which must be the one after the last
+   * (starting at 0).
+   */
+  public synchronized void awaitRoomFor(final long sequence) throws InterruptedException {
+    while (inputOrder ? sequence >= nextToEmit + window : inFlight >= window) {
+      wait();
+    }
+    inFlight++;
+  }
+
+  /**
+   * Records the result of the work with the given sequence number and passes on whatever can now be passed on.
+   *
+   * @param result must not be null, use an empty Optional or similar for work without a result
+   */
+  public synchronized void complete(final long sequence, final T result) {
+    inFlight--;
+
+    if (!inputOrder) {
+      nextToEmit++;
+      try {
+        sink.accept(result);
+      } finally {
+        notifyAll();
+      }
+      return;
+    }
+
+    waiting[(int) (sequence % window)] = result;
+    try {
+      while (waiting[(int) (nextToEmit % window)] != null) {
+        final int slot = (int) (nextToEmit % window);
+        @SuppressWarnings("unchecked")
+        final T next = (T) waiting[slot];
+        waiting[slot] = null;
+        nextToEmit++;
+        sink.accept(next);
+      }
+    } finally {
+      notifyAll();
+    }
+  }
+
+  /**
+   * Blocks until every piece of work submitted has been completed and passed on.
+   */
+  public synchronized void awaitEmpty() throws InterruptedException {
+    while (inFlight > 0) {
+      wait();
+    }
+  }
+
+  /**
+   * How many results have been passed on.
+   */
+  public synchronized long emitted() {
+    return nextToEmit;
+  }
+}
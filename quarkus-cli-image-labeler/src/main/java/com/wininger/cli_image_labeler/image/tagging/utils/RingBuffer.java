@@ -0,0 +1,96 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A bounded, lock free queue for many producers and a single consumer. Producers never wait: when the buffer is full
+ * {@link #offer} returns false and it's up to them to drop the item.
+ *
+ * Each slot has a sequence number saying whose turn it is: a producer may fill slot `i` for position `p` once its
+ * sequence is `p`, and marks it `p + 1` when the item is in, the consumer takes it then and marks it `p + capacity`
+ * for the producer a lap later.
+ */
+public class RingBuffer<T> {
+  private final int capacity;
+  private final int mask;
+  private final AtomicReferenceArray<T> items;
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong();
+  // only the consumer moves the head
+  private long head;
+
+  /**
+   * @param capacity rounded up to a power of two
+   */
+  public RingBuffer(final int capacity) {
+    this.capacity = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    this.mask = this.capacity - 1;
+    this.items = new AtomicReferenceArray<>(this.capacity);
+    this.sequences = new AtomicLongArray(this.capacity);
+    for (int i = 0; i < this.capacity; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  /**
+   * Adds the item, or returns false straight away if the buffer is full. Safe to call from any thread.
+   */
+  public boolean offer(final T item) {
+    while (true) {
+      final long position = tail.get();
+      final int slot = (int) (position & mask);
+      final long turn = sequences.get(slot) - position;
+
+      if (turn == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          items.set(slot, item);
+          sequences.set(slot, position + 1);
+          return true;
+        }
+      } else if (turn < 0) {
+        // the slot still holds the item from a lap ago, the consumer is behind
+        return false;
+      }
+      // otherwise another producer claimed this position first, try the next one
+    }
+  }
+
+  /**
+   * Takes the oldest item, null if there is none (or the producer which claimed it hasn't finished adding it). Only
+   * to be called from the one consumer thread.
+   */
+  public T poll() {
+    final int slot = (int) (head & mask);
+    if (sequences.get(slot) != head + 1) {
+      return null;
+    }
+
+    final T item = items.get(slot);
+    items.set(slot, null);
+    sequences.set(slot, head + capacity);
+    head++;
+    return item;
+  }
+
+  /**
+   * Hands every item currently in the buffer to `consumer`, from the consumer thread.
+   *
+   * @return how many items were drained
+   */
+  public int drain(final Consumer<T> consumer) {
+    int drained = 0;
+    T item;
+    while ((item = poll()) != null) {
+      consumer.accept(item);
+      drained++;
+    }
+    return drained;
+  }
+}
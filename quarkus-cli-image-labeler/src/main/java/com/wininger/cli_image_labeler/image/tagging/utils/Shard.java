@@ -0,0 +1,62 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * One of count parts of a library, so several machines can each label their own part into their own database. An
+ * image belongs to the shard its absolute path hashes to, which doesn't depend on what else is in the library, the
+ * order it's found in or the machine (as long as the library is mounted at the same path on each).
+ *
+ * @param index which shard, 1 to count
+ */
+public record Shard(int index, int count) {
+
+  public Shard {
+    if (count < 1 || index < 1 || index > count) {
+      throw new IllegalArgumentException("expected i/N with 1 <= i <= N, e.g. 2/3");
+    }
+  }
+
+  /**
+   * Parses "i/N", e.g. "2/3" for the second of three shards.
+   */
+  public static Shard parse(final String value) {
+    final String[] parts = value.trim().split("/", -1);
+    if (parts.length != 2) {
+      throw new IllegalArgumentException("expected i/N, e.g. 2/3");
+    }
+    try {
+      return new Shard(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("expected i/N, e.g. 2/3");
+    }
+  }
+
+  public boolean includes(final Path image) {
+    return shardOf(image, count) == index;
+  }
+
+  /**
+   * The shard, 1 to count, an image belongs to. SHA-256 rather than String.hashCode so paths which differ only a
+   * little (photo_0001.jpg, photo_0002.jpg...) still spread evenly.
+   */
+  static int shardOf(final Path image, final int count) {
+    final String key = image.toAbsolutePath().normalize().toString();
+    try {
+      final byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+      return (int) Long.remainderUnsigned(ByteBuffer.wrap(digest).getLong(), count) + 1;
+    } catch (NoSuchAlgorithmException e) {
+      // every JVM is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return index + "/" + count;
+  }
+}
@@ -0,0 +1,68 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent calls for the same key into one. The first caller for a key does the work, anyone else asking
+ * for that key while it is still in flight waits on and shares its result (or its exception). Nothing is cached,
+ * once the call completes the next caller for the key does the work again.
+ */
+public class SingleFlight<K, V> {
+  private final String name;
+  private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+  private final AtomicLong coalesced = new AtomicLong();
+
+  /**
+   * @param name what is being computed, only used for logging
+   */
+  public SingleFlight(final String name) {
+    this.name = name;
+  }
+
+  public V execute(final K key, final Supplier<V> work) {
+    final CompletableFuture<V> ours = new CompletableFuture<>();
+    final CompletableFuture<V> existing = inFlight.putIfAbsent(key, ours);
+
+    if (existing != null) {
+      coalesced.incrementAndGet();
+      EventLog.info(null, "Identical " + name + " request already in flight, waiting on its result...");
+      return await(existing);
+    }
+
+    try {
+      final V result = work.get();
+      ours.complete(result);
+      return result;
+    } catch (RuntimeException | Error e) {
+      ours.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, ours);
+    }
+  }
+
+  /**
+   * The number of calls which were served by another caller's in flight work.
+   */
+  public long coalescedCount() {
+    return coalesced.get();
+  }
+
+  private V await(final CompletableFuture<V> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      if (e.getCause() instanceof Error error) {
+        throw error;
+      }
+      throw e;
+    }
+  }
+}
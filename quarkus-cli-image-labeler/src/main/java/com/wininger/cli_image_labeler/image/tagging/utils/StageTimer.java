@@ -0,0 +1,85 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Adds up how much time is spent in each stage of processing an image (decoding, resizing, each model call, saving...)
+ * across all worker threads, as a {@link Histogram} per stage so the slow outliers show up as well as the averages.
+ * Usage:
+ *
+ * <pre>
+ *   final long startTime = System.nanoTime();
+ *   ...
+ *   StageTimer.recordSince("decode", startTime);
+ * </pre>
+ */
+public class StageTimer {
+  private static final Map<String, Histogram> STAGES = new ConcurrentHashMap<>();
+
+  public record StageTotals(
+      String stage,
+      long count,
+      long totalNanos,
+      long p50Nanos,
+      long p95Nanos,
+      long p99Nanos,
+      long maxNanos
+  ) {
+    public double averageMillis() {
+      return count == 0 ? 0 : totalNanos / 1_000_000.0 / count;
+    }
+
+    public double totalSeconds() {
+      return totalNanos / 1_000_000_000.0;
+    }
+
+    public double p50Millis() {
+      return p50Nanos / 1_000_000.0;
+    }
+
+    public double p95Millis() {
+      return p95Nanos / 1_000_000.0;
+    }
+
+    public double p99Millis() {
+      return p99Nanos / 1_000_000.0;
+    }
+
+    public double maxMillis() {
+      return maxNanos / 1_000_000.0;
+    }
+  }
+
+  /**
+   * Records the time from `startNanos` (a {@link System#nanoTime()} value) until now against `stage`.
+   */
+  public static void recordSince(final String stage, final long startNanos) {
+    record(stage, System.nanoTime() - startNanos);
+  }
+
+  public static void record(final String stage, final long nanos) {
+    STAGES.computeIfAbsent(stage, ignored -> new Histogram()).record(nanos);
+  }
+
+  /**
+   * The totals for every stage seen so far, the stage which took the most time first.
+   */
+  public static List<StageTotals> snapshot() {
+    return STAGES.entrySet().stream()
+        .map(entry -> totals(entry.getKey(), entry.getValue()))
+        .sorted(Comparator.comparingLong(StageTotals::totalNanos).reversed())
+        .toList();
+  }
+
+  public static void reset() {
+    STAGES.clear();
+  }
+
+  private static StageTotals totals(final String stage, final Histogram histogram) {
+    return new StageTotals(stage, histogram.count(), histogram.sum(), histogram.valueAtPercentile(0.5),
+        histogram.valueAtPercentile(0.95), histogram.valueAtPercentile(0.99), histogram.max());
+  }
+}
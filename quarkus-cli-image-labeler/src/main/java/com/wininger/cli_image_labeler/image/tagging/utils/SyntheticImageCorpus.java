@@ -0,0 +1,85 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a directory of made up images, in a mix of sizes and formats, for benchmarking the ingest pipeline.
+ * The same seed always produces the same images.
+ */
+public class SyntheticImageCorpus {
+  // width x height, a mix of phone photos, screenshots, scans and small web images
+  private static final int[][] SIZES = {
+      {4032, 3024}, {3024, 4032}, {1920, 1080}, {2560, 1440}, {1280, 960}, {800, 1200}, {640, 480}, {300, 300}
+  };
+
+  private static final String[] FORMATS = {"jpg", "jpg", "jpg", "png", "png", "bmp", "gif", "tiff"};
+
+  /**
+   * Writes `count` images to `directory` (which is created if needed) and returns their paths.
+   */
+  public static List<Path> generate(final Path directory, final int count, final long seed) throws IOException {
+    Files.createDirectories(directory);
+
+    final Random random = new Random(seed);
+    final List<Path> images = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      final int[] size = SIZES[random.nextInt(SIZES.length)];
+      final String format = FORMATS[random.nextInt(FORMATS.length)];
+      final Path imagePath = directory.resolve("synthetic-%05d.%s".formatted(i, format));
+
+      if (!ImageIO.write(drawImage(size[0], size[1], random), format, imagePath.toFile())) {
+        throw new IOException("No image writer available for " + format);
+      }
+      images.add(imagePath);
+    }
+
+    return images;
+  }
+
+  private static BufferedImage drawImage(final int width, final int height, final Random random) {
+    // RGB without alpha so that every format (jpg and bmp in particular) can be written
+    final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    final Graphics2D graphics = image.createGraphics();
+
+    try {
+      graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+      graphics.setPaint(new GradientPaint(0, 0, randomColor(random), width, height, randomColor(random)));
+      graphics.fillRect(0, 0, width, height);
+
+      // some shapes so the images have edges and detail to compress, not just a gradient
+      final int numShapes = 10 + random.nextInt(40);
+      for (int i = 0; i < numShapes; i++) {
+        graphics.setColor(randomColor(random));
+        final int x = random.nextInt(width);
+        final int y = random.nextInt(height);
+        final int w = 1 + random.nextInt(Math.max(1, width / 3));
+        final int h = 1 + random.nextInt(Math.max(1, height / 3));
+        if (random.nextBoolean()) {
+          graphics.fillOval(x, y, w, h);
+        } else {
+          graphics.fillRect(x, y, w, h);
+        }
+      }
+
+      graphics.setColor(Color.BLACK);
+      graphics.setFont(new Font(Font.SANS_SERIF, Font.BOLD, Math.max(12, height / 20)));
+      graphics.drawString("synthetic " + Long.toHexString(random.nextLong()), width / 10, height / 2);
+    } finally {
+      graphics.dispose();
+    }
+
+    return image;
+  }
+
+  private static Color randomColor(final Random random) {
+    return new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+  }
+}
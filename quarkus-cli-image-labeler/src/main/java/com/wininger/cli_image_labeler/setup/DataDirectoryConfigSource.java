@@ -31,7 +31,7 @@ public class DataDirectoryConfigSource implements ConfigSource {
         final String envValue = System.getenv(DATA_LOCATION_ENV_VAR);
         if (envValue != null && !envValue.isBlank()) {
             this.dataDirectory = envValue;
-            System.out.println("Using data directory from " + DATA_LOCATION_ENV_VAR + ": " + dataDirectory);
+            System.err.println("Using data directory from " + DATA_LOCATION_ENV_VAR + ": " + dataDirectory);
         } else {
             this.dataDirectory = DEFAULT_DATA_DIR;
         }
@@ -45,7 +45,7 @@ public class DataDirectoryConfigSource implements ConfigSource {
         if (!Files.exists(dataDir)) {
             try {
                 Files.createDirectories(dataDir);
-                System.out.println("Created data directory: " + dataDir.toAbsolutePath());
+                System.err.println("Created data directory: " + dataDir.toAbsolutePath());
             } catch (IOException e) {
                 throw new RuntimeException("Failed to create data directory: " + dataDir, e);
             }
@@ -55,7 +55,7 @@ public class DataDirectoryConfigSource implements ConfigSource {
         if (!Files.exists(thumbnailsDir)) {
             try {
                 Files.createDirectories(thumbnailsDir);
-                System.out.println("Created thumbnails directory: " + thumbnailsDir.toAbsolutePath());
+                System.err.println("Created thumbnails directory: " + thumbnailsDir.toAbsolutePath());
             } catch (IOException e) {
                 throw new RuntimeException("Failed to create thumbnails directory: " + thumbnailsDir, e);
             }
@@ -64,6 +64,15 @@ public class DataDirectoryInitializer {
         return getDataDirectory().resolve("image-tags.db");
     }
 
+    /**
+     * Returns the path of the Unix domain socket the serve command listens on by default (within the data directory).
+     *
+     * @return the path to the socket
+     */
+    public static Path getSocketPath() {
+        return getDataDirectory().resolve("labeler.sock");
+    }
+
     /**
      * Returns the data directory as a string for use in configuration.
      *
@@ -0,0 +1,10 @@
+-- Images the pre-filters decided weren't worth labeling (icons, spacers, tiny thumbnails...). The size and last
+-- modified time are kept so a file is only examined again if it changes.
+CREATE TABLE skipped_images (
+    full_path TEXT PRIMARY KEY,
+    reason TEXT NOT NULL,
+    file_size INTEGER NOT NULL,
+    file_last_modified INTEGER NOT NULL,
+    created_at TEXT NOT NULL,
+    updated_at TEXT NOT NULL
+);
@@ -0,0 +1,44 @@
+package com.wininger.cli_image_labeler.commands;
+
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.quarkus.test.junit.main.Launch;
+import io.quarkus.test.junit.main.LaunchResult;
+import io.quarkus.test.junit.main.QuarkusMainTest;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+/**
+ * Tests for BenchmarkIngestCommand, run end to end against the fake model backend.
+ */
+@QuarkusMainTest
+@TestProfile(BenchmarkIngestCommandTest.FakeModelProfile.class)
+public class BenchmarkIngestCommandTest {
+
+    public static class FakeModelProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of(
+                "il.model.backend", "fake",
+                "il.model.fake.describe-latency", "10ms",
+                "il.model.fake.extract-latency", "10ms"
+            );
+        }
+    }
+
+    @Test
+    @Launch({"benchmark-ingest", "--images", "5", "--parallelism", "1,2"})
+    void test__labels_the_synthetic_corpus_at_each_parallelism(final LaunchResult result) {
+        assertEquals(0, result.exitCode());
+        final String output = result.getOutput();
+        assertTrue(output.contains("=== Benchmarking parallelism=1 ==="), output);
+        assertTrue(output.contains("=== Benchmarking parallelism=2 ==="), output);
+        assertTrue(output.contains("Benchmark results (5 images, fake model backend)"), output);
+        assertFalse(output.contains("Unexpected error"), output);
+    }
+}
@@ -0,0 +1,176 @@
+package com.wininger.cli_image_labeler.image.tagging.db;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sqlite.SQLiteDataSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for DatabaseMerger, merging one shard's database into another's, both migrated to the current schema in a
+ * temporary directory.
+ */
+public class DatabaseMergerTest {
+
+    @TempDir
+    Path directory;
+
+    private Path ourThumbnails;
+    private Path shardDatabase;
+    private Path shardThumbnails;
+    private DatabaseMerger merger;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        final Path ourDatabase = directory.resolve("ours/image-tags.db");
+        ourThumbnails = Files.createDirectories(directory.resolve("ours/thumbnails"));
+        shardDatabase = directory.resolve("shard/image-tags.db");
+        shardThumbnails = Files.createDirectories(directory.resolve("shard/thumbnails"));
+
+        // the same tag names under different ids
+        execute(ourDatabase,
+            "INSERT INTO tags (id, tag_name, created_at, updated_at) VALUES " +
+                "(1, 'cat', '2026-01-01', '2026-01-01'), (2, 'dog', '2026-01-01', '2026-01-01')",
+            image("01", "/photos/a.jpg", "an older a", "a-old.jpg", "2026-01-01"),
+            image("03", "/photos/c.jpg", "a newer c", "c.jpg", "2026-03-01"),
+            "INSERT INTO image_info_tag_join (image_info_id, tag_id) VALUES (X'01', 1), (X'03', 2)");
+        Files.writeString(ourThumbnails.resolve("a-old.jpg"), "old a");
+        Files.writeString(ourThumbnails.resolve("c.jpg"), "newer c");
+
+        execute(shardDatabase,
+            "INSERT INTO tags (id, tag_name, created_at, updated_at) VALUES " +
+                "(1, 'dog', '2026-01-01', '2026-01-01'), (2, 'cat', '2026-01-01', '2026-01-01'), " +
+                "(3, 'bird', '2026-01-01', '2026-01-01')",
+            // the same path as ours, labeled again since
+            image("11", "/photos/a.jpg", "a newer a", "a-new.jpg", "2026-02-01"),
+            image("12", "/photos/b.jpg", "only in the shard", "b.jpg", "2026-02-01"),
+            // older than ours
+            image("13", "/photos/c.jpg", "an older c", "c.jpg", "2026-02-01"),
+            "INSERT INTO image_info_tag_join (image_info_id, tag_id) VALUES (X'11', 1), (X'11', 3), (X'12', 2), (X'13', 1)");
+        Files.writeString(shardThumbnails.resolve("a-new.jpg"), "new a");
+        Files.writeString(shardThumbnails.resolve("b.jpg"), "b");
+        Files.writeString(shardThumbnails.resolve("c.jpg"), "older c");
+
+        merger = new DatabaseMerger();
+        merger.dataSource = dataSource(ourDatabase);
+    }
+
+    @Test
+    void test__the_newer_entry_of_a_path_is_kept_with_its_tags_matched_by_name() throws Exception {
+        final DatabaseMerger.MergeResult result = merger.merge(shardDatabase, shardThumbnails, ourThumbnails);
+
+        assertEquals(2, result.imagesAdded());
+        assertEquals(1, result.imagesReplaced());
+        assertEquals(1, result.imagesKept());
+        assertEquals(1, result.tagsAdded());
+        assertEquals(2, result.thumbnailsCopied());
+        assertEquals(0, result.thumbnailsMissing());
+
+        assertEquals(List.of(
+            "/photos/a.jpg|a newer a|a-new.jpg",
+            "/photos/b.jpg|only in the shard|b.jpg",
+            "/photos/c.jpg|a newer c|c.jpg"), images());
+        assertEquals(List.of(
+            "/photos/a.jpg|bird",
+            "/photos/a.jpg|dog",
+            "/photos/b.jpg|cat",
+            "/photos/c.jpg|dog"), joinRows());
+        assertEquals(List.of("bird", "cat", "dog"), strings("SELECT tag_name FROM tags ORDER BY tag_name"));
+    }
+
+    @Test
+    void test__the_replaced_entry_s_thumbnail_is_deleted_and_the_kept_one_s_is_not_overwritten() throws Exception {
+        final DatabaseMerger.MergeResult result = merger.merge(shardDatabase, shardThumbnails, ourThumbnails);
+
+        assertEquals(1, result.thumbnailsDeleted());
+        assertFalse(Files.exists(ourThumbnails.resolve("a-old.jpg")));
+        assertEquals("new a", Files.readString(ourThumbnails.resolve("a-new.jpg")));
+        assertEquals("newer c", Files.readString(ourThumbnails.resolve("c.jpg")));
+    }
+
+    @Test
+    void test__merging_the_same_database_again_changes_nothing() throws Exception {
+        merger.merge(shardDatabase, shardThumbnails, ourThumbnails);
+        final List<String> images = images();
+        final List<String> joinRows = joinRows();
+        final List<String> tagIds = strings("SELECT id || '|' || tag_name FROM tags ORDER BY id");
+
+        final DatabaseMerger.MergeResult result = merger.merge(shardDatabase, shardThumbnails, ourThumbnails);
+
+        assertEquals(0, result.imagesAdded());
+        assertEquals(0, result.imagesReplaced());
+        assertEquals(3, result.imagesKept());
+        assertEquals(0, result.tagsAdded());
+        assertEquals(0, result.thumbnailsCopied());
+        assertEquals(0, result.thumbnailsDeleted());
+        assertEquals(images, images());
+        assertEquals(joinRows, joinRows());
+        assertEquals(tagIds, strings("SELECT id || '|' || tag_name FROM tags ORDER BY id"));
+        assertTrue(Files.exists(ourThumbnails.resolve("a-new.jpg")));
+    }
+
+    private List<String> images() throws SQLException {
+        return strings("SELECT full_path || '|' || description || '|' || thumb_nail_name FROM image_info ORDER BY full_path");
+    }
+
+    private List<String> joinRows() throws SQLException {
+        return strings("SELECT i.full_path || '|' || t.tag_name FROM image_info_tag_join j " +
+            "JOIN image_info i ON i.id = j.image_info_id JOIN tags t ON t.id = j.tag_id ORDER BY 1");
+    }
+
+    private List<String> strings(final String sql) throws SQLException {
+        final List<String> values = new ArrayList<>();
+        try (Connection connection = merger.dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet results = statement.executeQuery(sql)) {
+            while (results.next()) {
+                values.add(results.getString(1));
+            }
+        }
+        return values;
+    }
+
+    private static String image(
+        final String id,
+        final String fullPath,
+        final String description,
+        final String thumbnail,
+        final String updatedAt
+    ) {
+        return ("INSERT INTO image_info (id, full_path, description, thumb_nail_name, created_at, updated_at) " +
+            "VALUES (X'%s', '%s', '%s', '%s', '2026-01-01', '%s')").formatted(id, fullPath, description, thumbnail, updatedAt);
+    }
+
+    /**
+     * Creates the database at the current schema and runs the statements against it.
+     */
+    private static void execute(final Path database, final String... statements) throws Exception {
+        Files.createDirectories(database.getParent());
+        final SQLiteDataSource dataSource = dataSource(database);
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration").load().migrate();
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            for (final String sql : statements) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    private static SQLiteDataSource dataSource(final Path database) {
+        final SQLiteDataSource dataSource = new SQLiteDataSource();
+        dataSource.setUrl("jdbc:sqlite:" + database);
+        return dataSource;
+    }
+}
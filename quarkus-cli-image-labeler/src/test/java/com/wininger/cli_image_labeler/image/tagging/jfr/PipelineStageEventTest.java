@@ -0,0 +1,74 @@
+package com.wininger.cli_image_labeler.image.tagging.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Tests for the labeler's flight recorder events.
+ */
+public class PipelineStageEventTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void test__a_stage_is_recorded_with_its_image_dimensions_bytes_and_duration() throws Exception {
+        final List<RecordedEvent> events = record(() ->
+            PipelineStageEvent.begin("encode", "/images/cat.jpg").dimensions(640, 480).bytes(12_345).model("m").finish());
+
+        assertEquals(1, events.size());
+        final RecordedEvent event = events.get(0);
+        assertEquals("encode", event.getString("stage"));
+        assertEquals("/images/cat.jpg", event.getString("imagePath"));
+        assertEquals(640, event.getInt("width"));
+        assertEquals(480, event.getInt("height"));
+        assertEquals(12_345, event.getLong("bytes"));
+        assertEquals("m", event.getString("model"));
+        assertTrue(!event.getDuration().isNegative());
+    }
+
+    @Test
+    void test__the_stages_of_an_image_are_recorded_inside_its_label_event() throws Exception {
+        final List<RecordedEvent> events = record(() -> {
+            final ImageLabelEvent labelEvent = ImageLabelEvent.begin("/images/cat.jpg", "balanced");
+            PipelineStageEvent.begin("decode", "/images/cat.jpg").finish();
+            labelEvent.dimensions(4000, 3000).fileBytes(2_000_000).succeeded().finish();
+        });
+
+        assertEquals(2, events.size());
+        final RecordedEvent stage = events.stream()
+            .filter(event -> event.getEventType().getName().equals("com.wininger.imagelabeler.PipelineStage"))
+            .findFirst().orElseThrow();
+        final RecordedEvent image = events.stream()
+            .filter(event -> event.getEventType().getName().equals("com.wininger.imagelabeler.ImageLabel"))
+            .findFirst().orElseThrow();
+
+        assertTrue(!stage.getStartTime().isBefore(image.getStartTime()));
+        assertTrue(!stage.getEndTime().isAfter(image.getEndTime()));
+        assertEquals(4000, image.getInt("width"));
+        assertEquals(2_000_000, image.getLong("fileBytes"));
+        assertTrue(image.getBoolean("succeeded"));
+    }
+
+    private List<RecordedEvent> record(final Runnable emitEvents) throws Exception {
+        final Path file = tempDir.resolve("test.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(PipelineStageEvent.class);
+            recording.enable(ImageLabelEvent.class);
+            recording.start();
+            emitEvents.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file);
+    }
+}
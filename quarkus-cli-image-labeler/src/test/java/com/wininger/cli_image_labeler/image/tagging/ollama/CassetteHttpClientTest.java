@@ -0,0 +1,134 @@
+package com.wininger.cli_image_labeler.image.tagging.ollama;
+
+import com.wininger.cli_image_labeler.image.tagging.exceptions.MissingCassetteException;
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpMethod;
+import dev.langchain4j.http.client.HttpRequest;
+import dev.langchain4j.http.client.SuccessfulHttpResponse;
+import dev.langchain4j.http.client.sse.ServerSentEventListener;
+import dev.langchain4j.http.client.sse.ServerSentEventParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for CassetteHttpClient.
+ */
+public class CassetteHttpClientTest {
+
+    @TempDir
+    Path cassettes;
+
+    private final CountingHttpClient model = new CountingHttpClient();
+
+    @Test
+    void test__a_recorded_response_is_replayed_without_calling_the_model() {
+        new CassetteHttpClient(model, CassetteHttpClient.Mode.RECORD, cassettes).execute(chatRequest("a dog"));
+
+        final SuccessfulHttpResponse replayed = new CassetteHttpClient(failingHttpClient(), CassetteHttpClient.Mode.REPLAY, cassettes)
+            .execute(chatRequest("a dog"));
+
+        assertEquals(200, replayed.statusCode());
+        assertEquals("response 1", replayed.body());
+        assertEquals(List.of("application/json"), replayed.headers().get("Content-Type"));
+        assertEquals(1, model.requests.get());
+    }
+
+    @Test
+    void test__replay_fails_when_there_is_no_cassette_for_the_request() {
+        new CassetteHttpClient(model, CassetteHttpClient.Mode.RECORD, cassettes).execute(chatRequest("a dog"));
+
+        final CassetteHttpClient replay = new CassetteHttpClient(failingHttpClient(), CassetteHttpClient.Mode.REPLAY, cassettes);
+
+        assertThrows(MissingCassetteException.class, () -> replay.execute(chatRequest("a cat")));
+    }
+
+    @Test
+    void test__auto_replays_cassettes_and_calls_the_model_for_requests_without_one() {
+        new CassetteHttpClient(model, CassetteHttpClient.Mode.RECORD, cassettes).execute(chatRequest("a dog"));
+        final CassetteHttpClient auto = new CassetteHttpClient(model, CassetteHttpClient.Mode.AUTO, cassettes);
+
+        assertEquals("response 1", auto.execute(chatRequest("a dog")).body());
+        assertEquals("response 2", auto.execute(chatRequest("a cat")).body());
+
+        assertEquals(2, model.requests.get());
+    }
+
+    @Test
+    void test__only_record_writes_cassettes() throws Exception {
+        final CassetteHttpClient auto = new CassetteHttpClient(model, CassetteHttpClient.Mode.AUTO, cassettes);
+        auto.execute(chatRequest("a dog"));
+        auto.execute(chatRequest("a dog"));
+
+        assertEquals(2, model.requests.get());
+        try (var files = Files.list(cassettes)) {
+            assertEquals(0, files.count());
+        }
+
+        new CassetteHttpClient(model, CassetteHttpClient.Mode.RECORD, cassettes).execute(chatRequest("a dog"));
+        try (var files = Files.list(cassettes)) {
+            // no temporary files left behind
+            assertEquals(1, files.filter(path -> path.toString().endsWith(".json")).count());
+        }
+    }
+
+    @Test
+    void test__record_re_records_existing_cassettes() {
+        final CassetteHttpClient record = new CassetteHttpClient(model, CassetteHttpClient.Mode.RECORD, cassettes);
+        record.execute(chatRequest("a dog"));
+        record.execute(chatRequest("a dog"));
+
+        final SuccessfulHttpResponse replayed = new CassetteHttpClient(failingHttpClient(), CassetteHttpClient.Mode.REPLAY, cassettes)
+            .execute(chatRequest("a dog"));
+
+        assertEquals("response 2", replayed.body());
+    }
+
+    private static HttpRequest chatRequest(final String prompt) {
+        return HttpRequest.builder()
+            .method(HttpMethod.POST)
+            .url(OllamaEndpointPool.POOL_BASE_URL, "api/chat")
+            .addHeader("Content-Type", "application/json")
+            .body("{\"model\":\"stub\",\"prompt\":\"" + prompt + "\"}")
+            .build();
+    }
+
+    private static HttpClient failingHttpClient() {
+        return new CountingHttpClient() {
+            @Override
+            public SuccessfulHttpResponse execute(final HttpRequest request) {
+                throw new AssertionError("The model should not have been called");
+            }
+        };
+    }
+
+    /**
+     * Stands in for the model, numbers its responses so tests can tell which request a response came from.
+     */
+    private static class CountingHttpClient implements HttpClient {
+        final AtomicInteger requests = new AtomicInteger();
+
+        @Override
+        public SuccessfulHttpResponse execute(final HttpRequest request) {
+            return SuccessfulHttpResponse.builder()
+                .statusCode(200)
+                .headers(Map.of("Content-Type", List.of("application/json")))
+                .body("response " + requests.incrementAndGet())
+                .build();
+        }
+
+        @Override
+        public void execute(final HttpRequest request, final ServerSentEventParser parser,
+                            final ServerSentEventListener listener) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.wininger.cli_image_labeler.image.tagging.ollama;
+
+import com.wininger.cli_image_labeler.image.tagging.dto.model_responses.ImageInfoBatchFromDescriptionsModelResponse;
+import com.wininger.cli_image_labeler.image.tagging.dto.model_responses.ImageInfoFromDescriptionModelResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.model.chat.request.ResponseFormat;
+import dev.langchain4j.model.chat.request.ResponseFormatType;
+import dev.langchain4j.model.ollama.OllamaChatModel;
+import dev.langchain4j.service.output.JsonSchemas;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Tests for FakeOllamaHttpClient, driven through a real OllamaChatModel so the responses are checked against what
+ * langchain4j actually expects from Ollama.
+ */
+public class FakeOllamaHttpClientTest {
+
+    private final FakeOllamaHttpClient fake =
+        new FakeOllamaHttpClient(Duration.ofMillis(1), Duration.ofMillis(1), 0, 0, 0);
+
+    @Test
+    void test__structured_requests_get_a_schema_valid_image_info() throws Exception {
+        final OllamaChatModel model = model()
+            .responseFormat(ResponseFormat.builder()
+                .type(ResponseFormatType.JSON)
+                .jsonSchema(JsonSchemas.jsonSchemaFrom(ImageInfoFromDescriptionModelResponse.class).get())
+                .build())
+            .build();
+
+        final String json = model.chat("A red dog in a park. The image does not contain any readable text.");
+        final ImageInfoFromDescriptionModelResponse imageInfo =
+            new ObjectMapper().readValue(json, ImageInfoFromDescriptionModelResponse.class);
+
+        assertFalse(imageInfo.tags().isEmpty());
+        assertNotNull(imageInfo.fullDescription());
+        assertNotNull(imageInfo.shortTitle());
+        assertNotNull(imageInfo.doesContainText());
+        assertFalse(imageInfo.hasText());
+    }
+
+    @Test
+    void test__batched_requests_get_one_image_info_per_numbered_description() throws Exception {
+        final OllamaChatModel model = model()
+            .responseFormat(ResponseFormat.builder()
+                .type(ResponseFormatType.JSON)
+                .jsonSchema(JsonSchemas.jsonSchemaFrom(ImageInfoBatchFromDescriptionsModelResponse.class).get())
+                .build())
+            .build();
+
+        final String json = model.chat("""
+            Image descriptions:
+            ======
+            Image 1:
+            A red dog in a park. The image does not contain any readable text.
+            ======
+            Image 2:
+            A shop front. The image contains readable text, a sign which reads "Open".
+            ======""");
+        final ImageInfoBatchFromDescriptionsModelResponse batch =
+            new ObjectMapper().readValue(json, ImageInfoBatchFromDescriptionsModelResponse.class);
+
+        assertEquals(2, batch.images().size());
+        assertEquals(1, batch.images().get(0).imageNumber());
+        assertFalse(batch.images().get(0).hasText());
+        assertEquals(2, batch.images().get(1).imageNumber());
+        assertTrue(batch.images().get(1).hasText());
+    }
+
+    @Test
+    void test__the_same_request_always_gets_the_same_response() {
+        final OllamaChatModel model = model().build();
+
+        assertEquals(model.chat("describe this image"), model.chat("describe this image"));
+    }
+
+    @Test
+    void test__models_with_one_slot_each_only_overlap_with_other_models() throws Exception {
+        final FakeOllamaHttpClient oneSlotPerModel =
+            new FakeOllamaHttpClient(Duration.ofMillis(300), Duration.ofMillis(300), 0, 0, 1);
+
+        final long sameModelMillis = timeConcurrently(
+            model(oneSlotPerModel, "vision").build(), model(oneSlotPerModel, "vision").build());
+        final long differentModelsMillis = timeConcurrently(
+            model(oneSlotPerModel, "vision").build(), model(oneSlotPerModel, "text").build());
+
+        assertTrue(sameModelMillis >= 600, "requests for the same model should queue, took " + sameModelMillis + "ms");
+        assertTrue(differentModelsMillis < 600, "different models should overlap, took " + differentModelsMillis + "ms");
+    }
+
+    private static long timeConcurrently(final OllamaChatModel first, final OllamaChatModel second) throws Exception {
+        final long startTime = System.currentTimeMillis();
+        final CompletableFuture<String> firstResponse = CompletableFuture.supplyAsync(() -> first.chat("one"));
+        final CompletableFuture<String> secondResponse = CompletableFuture.supplyAsync(() -> second.chat("two"));
+        CompletableFuture.allOf(firstResponse, secondResponse).get();
+        return System.currentTimeMillis() - startTime;
+    }
+
+    private OllamaChatModel.OllamaChatModelBuilder model() {
+        return model(fake, "fake");
+    }
+
+    private static OllamaChatModel.OllamaChatModelBuilder model(final FakeOllamaHttpClient backend, final String modelName) {
+        return OllamaChatModel.builder()
+            .httpClientBuilder(new SharedHttpClientBuilder(backend, Duration.ofSeconds(1), Duration.ofSeconds(1)))
+            .baseUrl(OllamaEndpointPool.POOL_BASE_URL)
+            .modelName(modelName);
+    }
+}
@@ -0,0 +1,160 @@
+package com.wininger.cli_image_labeler.image.tagging.ollama;
+
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpMethod;
+import dev.langchain4j.http.client.HttpRequest;
+import dev.langchain4j.http.client.SuccessfulHttpResponse;
+import dev.langchain4j.http.client.sse.ServerSentEventListener;
+import dev.langchain4j.http.client.sse.ServerSentEventParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for HedgingHttpClient, against a stub in place of the http client so no server is needed.
+ */
+public class HedgingHttpClientTest {
+
+    private static final String FIRST = "http://first-ollama/";
+    private static final String SECOND = "http://second-ollama/";
+
+    private final StubHttpClient stub = new StubHttpClient();
+    private OllamaEndpointPool pool;
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    void test__a_slow_primary_loses_to_a_hedge_on_another_endpoint() {
+        final HedgingHttpClient client = newClient(List.of(new OllamaEndpoint(FIRST, 2), new OllamaEndpoint(SECOND, 2)), 0.5);
+        warmUp(client);
+
+        // the primary goes to the first endpoint, which now hangs
+        stub.slowMillis.put(FIRST, 10_000L);
+        final long startTime = System.currentTimeMillis();
+        assertEquals("answered by " + SECOND, client.execute(chatRequest()).body());
+
+        assertTrue(System.currentTimeMillis() - startTime < 5000, "straggler was not hedged");
+        assertEquals(1, client.hedgesSent());
+        assertEquals(1, client.hedgesWon());
+        assertEquals(1, stub.requests(SECOND));
+    }
+
+    @Test
+    void test__hedges_stop_once_the_budget_is_used_up() throws Exception {
+        final HedgingHttpClient client = newClient(List.of(new OllamaEndpoint(FIRST, 2), new OllamaEndpoint(SECOND, 2)), 0.1);
+        warmUp(client);
+        stub.slowMillis.put(FIRST, 300L);
+
+        // 6 requests so far allow 0.6 hedges, so this one is hedged
+        client.execute(chatRequest());
+        assertEquals(1, client.hedgesSent());
+        waitForIdle();
+
+        // 7 requests allow 0.7, this one has to wait for the slow endpoint
+        final long startTime = System.currentTimeMillis();
+        assertEquals("answered by " + FIRST, client.execute(chatRequest()).body());
+
+        assertTrue(System.currentTimeMillis() - startTime >= 300, "request should not have been hedged");
+        assertEquals(1, client.hedgesSent());
+    }
+
+    @Test
+    void test__no_hedge_is_sent_when_the_pool_has_no_free_slot() {
+        final HedgingHttpClient client = newClient(List.of(new OllamaEndpoint(FIRST, 1)), 0.5);
+        warmUp(client);
+        stub.slowMillis.put(FIRST, 300L);
+
+        assertEquals("answered by " + FIRST, client.execute(chatRequest()).body());
+
+        assertEquals(0, client.hedgesSent());
+        assertEquals(6, stub.requests(FIRST));
+    }
+
+    private HedgingHttpClient newClient(final List<OllamaEndpoint> endpoints, final double budget) {
+        pool = new OllamaEndpointPool(endpoints, Duration.ofMinutes(1), Duration.ofSeconds(5));
+        return new HedgingHttpClient(new LoadBalancingHttpClient(stub, pool), pool, 0.95, 5, budget);
+    }
+
+    /**
+     * Fills the latency window with fast requests, all of which go to the first endpoint.
+     */
+    private static void warmUp(final HedgingHttpClient client) {
+        for (int i = 0; i < 5; i++) {
+            client.execute(chatRequest());
+        }
+    }
+
+    /**
+     * Waits for the cancelled loser of the last hedge to give back its slot.
+     */
+    private void waitForIdle() throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (stub.inFlight.get() > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("The cancelled request never finished");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static HttpRequest chatRequest() {
+        return HttpRequest.builder()
+            .method(HttpMethod.POST)
+            .url(OllamaEndpointPool.POOL_BASE_URL, "api/chat")
+            .addHeader("Content-Type", "application/json")
+            .body("{\"model\":\"stub\"}")
+            .build();
+    }
+
+    /**
+     * Answers after 5 ms, or however long slowMillis says for the endpoint the request was routed to, and says which
+     * endpoint answered. Gives up (as the real client does) when its thread is interrupted.
+     */
+    private static class StubHttpClient implements HttpClient {
+        final Map<String, Long> slowMillis = new ConcurrentHashMap<>();
+        final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        int requests(final String baseUrl) {
+            return requests.getOrDefault(baseUrl, new AtomicInteger()).get();
+        }
+
+        @Override
+        public SuccessfulHttpResponse execute(final HttpRequest request) {
+            final String baseUrl = request.url().substring(0, request.url().indexOf("api/"));
+            requests.computeIfAbsent(baseUrl, url -> new AtomicInteger()).incrementAndGet();
+            inFlight.incrementAndGet();
+            try {
+                Thread.sleep(slowMillis.getOrDefault(baseUrl, 5L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Request to " + baseUrl + " was cancelled", e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            return SuccessfulHttpResponse.builder()
+                .statusCode(200)
+                .body("answered by " + baseUrl)
+                .build();
+        }
+
+        @Override
+        public void execute(final HttpRequest request, final ServerSentEventParser parser,
+                            final ServerSentEventListener listener) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.wininger.cli_image_labeler.image.tagging.ollama;
+
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.http.client.HttpMethod;
+import dev.langchain4j.http.client.HttpRequest;
+import dev.langchain4j.http.client.jdk.JdkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Tests for OllamaEndpointPool, LoadBalancingHttpClient and HedgingHttpClient.
+ *
+ * These run against stub HTTP servers standing in for Ollama, no real Ollama instance is needed.
+ */
+public class OllamaEndpointPoolTest {
+
+    private final List<StubOllama> stubs = new ArrayList<>();
+    private OllamaEndpointPool pool;
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+        stubs.forEach(StubOllama::stop);
+    }
+
+    @Test
+    void test__requests_are_spread_across_endpoints_within_their_limits() throws Exception {
+        final StubOllama first = startStub(freePort(), 200);
+        final StubOllama second = startStub(freePort(), 200);
+        pool = new OllamaEndpointPool(
+            List.of(new OllamaEndpoint(first.baseUrl(), 2), new OllamaEndpoint(second.baseUrl(), 2)),
+            Duration.ofMinutes(1),
+            Duration.ofSeconds(5));
+        final LoadBalancingHttpClient client = newClient(pool);
+
+        final ExecutorService workers = Executors.newFixedThreadPool(6);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                futures.add(workers.submit(() -> client.execute(chatRequest())));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            workers.shutdown();
+        }
+
+        // the first four fill both endpoints, the last two go wherever a slot frees up first
+        assertEquals(6, first.requests.get() + second.requests.get());
+        assertTrue(first.requests.get() >= 2, "first endpoint only got " + first.requests.get());
+        assertTrue(second.requests.get() >= 2, "second endpoint only got " + second.requests.get());
+        assertTrue(first.maxInFlight.get() <= 2, "first endpoint exceeded its limit: " + first.maxInFlight.get());
+        assertTrue(second.maxInFlight.get() <= 2, "second endpoint exceeded its limit: " + second.maxInFlight.get());
+    }
+
+    @Test
+    void test__a_dead_endpoint_is_ejected_and_the_request_is_retried_on_another() {
+        final int deadPort = freePort();
+        final StubOllama alive = startStub(freePort(), 0);
+        pool = new OllamaEndpointPool(
+            List.of(new OllamaEndpoint("http://localhost:%d/".formatted(deadPort), 1),
+                new OllamaEndpoint(alive.baseUrl(), 1)),
+            Duration.ofMinutes(1),
+            Duration.ofSeconds(5));
+
+        final String body = newClient(pool).execute(chatRequest()).body();
+
+        assertEquals(StubOllama.CHAT_RESPONSE, body);
+        assertEquals(1, alive.requests.get());
+        assertFalse(pool.endpoints().get(0).isHealthy(), "dead endpoint should have been ejected");
+        assertTrue(pool.endpoints().get(1).isHealthy());
+    }
+
+    @Test
+    void test__health_checks_eject_and_readmit_an_endpoint() throws Exception {
+        final int port = freePort();
+        pool = new OllamaEndpointPool(
+            List.of(new OllamaEndpoint("http://localhost:%d/".formatted(port), 1)),
+            Duration.ofMillis(100),
+            Duration.ofSeconds(5));
+        final OllamaEndpoint endpoint = pool.endpoints().get(0);
+
+        waitFor(() -> !endpoint.isHealthy());
+
+        startStub(port, 0);
+        waitFor(endpoint::isHealthy);
+    }
+
+    @Test
+    void test__a_straggling_request_is_hedged_and_the_faster_response_wins() {
+        // every request is fast except the 11th, which would hang for 10 seconds
+        final StubOllama stub = startStub(freePort(), requestNumber -> requestNumber == 11 ? 10_000 : 20);
+        pool = new OllamaEndpointPool(
+            List.of(new OllamaEndpoint(stub.baseUrl(), 2)),
+            Duration.ofMinutes(1),
+            Duration.ofSeconds(5));
+        final HedgingHttpClient client = new HedgingHttpClient(newClient(pool), pool, 0.95, 10, 0.5);
+
+        for (int i = 0; i < 10; i++) {
+            client.execute(chatRequest());
+        }
+
+        final long startTime = System.currentTimeMillis();
+        assertEquals(StubOllama.CHAT_RESPONSE, client.execute(chatRequest()).body());
+
+        assertTrue(System.currentTimeMillis() - startTime < 5000, "straggler was not hedged");
+        assertEquals(12, stub.requests.get());
+    }
+
+    private LoadBalancingHttpClient newClient(final OllamaEndpointPool pool) {
+        return new LoadBalancingHttpClient(
+            JdkHttpClient.builder()
+                .connectTimeout(Duration.ofSeconds(2))
+                .readTimeout(Duration.ofSeconds(5))
+                .build(),
+            pool);
+    }
+
+    private HttpRequest chatRequest() {
+        return HttpRequest.builder()
+            .method(HttpMethod.POST)
+            .url(OllamaEndpointPool.POOL_BASE_URL, "api/chat")
+            .addHeader("Content-Type", "application/json")
+            .body("{\"model\":\"stub\"}")
+            .build();
+    }
+
+    private StubOllama startStub(final int port, final long responseDelayMillis) {
+        return startStub(port, requestNumber -> responseDelayMillis);
+    }
+
+    private StubOllama startStub(final int port, final IntToLongFunction responseDelayMillis) {
+        final StubOllama stub = new StubOllama(port, responseDelayMillis);
+        stubs.add(stub);
+        return stub;
+    }
+
+    private static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void waitFor(final java.util.function.BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Condition was not met within 5 seconds");
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * Just enough of Ollama's api to be routed to, counts requests and the most it had in flight at once.
+     */
+    private static class StubOllama {
+        static final String CHAT_RESPONSE = "{\"done\":true}";
+
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        private final HttpServer server;
+
+        StubOllama(final int port, final IntToLongFunction responseDelayMillis) {
+            try {
+                server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.createContext("/api/version", exchange -> respond(exchange, "{\"version\":\"stub\"}"));
+            server.createContext("/api/chat", exchange -> {
+                final int requestNumber = requests.incrementAndGet();
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(responseDelayMillis.applyAsLong(requestNumber));
+                    respond(exchange, CHAT_RESPONSE);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            });
+            server.start();
+        }
+
+        String baseUrl() {
+            return "http://localhost:%d/".formatted(server.getAddress().getPort());
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+
+        private static void respond(final com.sun.net.httpserver.HttpExchange exchange, final String body)
+            throws IOException {
+            final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+}
@@ -3,8 +3,8 @@ package com.wininger.cli_image_labeler.image.tagging.services;
 import com.wininger.cli_image_labeler.image.tagging.dto.ImageInfo;
 import io.quarkus.test.junit.QuarkusTest;
 import jakarta.inject.Inject;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
-import org.junitpioneer.jupiter.RetryingTest;
 
 import static com.wininger.cli_image_labeler.image.tagging.utils.PrintUtils.printImageInfoResults;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -17,9 +17,12 @@ import java.util.List;
 /**
  * Integration tests for ImageInfoService.
  *
- * These tests require a running Ollama instance with the required models:
+ * The model responses are replayed from the cassettes in src/test/resources/cassettes, so Ollama isn't needed (see
+ * il.ollama.cassette.mode in the test application.properties). Re-recording them, after changing a prompt, a model or
+ * a test image, takes a running Ollama instance with the required models:
  * - gemma3:4b (for image tagging and description)
- * - deepseek-ocr:3b (for OCR on text-heavy images)
+ * - nomic-embed-text (for comparing the results with the expected ones)
+ * and IL_OLLAMA_CASSETTE_MODE=record, see the README.
  *
  * Since LLM outputs are non-deterministic, future assertions will use
  * cosine similarity to compare against expected baseline outputs rather
@@ -38,7 +41,7 @@ public class ImageInfoServiceTest {
     private static final double SIMILARITY_THRESHOLD_RELAXED = 0.65;
 
     // passing 10/10
-    @RetryingTest(2)
+    @Test
     void test__a_middle_aged_man_having_a_beer() throws IOException {
         final String expectedDescription =
             "The image depicts a middle-aged man enjoying a beer in a relaxed outdoor setting, likely a park or garden. " +
@@ -79,7 +82,7 @@ public class ImageInfoServiceTest {
     }
 
     // passing 9/10, still slight issue with isText
-    @RetryingTest(2)
+    @Test
     void test__the_same_middle_aged_man_having_a_beer_from_a_different_perspective() throws IOException {
         final String expectedDescription =
             "The image depicts a middle-aged man enjoying a beer in a relaxed outdoor setting, likely a park or garden. " +
@@ -120,7 +123,7 @@ public class ImageInfoServiceTest {
     }
 
     // passing 10/10
-    @RetryingTest(2)
+    @Test
     void test__a_roaring_fire_pit() throws IOException {
         final String expectedDescription =
             "A dark outdoor scene featuring a fire pit with a burning fire and a decorative metal fence " +
@@ -157,7 +160,8 @@ public class ImageInfoServiceTest {
     }
 
     // passing 10/10
-    @RetryingTest(2)
+    @Test
+    @Disabled("24-10-29 09-02-52 8203.jpg is missing from src/test/resources/test-images")
     void test__a_moulting_chicken() throws IOException {
         final String expectedDescription =
             "A single, striking chicken with black and white feathered plumage and a bright red comb, is " +
@@ -180,7 +184,7 @@ public class ImageInfoServiceTest {
     }
 
     // passing 10/10
-    @RetryingTest(2)
+    @Test
     void test__a_closeup_road_island_red_says_hello_to_the_camera() throws IOException {
         final String expectedDescription =
             "A single, striking chicken with black and white feathered plumage and a bright red comb, is standing on a " +
@@ -223,7 +227,7 @@ public class ImageInfoServiceTest {
     }
 
     // passing 10/10
-    @RetryingTest(2)
+    @Test
     void test__a_screenshot_from_a_book_discussing_distance_of_vectors() throws IOException {
         final String expectedDescription =
             "The image shows a snippet of Java code within a code editor or IDE window. The code appears to be related " +
@@ -268,7 +272,7 @@ public class ImageInfoServiceTest {
     }
 
     // passing 10/10
-    @RetryingTest(2)
+    @Test
     void test__a_screenshot_from_a_book_discussing_vector_stores() throws IOException {
         final String expectedDescription =
             "This infographic visually compares and contrasts three word embedding models: Word2Vec, GloVe, " +
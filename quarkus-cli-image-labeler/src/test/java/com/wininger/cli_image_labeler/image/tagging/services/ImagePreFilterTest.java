@@ -0,0 +1,98 @@
+package com.wininger.cli_image_labeler.image.tagging.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+/**
+ * Tests for ImagePreFilter, with small generated images for the ones which should be skipped and the test images for
+ * the ones which shouldn't.
+ */
+public class ImagePreFilterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final ImagePreFilter defaults = new ImagePreFilter(true, 16384, 10, 2048, Optional.empty());
+
+    @Test
+    void test__photos_are_not_skipped() throws IOException {
+        assertEquals(Optional.empty(),
+            defaults.reasonToSkip(Paths.get("src/test/resources/test-images/24-10-12 19-44-41 7914.jpg")));
+        assertEquals(Optional.empty(),
+            defaults.reasonToSkip(Paths.get("src/test/resources/test-images/25-12-17 08-38-20 3818.png")));
+    }
+
+    @Test
+    void test__tiny_files_are_skipped() throws IOException {
+        final Path spacer = writeImage("spacer.gif", "gif", 1, 1);
+
+        assertTrue(defaults.reasonToSkip(spacer).orElseThrow().contains("bytes"));
+    }
+
+    @Test
+    void test__images_with_too_few_pixels_are_skipped() throws IOException {
+        final ImagePreFilter noMinimumSize = new ImagePreFilter(true, 16384, 10, 0, Optional.empty());
+        final Path icon = writeImage("icon.png", "png", 64, 64);
+
+        assertEquals("64x64 is under 16384 pixels", noMinimumSize.reasonToSkip(icon).orElseThrow());
+    }
+
+    @Test
+    void test__banners_are_skipped() throws IOException {
+        final ImagePreFilter noMinimumSize = new ImagePreFilter(true, 0, 10, 0, Optional.empty());
+        final Path banner = writeImage("banner.png", "png", 1200, 60);
+
+        assertEquals("1200x60 is wider than 10:1", noMinimumSize.reasonToSkip(banner).orElseThrow());
+    }
+
+    @Test
+    void test__paths_matching_an_exclude_glob_are_skipped() throws IOException {
+        final ImagePreFilter excludeThumbnails =
+            new ImagePreFilter(true, 0, 10, 0, Optional.of(List.of("**/.thumbnails/**")));
+        final Path thumbnail = Files.createDirectories(tempDir.resolve(".thumbnails")).resolve("thumb.png");
+        writeImage(thumbnail, "png", 200, 200);
+
+        assertEquals("path matches **/.thumbnails/**", excludeThumbnails.reasonToSkip(thumbnail).orElseThrow());
+        assertFalse(excludeThumbnails.reasonToSkip(writeImage("photo.png", "png", 200, 200)).isPresent());
+    }
+
+    @Test
+    void test__nothing_is_skipped_when_disabled() throws IOException {
+        final ImagePreFilter disabled = new ImagePreFilter(false, 16384, 10, 2048, Optional.empty());
+
+        assertEquals(Optional.empty(), disabled.reasonToSkip(writeImage("spacer.gif", "gif", 1, 1)));
+    }
+
+    private Path writeImage(final String fileName, final String format, final int width, final int height)
+        throws IOException {
+        return writeImage(tempDir.resolve(fileName), format, width, height);
+    }
+
+    private static Path writeImage(final Path path, final String format, final int width, final int height)
+        throws IOException {
+        // noise, so the files aren't compressed down to nothing
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Random random = new Random(width * 31L + height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt(0xffffff));
+            }
+        }
+        ImageIO.write(image, format, path.toFile());
+        return path;
+    }
+}
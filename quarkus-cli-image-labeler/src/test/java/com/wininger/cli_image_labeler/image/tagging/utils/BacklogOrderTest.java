@@ -0,0 +1,68 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for BacklogOrder.
+ */
+public class BacklogOrderTest {
+
+    private static final long HOUR = Duration.ofHours(1).toMillis();
+
+    @Test
+    void test__newest_first_keeps_the_walk_order_for_ties() {
+        final Map<Path, Long> takenAt = Map.of(
+            Path.of("a.jpg"), 1L, Path.of("b.jpg"), 3L, Path.of("c.jpg"), 2L, Path.of("d.jpg"), 3L);
+
+        final List<Path> ordered = BacklogOrder.newestFirst(
+            List.of(Path.of("a.jpg"), Path.of("b.jpg"), Path.of("c.jpg"), Path.of("d.jpg")), takenAt::get);
+
+        assertEquals(List.of(Path.of("b.jpg"), Path.of("d.jpg"), Path.of("c.jpg"), Path.of("a.jpg")), ordered);
+    }
+
+    @Test
+    void test__interleave_takes_one_image_from_each_directory_in_turn() {
+        final List<Path> walked = List.of(
+            Path.of("2019/a.jpg"), Path.of("2019/b.jpg"), Path.of("2019/c.jpg"),
+            Path.of("2020/d.jpg"),
+            Path.of("2021/e.jpg"), Path.of("2021/f.jpg"));
+
+        final List<Path> ordered = BacklogOrder.interleaveDirectories(walked);
+
+        assertEquals(List.of(
+            Path.of("2019/a.jpg"), Path.of("2020/d.jpg"), Path.of("2021/e.jpg"),
+            Path.of("2019/b.jpg"), Path.of("2021/f.jpg"),
+            Path.of("2019/c.jpg")), ordered);
+    }
+
+    @Test
+    void test__spread_labels_one_image_per_cluster_newest_cluster_first_then_fills_in() {
+        // two outings, a day apart, found in walk order
+        final Map<Path, Long> takenAt = Map.of(
+            Path.of("a1.jpg"), 0L, Path.of("a2.jpg"), HOUR, Path.of("a3.jpg"), 2 * HOUR,
+            Path.of("b1.jpg"), 24 * HOUR, Path.of("b2.jpg"), 25 * HOUR);
+        final List<Path> walked = List.of(
+            Path.of("b2.jpg"), Path.of("a1.jpg"), Path.of("a3.jpg"), Path.of("b1.jpg"), Path.of("a2.jpg"));
+
+        final List<Path> ordered = BacklogOrder.spreadOverTime(walked, takenAt::get, Duration.ofHours(6));
+
+        assertEquals(List.of(
+            Path.of("b2.jpg"), Path.of("a2.jpg"),
+            Path.of("b1.jpg"), Path.of("a1.jpg"),
+            Path.of("a3.jpg")), ordered);
+    }
+
+    @Test
+    void test__bisection_order_takes_the_middle_then_the_middles_of_each_half() {
+        assertEquals(List.of(4, 2, 7, 1, 3, 6, 8, 0, 5),
+            BacklogOrder.bisectionOrder(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8)));
+        assertEquals(List.of(), BacklogOrder.bisectionOrder(List.of()));
+    }
+}
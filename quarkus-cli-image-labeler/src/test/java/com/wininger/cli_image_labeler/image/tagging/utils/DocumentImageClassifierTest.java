@@ -0,0 +1,47 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import javax.imageio.ImageIO;
+
+/**
+ * Tests for DocumentImageClassifier against the test images, the book screenshots should be read as documents and
+ * none of the photos should be, at the default threshold (il.document-routing.threshold).
+ */
+public class DocumentImageClassifierTest {
+
+    private static final double DEFAULT_THRESHOLD = 0.8;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"25-12-17 08-38-20 3818.png", "25-12-17 08-50-55 3819.png"})
+    void test__book_screenshots_are_documents(final String imageName) throws IOException {
+        final DocumentImageClassifier.Classification classification = classify(imageName);
+
+        assertTrue(classification.isDocument(DEFAULT_THRESHOLD), classification.toString());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "24-10-12 19-44-41 7914.jpg",
+        "24-10-13 14-43-43 2024.jpg",
+        "24-10-13 14-43-56 2024.jpg",
+        "24-10-27 18-43-54 8184.jpg",
+        "24-12-04 15-22-46 8617.jpg"
+    })
+    void test__photos_are_not_documents(final String imageName) throws IOException {
+        final DocumentImageClassifier.Classification classification = classify(imageName);
+
+        assertFalse(classification.isDocument(DEFAULT_THRESHOLD), classification.toString());
+    }
+
+    private static DocumentImageClassifier.Classification classify(final String imageName) throws IOException {
+        return DocumentImageClassifier.classify(
+            ImageIO.read(Paths.get("src/test/resources/test-images/%s".formatted(imageName)).toFile()));
+    }
+}
@@ -0,0 +1,67 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for EventLog.
+ */
+public class EventLogTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void tearDown() {
+        EventLog.finish();
+    }
+
+    @Test
+    void test__a_run_writes_each_event_as_a_json_line() throws Exception {
+        final Path logFile = tempDir.resolve("events.jsonl");
+
+        EventLog.start(2, logFile);
+        EventLog.imageStarted("/images/a.jpg");
+        EventLog.info("/images/a.jpg", "\n=== Processing: /images/a.jpg ===");
+        EventLog.imageFinished("/images/a.jpg", EventLog.Outcome.LABELED, 1200, Map.of("title", "A cat"));
+        EventLog.imageStarted("/images/b.jpg");
+        EventLog.imageFinished("/images/b.jpg", EventLog.Outcome.FAILED, 30, Map.of("error", "boom"));
+        EventLog.finish();
+
+        final List<JsonNode> lines = new ArrayList<>();
+        for (final String line : Files.readAllLines(logFile)) {
+            lines.add(OBJECT_MAPPER.readTree(line));
+        }
+
+        assertEquals(5, lines.size());
+        assertEquals("started", lines.get(0).get("event").asText());
+        assertEquals("/images/a.jpg", lines.get(0).get("image").asText());
+        assertEquals("=== Processing: /images/a.jpg ===", lines.get(1).get("message").asText());
+        assertEquals("labeled", lines.get(2).get("event").asText());
+        assertEquals(1200, lines.get(2).get("millis").asLong());
+        assertEquals("A cat", lines.get(2).get("title").asText());
+        assertEquals("failed", lines.get(4).get("event").asText());
+        assertEquals("boom", lines.get(4).get("error").asText());
+    }
+
+    @Test
+    void test__finishing_ends_the_run() {
+        EventLog.start(0, null);
+        EventLog.finish();
+
+        assertFalse(EventLog.isRunning());
+    }
+}
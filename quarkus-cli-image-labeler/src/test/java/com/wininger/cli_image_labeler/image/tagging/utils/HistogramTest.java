@@ -0,0 +1,64 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for Histogram.
+ */
+public class HistogramTest {
+
+    @Test
+    void test__small_values_are_exact() {
+        final Histogram histogram = new Histogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(100, histogram.count());
+        assertEquals(5050, histogram.sum());
+        assertEquals(50, histogram.valueAtPercentile(0.5));
+        assertEquals(95, histogram.valueAtPercentile(0.95));
+        assertEquals(100, histogram.valueAtPercentile(1));
+        assertEquals(100, histogram.max());
+    }
+
+    @Test
+    void test__percentiles_of_large_values_are_within_two_percent() {
+        final Histogram histogram = new Histogram();
+        // 1ms to 10s in nanos
+        for (long millis = 1; millis <= 10_000; millis++) {
+            histogram.record(millis * 1_000_000);
+        }
+
+        assertWithinTwoPercent(5_000_000_000L, histogram.valueAtPercentile(0.5));
+        assertWithinTwoPercent(9_900_000_000L, histogram.valueAtPercentile(0.99));
+        assertEquals(10_000_000_000L, histogram.max());
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {0, 1, 127, 128, 129, 1_000, 123_456_789, Long.MAX_VALUE / 3, Long.MAX_VALUE})
+    void test__every_value_falls_in_a_bucket_which_covers_it(final long value) {
+        final int bucket = Histogram.bucketOf(value);
+
+        assertTrue(Histogram.highestValueIn(bucket) >= value);
+        assertTrue(bucket == 0 || Histogram.highestValueIn(bucket - 1) < value);
+    }
+
+    @Test
+    void test__an_empty_histogram_reports_zeros() {
+        final Histogram histogram = new Histogram();
+
+        assertEquals(0, histogram.valueAtPercentile(0.5));
+        assertEquals(0, histogram.mean());
+        assertEquals(0, histogram.max());
+    }
+
+    private static void assertWithinTwoPercent(final long expected, final long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected * 0.02, "expected ~" + expected + " but was " + actual);
+    }
+}
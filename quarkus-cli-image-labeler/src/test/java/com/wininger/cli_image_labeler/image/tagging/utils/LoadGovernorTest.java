@@ -0,0 +1,170 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for LoadGovernor.
+ */
+public class LoadGovernorTest {
+
+    private static final LoadGovernor.LoadSample BUSY = new LoadGovernor.LoadSample(0.9, 0.5, 0.5);
+    private static final LoadGovernor.LoadSample LOW_ON_MEMORY = new LoadGovernor.LoadSample(0.05, 0.1, 0.95);
+    private static final LoadGovernor.LoadSample IDLE = new LoadGovernor.LoadSample(0.05, 0.1, 0.3);
+    // under the targets, but not far enough under to raise the limit
+    private static final LoadGovernor.LoadSample NEAR = new LoadGovernor.LoadSample(0.45, 0.1, 0.3);
+
+    @Test
+    void test__a_busy_cpu_narrows_the_cpu_stage_before_the_images() {
+        final LoadGovernor governor = new LoadGovernor(8, LoadGovernor.DEFAULT_TARGETS);
+
+        governor.adjust(BUSY);
+        assertEquals(4, governor.cpuStageLimit());
+        assertEquals(8, governor.limit());
+        governor.adjust(BUSY);
+        governor.adjust(BUSY);
+        assertEquals(1, governor.cpuStageLimit());
+        assertEquals(8, governor.limit());
+
+        governor.adjust(BUSY);
+        assertEquals(4, governor.limit());
+        governor.adjust(BUSY);
+        governor.adjust(BUSY);
+        governor.adjust(BUSY);
+        assertEquals(1, governor.limit());
+        assertEquals(1, governor.cpuStageLimit());
+    }
+
+    @Test
+    void test__memory_pressure_halves_the_images_straight_away() {
+        final LoadGovernor governor = new LoadGovernor(8, LoadGovernor.DEFAULT_TARGETS);
+
+        governor.adjust(LOW_ON_MEMORY);
+
+        assertEquals(4, governor.limit());
+        assertEquals(8, governor.cpuStageLimit());
+    }
+
+    @Test
+    void test__the_limits_ramp_back_up_one_at_a_time_when_idle_up_to_the_maximum() {
+        final LoadGovernor governor = new LoadGovernor(2, LoadGovernor.DEFAULT_TARGETS);
+        governor.adjust(BUSY);
+        governor.adjust(BUSY);
+        assertEquals(1, governor.limit());
+        assertEquals(1, governor.cpuStageLimit());
+
+        for (int i = 0; i < LoadGovernor.CALM_SAMPLES_TO_RAISE - 1; i++) {
+            governor.adjust(IDLE);
+        }
+        assertEquals(1, governor.limit());
+        governor.adjust(IDLE);
+        assertEquals(2, governor.limit());
+        assertEquals(1, governor.cpuStageLimit());
+
+        for (int i = 0; i < LoadGovernor.CALM_SAMPLES_TO_RAISE; i++) {
+            governor.adjust(IDLE);
+        }
+        assertEquals(2, governor.cpuStageLimit());
+
+        for (int i = 0; i < LoadGovernor.CALM_SAMPLES_TO_RAISE * 3; i++) {
+            governor.adjust(IDLE);
+        }
+        assertEquals(2, governor.limit());
+        assertEquals(2, governor.cpuStageLimit());
+    }
+
+    @Test
+    void test__the_limits_hold_just_under_a_target() {
+        final LoadGovernor governor = new LoadGovernor(4, LoadGovernor.DEFAULT_TARGETS);
+        governor.adjust(BUSY);
+
+        for (int i = 0; i < LoadGovernor.CALM_SAMPLES_TO_RAISE * 3; i++) {
+            governor.adjust(NEAR);
+        }
+        assertEquals(2, governor.cpuStageLimit());
+        assertEquals(4, governor.limit());
+    }
+
+    @Test
+    void test__unavailable_readings_do_not_throttle() {
+        final LoadGovernor governor = new LoadGovernor(4, LoadGovernor.DEFAULT_TARGETS);
+
+        governor.adjust(new LoadGovernor.LoadSample(-1, -1, -1));
+
+        assertEquals(4, governor.limit());
+        assertEquals(4, governor.cpuStageLimit());
+    }
+
+    @Test
+    void test__a_failed_sample_does_not_stop_the_sampling() throws Exception {
+        final AtomicInteger samples = new AtomicInteger();
+        try (LoadGovernor governor = new LoadGovernor(8, LoadGovernor.DEFAULT_TARGETS)) {
+            governor.start(Duration.ofMillis(10), () -> {
+                if (samples.incrementAndGet() == 1) {
+                    throw new IllegalStateException("no reading");
+                }
+                return BUSY;
+            });
+
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (governor.cpuStageLimit() == 8 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(governor.cpuStageLimit() < 8, "sampling stopped after the failed sample");
+        }
+    }
+
+    @Test
+    void test__acquire_waits_until_under_the_limit() throws Exception {
+        final LoadGovernor governor = new LoadGovernor(2, LoadGovernor.DEFAULT_TARGETS);
+        governor.adjust(LOW_ON_MEMORY);
+        governor.acquire();
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final Thread waiter = new Thread(() -> {
+            try {
+                governor.acquire();
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        governor.release();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        waiter.join();
+    }
+
+    @Test
+    void test__the_cpu_stage_waits_until_under_its_limit() throws Exception {
+        final LoadGovernor governor = new LoadGovernor(2, LoadGovernor.DEFAULT_TARGETS);
+        governor.adjust(BUSY);
+        governor.acquireCpuStage();
+
+        final CountDownLatch admitted = new CountDownLatch(1);
+        final Thread waiter = new Thread(() -> {
+            try {
+                governor.acquireCpuStage();
+                admitted.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+
+        assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+        governor.releaseCpuStage();
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        waiter.join();
+    }
+}
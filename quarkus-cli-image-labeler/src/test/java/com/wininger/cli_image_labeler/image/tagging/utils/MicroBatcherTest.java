@@ -0,0 +1,130 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for MicroBatcher.
+ */
+public class MicroBatcherTest {
+
+    @Test
+    void test__concurrent_items_are_handled_in_one_batch_with_their_own_results() throws Exception {
+        final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+        final MicroBatcher<String, Integer, Integer> batcher = new MicroBatcher<>("test", 3, Duration.ofSeconds(5),
+            (key, items) -> {
+                batches.add(items);
+                return items.stream().map(item -> item * 10).toList();
+            });
+
+        final List<Optional<Integer>> results = submitConcurrently(batcher, "key", 1, 2, 3);
+
+        assertEquals(List.of(Optional.of(10), Optional.of(20), Optional.of(30)), results);
+        assertEquals(1, batches.size());
+        assertEquals(3, batches.get(0).size());
+    }
+
+    @Test
+    void test__a_batch_that_does_not_fill_up_is_sent_after_the_max_wait() throws Exception {
+        final MicroBatcher<String, Integer, Integer> batcher = new MicroBatcher<>("test", 10, Duration.ofMillis(200),
+            (key, items) -> items.stream().map(item -> item * 10).toList());
+
+        assertEquals(List.of(Optional.of(10), Optional.of(20)), submitConcurrently(batcher, "key", 1, 2));
+        assertEquals(1, batcher.batchesSent());
+    }
+
+    @Test
+    void test__only_the_items_without_a_result_come_back_empty() throws Exception {
+        final MicroBatcher<String, Integer, Integer> batcher = new MicroBatcher<>("test", 3, Duration.ofSeconds(5),
+            (key, items) -> items.stream().map(item -> item == 2 ? null : item * 10).toList());
+
+        final List<Optional<Integer>> results = submitConcurrently(batcher, "key", 1, 2, 3);
+
+        assertEquals(List.of(Optional.of(10), Optional.empty(), Optional.of(30)), results);
+        assertEquals(1, batcher.itemsFailed());
+    }
+
+    @Test
+    void test__every_item_comes_back_empty_when_the_batch_fails() throws Exception {
+        final MicroBatcher<String, Integer, Integer> batcher = new MicroBatcher<>("test", 2, Duration.ofSeconds(5),
+            (key, items) -> {
+                throw new IllegalStateException("boom");
+            });
+
+        assertEquals(List.of(Optional.empty(), Optional.empty()), submitConcurrently(batcher, "key", 1, 2));
+    }
+
+    @Test
+    void test__a_lone_item_is_not_sent_as_a_batch() {
+        final MicroBatcher<String, Integer, Integer> batcher = new MicroBatcher<>("test", 4, Duration.ofMillis(10),
+            (key, items) -> {
+                throw new AssertionError("a batch of one should not be handled");
+            });
+
+        assertEquals(Optional.empty(), batcher.submit("key", 1));
+        assertEquals(0, batcher.batchesSent());
+        assertEquals(1, batcher.itemsAlone());
+    }
+
+    @Test
+    void test__items_with_different_keys_are_not_batched_together() throws Exception {
+        final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+        final MicroBatcher<Integer, Integer, Integer> batcher = new MicroBatcher<>("test", 2, Duration.ofSeconds(5),
+            (key, items) -> {
+                batches.add(items);
+                return items;
+            });
+
+        final ExecutorService workers = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Optional<Integer>>> futures = new ArrayList<>();
+            for (final int item : new int[] {1, 2, 3, 4}) {
+                futures.add(workers.submit(() -> batcher.submit(item % 2, item)));
+            }
+            for (final Future<Optional<Integer>> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+
+        assertEquals(2, batches.size());
+        for (final List<Integer> batch : batches) {
+            assertEquals(batch.get(0) % 2, batch.get(1) % 2);
+        }
+    }
+
+    private static List<Optional<Integer>> submitConcurrently(
+        final MicroBatcher<String, Integer, Integer> batcher,
+        final String key,
+        final Integer... items
+    ) throws Exception {
+        final ExecutorService workers = Executors.newFixedThreadPool(items.length);
+        try {
+            final List<Future<Optional<Integer>>> futures = new ArrayList<>();
+            for (final Integer item : Arrays.asList(items)) {
+                futures.add(workers.submit(() -> batcher.submit(key, item)));
+            }
+
+            final List<Optional<Integer>> results = new ArrayList<>();
+            for (final Future<Optional<Integer>> future : futures) {
+                results.add(future.get(5, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+}
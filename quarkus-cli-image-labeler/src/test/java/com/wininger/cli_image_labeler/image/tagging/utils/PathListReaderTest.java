@@ -0,0 +1,44 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for PathListReader.
+ */
+public class PathListReaderTest {
+
+    @Test
+    void test__newline_separated_paths_ignoring_blank_lines_and_windows_line_endings() {
+        assertEquals(
+            List.of(Paths.get("/photos/a.jpg"), Paths.get("/photos/with space.png"), Paths.get("relative/c.tif")),
+            readAll("/photos/a.jpg\r\n\n/photos/with space.png\n   \nrelative/c.tif"));
+    }
+
+    @Test
+    void test__nul_separated_paths_may_contain_newlines() {
+        assertEquals(
+            List.of(Paths.get("/photos/a.jpg"), Paths.get("/photos/line\nbreak.png")),
+            readAll("/photos/a.jpg\0/photos/line\nbreak.png\0"));
+    }
+
+    @Test
+    void test__empty_input_has_no_paths() {
+        assertEquals(List.of(), readAll(""));
+        assertFalse(new PathListReader(new StringReader("\n\n")).hasNext());
+    }
+
+    private static List<Path> readAll(final String input) {
+        final List<Path> paths = new ArrayList<>();
+        new PathListReader(new StringReader(input)).forEachRemaining(paths::add);
+        return paths;
+    }
+}
@@ -0,0 +1,109 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for ReorderBuffer.
+ */
+public class ReorderBufferTest {
+
+    @Test
+    void test__results_are_passed_on_in_input_order_whatever_order_they_finish_in() throws Exception {
+        final List<Integer> emitted = new CopyOnWriteArrayList<>();
+        final ReorderBuffer<Integer> buffer = new ReorderBuffer<>(4, true, emitted::add);
+
+        runWithRandomDelays(buffer, 50);
+
+        final List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, emitted);
+    }
+
+    @Test
+    void test__in_completion_order_every_result_is_passed_on_once() throws Exception {
+        final List<Integer> emitted = new CopyOnWriteArrayList<>();
+        final ReorderBuffer<Integer> buffer = new ReorderBuffer<>(4, false, emitted::add);
+
+        runWithRandomDelays(buffer, 50);
+
+        assertEquals(50, emitted.size());
+        assertEquals(50, emitted.stream().distinct().count());
+    }
+
+    @Test
+    void test__a_result_waits_for_the_ones_before_it() throws Exception {
+        final List<String> emitted = new ArrayList<>();
+        final ReorderBuffer<String> buffer = new ReorderBuffer<>(4, true, emitted::add);
+
+        buffer.awaitRoomFor(0);
+        buffer.awaitRoomFor(1);
+        buffer.complete(1, "second");
+        assertEquals(List.of(), emitted);
+
+        buffer.complete(0, "first");
+        assertEquals(List.of("first", "second"), emitted);
+    }
+
+    @Test
+    void test__no_more_work_is_let_in_than_the_window_while_the_oldest_is_unfinished() throws Exception {
+        final ReorderBuffer<String> buffer = new ReorderBuffer<>(2, true, result -> {});
+        buffer.awaitRoomFor(0);
+        buffer.awaitRoomFor(1);
+        // finishing the newer one doesn't make room, the oldest still isn't done
+        buffer.complete(1, "second");
+
+        final CountDownLatch admitted = new CountDownLatch(1);
+        final Thread submitter = new Thread(() -> {
+            try {
+                buffer.awaitRoomFor(2);
+                admitted.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        submitter.start();
+
+        assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+        buffer.complete(0, "first");
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        submitter.join();
+    }
+
+    private static void runWithRandomDelays(final ReorderBuffer<Integer> buffer, final int items) throws Exception {
+        final Random random = new Random(42);
+        final ExecutorService workers = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < items; i++) {
+                final int item = i;
+                final int delayMillis = random.nextInt(20);
+                buffer.awaitRoomFor(item);
+                workers.submit(() -> {
+                    try {
+                        Thread.sleep(delayMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    buffer.complete(item, item);
+                });
+            }
+            buffer.awaitEmpty();
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+}
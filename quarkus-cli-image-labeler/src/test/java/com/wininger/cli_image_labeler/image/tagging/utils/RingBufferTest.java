@@ -0,0 +1,86 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests for RingBuffer.
+ */
+public class RingBufferTest {
+
+    @Test
+    void test__items_come_out_in_the_order_they_went_in() {
+        final RingBuffer<Integer> buffer = new RingBuffer<>(8);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(buffer.offer(i));
+        }
+
+        final List<Integer> drained = new ArrayList<>();
+        assertEquals(5, buffer.drain(drained::add));
+        assertEquals(List.of(0, 1, 2, 3, 4), drained);
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    void test__offer_fails_instead_of_waiting_when_full_and_works_again_once_drained() {
+        final RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+
+        assertFalse(buffer.offer(4));
+        assertEquals(0, buffer.poll());
+        assertTrue(buffer.offer(4));
+    }
+
+    @Test
+    void test__capacity_is_rounded_up_to_a_power_of_two() {
+        assertEquals(8, new RingBuffer<>(5).capacity());
+        assertEquals(8, new RingBuffer<>(8).capacity());
+        assertEquals(2, new RingBuffer<>(1).capacity());
+    }
+
+    @Test
+    void test__every_item_from_concurrent_producers_is_drained_exactly_once() throws Exception {
+        final int producers = 8;
+        final int itemsPerProducer = 50_000;
+        final RingBuffer<Integer> buffer = new RingBuffer<>(1024);
+        final ExecutorService pool = Executors.newFixedThreadPool(producers);
+        final CountDownLatch done = new CountDownLatch(producers);
+
+        try {
+            for (int p = 0; p < producers; p++) {
+                final int producer = p;
+                pool.submit(() -> {
+                    for (int i = 0; i < itemsPerProducer; i++) {
+                        // spin rather than drop, to check nothing is lost or duplicated
+                        while (!buffer.offer(producer * itemsPerProducer + i)) {
+                            Thread.onSpinWait();
+                        }
+                    }
+                    done.countDown();
+                });
+            }
+
+            final Set<Integer> seen = new HashSet<>();
+            while (done.getCount() > 0 || seen.size() < producers * itemsPerProducer) {
+                buffer.drain(item -> assertTrue(seen.add(item), "drained twice: " + item));
+            }
+            assertEquals(producers * itemsPerProducer, seen.size());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+/**
+ * Tests for Shard.
+ */
+public class ShardTest {
+
+    @Test
+    void test__parses_i_of_n() {
+        assertEquals(new Shard(2, 3), Shard.parse("2/3"));
+        assertEquals(new Shard(1, 1), Shard.parse(" 1 / 1 "));
+        assertEquals("2/3", Shard.parse("2/3").toString());
+    }
+
+    @Test
+    void test__rejects_shards_outside_1_to_n() {
+        assertThrows(IllegalArgumentException.class, () -> Shard.parse("0/3"));
+        assertThrows(IllegalArgumentException.class, () -> Shard.parse("4/3"));
+        assertThrows(IllegalArgumentException.class, () -> Shard.parse("1/0"));
+        assertThrows(IllegalArgumentException.class, () -> Shard.parse("2"));
+        assertThrows(IllegalArgumentException.class, () -> Shard.parse("a/b"));
+    }
+
+    @Test
+    void test__every_image_is_in_exactly_one_shard_and_they_are_about_even() {
+        final int count = 4;
+        final int[] sizes = new int[count];
+        for (int i = 0; i < 4000; i++) {
+            final Path image = Path.of("/library/2021/photo_%04d.jpg".formatted(i));
+            int shards = 0;
+            for (int index = 1; index <= count; index++) {
+                if (new Shard(index, count).includes(image)) {
+                    shards++;
+                    sizes[index - 1]++;
+                }
+            }
+            assertEquals(1, shards);
+        }
+        for (final int size : sizes) {
+            assertTrue(size > 850 && size < 1150, "shard size " + size);
+        }
+    }
+
+    @Test
+    void test__the_shard_depends_only_on_the_normalized_path() {
+        assertEquals(Shard.shardOf(Path.of("/library/a/../b/photo.jpg"), 7),
+            Shard.shardOf(Path.of("/library/b/photo.jpg"), 7));
+    }
+}
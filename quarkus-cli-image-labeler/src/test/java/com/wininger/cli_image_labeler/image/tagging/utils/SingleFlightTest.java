@@ -0,0 +1,76 @@
+package com.wininger.cli_image_labeler.image.tagging.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for SingleFlight.
+ */
+public class SingleFlightTest {
+
+    @Test
+    void test__concurrent_calls_for_the_same_key_share_one_result() throws Exception {
+        final SingleFlight<String, String> singleFlight = new SingleFlight<>("test");
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final ExecutorService workers = Executors.newFixedThreadPool(2);
+        try {
+            final Future<String> first = workers.submit(() -> singleFlight.execute("key", () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                await(release);
+                return "result";
+            }));
+            started.await(5, TimeUnit.SECONDS);
+
+            final Future<String> second = workers.submit(() -> singleFlight.execute("key", () -> {
+                calls.incrementAndGet();
+                return "duplicate";
+            }));
+
+            // give the second call time to find the first one in flight before letting it finish
+            while (singleFlight.coalescedCount() == 0) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            assertEquals("result", first.get(5, TimeUnit.SECONDS));
+            assertEquals("result", second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, calls.get());
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    @Test
+    void test__completed_calls_are_not_cached_and_failures_are_not_remembered() {
+        final SingleFlight<String, Integer> singleFlight = new SingleFlight<>("test");
+        final AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(IllegalStateException.class, () -> singleFlight.execute("key", () -> {
+            throw new IllegalStateException("boom");
+        }));
+        assertEquals(1, singleFlight.execute("key", calls::incrementAndGet));
+        assertEquals(2, singleFlight.execute("key", calls::incrementAndGet));
+        assertEquals(0, singleFlight.coalescedCount());
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}